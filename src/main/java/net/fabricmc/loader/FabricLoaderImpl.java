@@ -17,11 +17,15 @@
 package net.fabricmc.loader;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -52,6 +56,7 @@ import net.fabricmc.loader.metadata.DependencyOverrides;
 import net.fabricmc.loader.metadata.EntrypointMetadata;
 import net.fabricmc.loader.metadata.LoaderModMetadata;
 import net.fabricmc.loader.util.DefaultLanguageAdapter;
+import net.fabricmc.loader.util.DigestUtil;
 import net.fabricmc.loader.util.SystemProperties;
 
 /**
@@ -71,6 +76,7 @@ public class FabricLoaderImpl implements FabricLoader {
 	private final Map<String, LanguageAdapter> adapterMap = new HashMap<>();
 	private final EntrypointStorage entrypointStorage = new EntrypointStorage();
 	private final AccessWidener accessWidener = new AccessWidener();
+	private String accessWidenerHash;
 
 	private boolean frozen = false;
 
@@ -177,30 +183,28 @@ public class FabricLoaderImpl implements FabricLoader {
 		if (frozen) throw new IllegalStateException("Frozen - cannot load additional mods!");
 
 		try {
-			setup();
+			addMods(discoverMods());
 		} catch (ModResolutionException exception) {
 			FabricGuiEntry.displayCriticalError(exception, true);
 		}
 	}
 
-	public void loadCore() {
-		if (frozen) throw new IllegalStateException("Frozen - cannot load additional coremods!");
-
-		try {
-			setupCore();
-		} catch (ModResolutionException exception) {
-			FabricGuiEntry.displayCriticalError(exception, true);
-		}
-	}
+	/**
+	 * Finds and resolves the mods without adding them, {@link #addMods} does that.
+	 *
+	 * <p>Outside of development environments this has no side effects besides logging, so it may run alongside other
+	 * startup work. In development environments it proposes class path directories to the launcher.</p>
+	 */
+	public Collection<ModCandidate> discoverMods() throws ModResolutionException {
+		if (provider == null) throw new IllegalStateException("game provider not set");
 
-	private void setupCore() throws ModResolutionException {
-		CoremodResolver coreResolver = new CoremodResolver();
-		coreResolver.addCandidateFinder(new DirectoryModCandidateFinder(getCoremodsDir(), isDevelopmentEnvironment()));
-		Map<String, ModCandidate> coreCandidateMap = coreResolver.resolve(this);
+		ModResolver resolver = new ModResolver();
+		resolver.addCandidateFinder(new ClasspathModCandidateFinder());
+		resolver.addCandidateFinder(new DirectoryModCandidateFinder(getModsDir(), isDevelopmentEnvironment()));
+		Map<String, ModCandidate> candidateMap = resolver.resolve(this);
 
 		String modText;
-
-		switch (coreCandidateMap.values().size()) {
+		switch (candidateMap.values().size()) {
 			case 0:
 				modText = "Loading %d mods";
 				break;
@@ -211,7 +215,8 @@ public class FabricLoaderImpl implements FabricLoader {
 				modText = "Loading %d mods: %s";
 				break;
 		}
-		LOGGER.info("[" + getClass().getSimpleName() + "] " + modText, coreCandidateMap.values().size(), coreCandidateMap.values().stream()
+
+		LOGGER.info("[" + getClass().getSimpleName() + "] " + modText, candidateMap.values().size(), candidateMap.values().stream()
 				.map(info -> String.format("%s@%s", info.getInfo().getId(), info.getInfo().getVersion().getFriendlyString()))
 				.collect(Collectors.joining(", ")));
 
@@ -227,24 +232,41 @@ public class FabricLoaderImpl implements FabricLoader {
 		}
 
 		if (runtimeModRemapping) {
-			for (ModCandidate candidate : RuntimeModRemapper.remap(coreCandidateMap.values(), ModResolver.getInMemoryFs())) {
-				addCoremod(candidate);
-			}
+			return RuntimeModRemapper.remap(candidateMap.values(), ModResolver.getInMemoryFs());
 		} else {
-			for (ModCandidate candidate : coreCandidateMap.values()) {
-				addCoremod(candidate);
-			}
+			return candidateMap.values();
 		}
 	}
 
-	private void setup () throws ModResolutionException {
-		ModResolver resolver = new ModResolver();
-		resolver.addCandidateFinder(new ClasspathModCandidateFinder());
-		resolver.addCandidateFinder(new DirectoryModCandidateFinder(getModsDir(), isDevelopmentEnvironment()));
-		Map<String, ModCandidate> candidateMap = resolver.resolve(this);
+	/**
+	 * Adds the mods found by {@link #discoverMods}.
+	 */
+	public void addMods(Collection<ModCandidate> candidates) throws ModResolutionException {
+		if (frozen) throw new IllegalStateException("Frozen - cannot load additional mods!");
+
+		for (ModCandidate candidate : candidates) {
+			addMod(candidate);
+		}
+	}
+
+	public void loadCore() {
+		if (frozen) throw new IllegalStateException("Frozen - cannot load additional coremods!");
+
+		try {
+			setupCore();
+		} catch (ModResolutionException exception) {
+			FabricGuiEntry.displayCriticalError(exception, true);
+		}
+	}
+
+	private void setupCore() throws ModResolutionException {
+		CoremodResolver coreResolver = new CoremodResolver();
+		coreResolver.addCandidateFinder(new DirectoryModCandidateFinder(getCoremodsDir(), isDevelopmentEnvironment()));
+		Map<String, ModCandidate> coreCandidateMap = coreResolver.resolve(this);
 
 		String modText;
-		switch (candidateMap.values().size()) {
+
+		switch (coreCandidateMap.values().size()) {
 			case 0:
 				modText = "Loading %d mods";
 				break;
@@ -255,8 +277,7 @@ public class FabricLoaderImpl implements FabricLoader {
 				modText = "Loading %d mods: %s";
 				break;
 		}
-
-		LOGGER.info("[" + getClass().getSimpleName() + "] " + modText, candidateMap.values().size(), candidateMap.values().stream()
+		LOGGER.info("[" + getClass().getSimpleName() + "] " + modText, coreCandidateMap.values().size(), coreCandidateMap.values().stream()
 				.map(info -> String.format("%s@%s", info.getInfo().getId(), info.getInfo().getVersion().getFriendlyString()))
 				.collect(Collectors.joining(", ")));
 
@@ -272,12 +293,12 @@ public class FabricLoaderImpl implements FabricLoader {
 		}
 
 		if (runtimeModRemapping) {
-			for (ModCandidate candidate : RuntimeModRemapper.remap(candidateMap.values(), ModResolver.getInMemoryFs())) {
-				addMod(candidate);
+			for (ModCandidate candidate : RuntimeModRemapper.remap(coreCandidateMap.values(), ModResolver.getInMemoryFs())) {
+				addCoremod(candidate);
 			}
 		} else {
-			for (ModCandidate candidate : candidateMap.values()) {
-				addMod(candidate);
+			for (ModCandidate candidate : coreCandidateMap.values()) {
+				addCoremod(candidate);
 			}
 		}
 	}
@@ -466,6 +487,8 @@ public class FabricLoaderImpl implements FabricLoader {
 
 	public void loadAccessWideners() {
 		AccessWidenerReader accessWidenerReader = new AccessWidenerReader(accessWidener);
+		MessageDigest digest = DigestUtil.newSha1Digest();
+
 		for (net.fabricmc.loader.api.ModContainer modContainer : getAllMods()) {
 			LoaderModMetadata modMetadata = (LoaderModMetadata) modContainer.getMetadata();
 			String accessWidener = modMetadata.getAccessWidener();
@@ -473,13 +496,21 @@ public class FabricLoaderImpl implements FabricLoader {
 			if (accessWidener != null) {
 				Path path = modContainer.getPath(accessWidener);
 
-				try (BufferedReader reader = Files.newBufferedReader(path)) {
-					accessWidenerReader.read(reader, getMappingResolver().getCurrentRuntimeNamespace());
+				try {
+					byte[] data = Files.readAllBytes(path);
+					digest.update(modMetadata.getId().getBytes(StandardCharsets.UTF_8));
+					digest.update(data);
+
+					try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+						accessWidenerReader.read(reader, getMappingResolver().getCurrentRuntimeNamespace());
+					}
 				} catch (Exception e) {
 					throw new RuntimeException("Failed to read accessWidener file from mod " + modMetadata.getId(), e);
 				}
 			}
 		}
+
+		accessWidenerHash = DigestUtil.toHex(digest.digest());
 	}
 
 	private void prepareModInit(Path newRunDir, Object gameInstance) {
@@ -537,6 +568,13 @@ public class FabricLoaderImpl implements FabricLoader {
 		return accessWidener;
 	}
 
+	/**
+	 * @return A hash over the contents of every loaded access widener, or null if {@link #loadAccessWideners()} hasn't run yet.
+	 */
+	public String getAccessWidenerHash() {
+		return accessWidenerHash;
+	}
+
 	public Logger getLogger() {
 		return LOGGER;
 	}
@@ -16,81 +16,174 @@
 
 package net.fabricmc.loader;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 import com.google.common.base.Strings;
 
 import net.fabricmc.loader.api.MappingResolver;
+import net.fabricmc.loader.util.mappings.DescriptorUtil;
 import net.fabricmc.loader.util.mappings.TinyRemapperMappingsHelper;
 import net.fabricmc.mapping.tree.ClassDef;
 import net.fabricmc.mapping.tree.Descriptored;
 import net.fabricmc.mapping.tree.TinyTree;
-import net.fabricmc.mappings.EntryTriple;
 
 class FabricMappingResolver implements MappingResolver {
+	private static final int MAX_CACHED_DESCRIPTORS = 65536;
+
 	private final Supplier<TinyTree> mappingsSupplier;
 	private final Set<String> namespaces;
-	private final Map<String, NamespaceData> namespaceDataMap = new HashMap<>();
+	private final Map<String, NamespaceData> namespaceDataMap = new ConcurrentHashMap<>();
 	private final String targetNamespace;
 
-	private static class NamespaceData {
+	/**
+	 * Class names of a namespace, the members are only collected once a class is queried for them.
+	 *
+	 * <p>Classes are looked up again through their name in the tree's first namespace when needed instead of keeping
+	 * their definitions around, trees decoding classes on demand can then drop the ones nobody asks for.</p>
+	 */
+	private final class NamespaceData {
+		private final String namespace;
 		private final Map<String, String> classNames = new HashMap<>();
 		private final Map<String, String> classNamesInverse = new HashMap<>();
-		private final Map<EntryTriple, String> fieldNames = new HashMap<>();
-		private final Map<EntryTriple, String> methodNames = new HashMap<>();
-	}
+		private final Map<String, String> primaryNames = new HashMap<>();
+		private final Map<String, MemberTable> memberTables = new ConcurrentHashMap<>();
+		private final Map<String, String> descriptors = new ConcurrentHashMap<>();
+		private final Map<String, String> descriptorsInverse = new ConcurrentHashMap<>();
 
-	FabricMappingResolver(Supplier<TinyTree> mappingsSupplier, String targetNamespace) {
-		this.mappingsSupplier = mappingsSupplier;
-		this.targetNamespace = targetNamespace;
-		namespaces = Collections.unmodifiableSet(new HashSet<>(mappingsSupplier.get().getMetadata().getNamespaces()));
-	}
+		NamespaceData(String namespace) {
+			this.namespace = namespace;
 
-	protected final NamespaceData getNamespaceData(String namespace) {
-		return namespaceDataMap.computeIfAbsent(namespace, (fromNamespace) -> {
-			if (!namespaces.contains(fromNamespace)) {
-				throw new IllegalArgumentException("Unknown namespace: " + fromNamespace);
-			}
-
-			NamespaceData data = new NamespaceData();
 			TinyTree mappings = mappingsSupplier.get();
+			String primaryNamespace = mappings.getMetadata().getNamespaces().get(0);
 
 			for (ClassDef classEntry : mappings.getClasses()) {
-				String fromClass = replaceSlashesWithDots(Strings.nullToEmpty(classEntry.getRawName(fromNamespace)));
+				String fromClass = replaceSlashesWithDots(Strings.nullToEmpty(classEntry.getRawName(namespace)));
 				if (fromClass.isEmpty()) continue; //Class not present
 
 				String toClass = replaceSlashesWithDots(Strings.nullToEmpty(classEntry.getRawName(targetNamespace)));
 				if (toClass.isEmpty()) toClass = fromClass;
 
-				data.classNames.put(fromClass, toClass);
-				data.classNamesInverse.put(toClass, fromClass);
+				classNames.put(fromClass, toClass);
+				classNamesInverse.put(toClass, fromClass);
+				primaryNames.put(fromClass, classEntry.getRawName(primaryNamespace));
+			}
+		}
+
+		String mapDescriptor(String descriptor, boolean inverse) {
+			Map<String, String> cache = inverse ? descriptorsInverse : descriptors;
+			String ret = cache.get(descriptor);
+			if (ret != null) return ret;
+
+			Map<String, String> names = inverse ? classNamesInverse : classNames;
+			ret = DescriptorUtil.remapDescriptor(descriptor, name -> {
+				String mapped = names.get(replaceSlashesWithDots(name));
+				return mapped != null ? mapped.replace('.', '/') : null;
+			});
+
+			// descriptors may come from anywhere, don't let arbitrary queries grow the cache forever
+			if (cache.size() < MAX_CACHED_DESCRIPTORS) cache.put(descriptor, ret);
+
+			return ret;
+		}
+
+		/**
+		 * @return the members of the class, or null if the class has no mappings
+		 */
+		MemberTable getMembers(String owner) {
+			MemberTable ret = memberTables.get(owner);
+			if (ret != null) return ret;
+
+			String primaryName = primaryNames.get(owner);
+			if (primaryName == null) return null;
+
+			ClassDef classDef = mappingsSupplier.get().getDefaultNamespaceClassMap().get(primaryName);
+			if (classDef == null) return null;
 
-				recordMember(fromNamespace, classEntry.getFields(), data.fieldNames, fromClass);
-				recordMember(fromNamespace, classEntry.getMethods(), data.methodNames, fromClass);
+			ret = new MemberTable(createMemberMap(classDef.getFields()), createMemberMap(classDef.getMethods()));
+			MemberTable prev = memberTables.putIfAbsent(owner, ret);
+
+			return prev != null ? prev : ret;
+		}
+
+		/**
+		 * Groups the members by name, each value is a flat array of descriptor and mapped name pairs.
+		 */
+		private <T extends Descriptored> Map<String, String[]> createMemberMap(Collection<T> descriptoredList) {
+			Map<String, List<String>> members = new HashMap<>();
+
+			for (T descriptored : descriptoredList) {
+				String memberName = descriptored.getRawName(namespace);
+				if (Strings.isNullOrEmpty(memberName)) continue;
+
+				List<String> entries = members.computeIfAbsent(memberName, ignored -> new ArrayList<>(2));
+				entries.add(descriptored.getDescriptor(namespace));
+				entries.add(TinyRemapperMappingsHelper.tryName(descriptored, targetNamespace, memberName));
 			}
 
-			return data;
-		});
+			Map<String, String[]> ret = new HashMap<>(members.size() * 2);
+
+			for (Map.Entry<String, List<String>> entry : members.entrySet()) {
+				ret.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+			}
+
+			return ret;
+		}
 	}
 
-	private static String replaceSlashesWithDots(String cname) {
-		return cname.replace('/', '.');
+	private static final class MemberTable {
+		private final Map<String, String[]> fields;
+		private final Map<String, String[]> methods;
+
+		MemberTable(Map<String, String[]> fields, Map<String, String[]> methods) {
+			this.fields = fields;
+			this.methods = methods;
+		}
+
+		static String find(Map<String, String[]> members, String name, String descriptor, String fallback) {
+			String[] entries = members.get(name);
+			if (entries == null) return fallback;
+
+			for (int i = 0; i < entries.length; i += 2) {
+				if (entries[i].equals(descriptor)) return entries[i + 1];
+			}
+
+			return fallback;
+		}
 	}
 
-	private <T extends Descriptored> void recordMember(String fromNamespace, Collection<T> descriptoredList, Map<EntryTriple, String> putInto, String fromClass) {
-		for (T descriptored : descriptoredList) {
-			String memberName = descriptored.getRawName(fromNamespace);
-			if (Strings.isNullOrEmpty(memberName)) continue;
+	FabricMappingResolver(Supplier<TinyTree> mappingsSupplier, String targetNamespace) {
+		this.mappingsSupplier = mappingsSupplier;
+		this.targetNamespace = targetNamespace;
+		namespaces = Collections.unmodifiableSet(new HashSet<>(mappingsSupplier.get().getMetadata().getNamespaces()));
+	}
 
-			EntryTriple fromEntry = new EntryTriple(fromClass, memberName, descriptored.getDescriptor(fromNamespace));
-			putInto.put(fromEntry, TinyRemapperMappingsHelper.tryName(descriptored, targetNamespace, memberName));
+	protected final NamespaceData getNamespaceData(String namespace) {
+		NamespaceData ret = namespaceDataMap.get(namespace);
+		if (ret != null) return ret;
+
+		if (!namespaces.contains(namespace)) {
+			throw new IllegalArgumentException("Unknown namespace: " + namespace);
 		}
+
+		// built outside of the map to not block queries for other namespaces, racing threads build it redundantly
+		ret = new NamespaceData(namespace);
+		NamespaceData prev = namespaceDataMap.putIfAbsent(namespace, ret);
+
+		return prev != null ? prev : ret;
+	}
+
+	private static String replaceSlashesWithDots(String cname) {
+		return cname.replace('/', '.');
 	}
 
 	@Override
@@ -121,13 +214,41 @@ class FabricMappingResolver implements MappingResolver {
 		return getNamespaceData(namespace).classNamesInverse.getOrDefault(className, className);
 	}
 
+	@Override
+	public Map<String, String> mapClassNames(String namespace, Collection<String> classNames) {
+		NamespaceData data = getNamespaceData(namespace);
+		Map<String, String> ret = new LinkedHashMap<>();
+
+		for (String className : classNames) {
+			if (className.indexOf('/') >= 0) {
+				throw new IllegalArgumentException("Class names must be provided in dot format: " + className);
+			}
+
+			ret.put(className, data.classNames.getOrDefault(className, className));
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String mapDescriptor(String namespace, String descriptor) {
+		return getNamespaceData(namespace).mapDescriptor(descriptor, false);
+	}
+
+	@Override
+	public String unmapDescriptor(String namespace, String descriptor) {
+		return getNamespaceData(namespace).mapDescriptor(descriptor, true);
+	}
+
 	@Override
 	public String mapFieldName(String namespace, String owner, String name, String descriptor) {
 		if (owner.indexOf('/') >= 0) {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		return getNamespaceData(namespace).fieldNames.getOrDefault(new EntryTriple(owner, name, descriptor), name);
+		MemberTable members = getNamespaceData(namespace).getMembers(owner);
+
+		return members != null ? MemberTable.find(members.fields, name, descriptor, name) : name;
 	}
 
 	@Override
@@ -136,6 +257,8 @@ class FabricMappingResolver implements MappingResolver {
 			throw new IllegalArgumentException("Class names must be provided in dot format: " + owner);
 		}
 
-		return getNamespaceData(namespace).methodNames.getOrDefault(new EntryTriple(owner, name, descriptor), name);
+		MemberTable members = getNamespaceData(namespace).getMembers(owner);
+
+		return members != null ? MemberTable.find(members.methods, name, descriptor, name) : name;
 	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.api;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Walks a field or method descriptor for the default descriptor methods of {@link MappingResolver}.
+ */
+final class DescriptorMapper {
+	private DescriptorMapper() { }
+
+	/**
+	 * @param classMapper maps a binary class name
+	 * @throws IllegalArgumentException if the descriptor isn't a valid field or method descriptor, or is a signature
+	 */
+	static String map(String desc, UnaryOperator<String> classMapper) {
+		StringBuilder ret = new StringBuilder(desc.length() + 16);
+		int pos;
+
+		if (desc.startsWith("(")) {
+			ret.append('(');
+			pos = 1;
+
+			while (pos < desc.length() && desc.charAt(pos) != ')') {
+				pos = appendFieldType(desc, pos, classMapper, ret);
+			}
+
+			if (pos >= desc.length()) throw invalid(desc);
+			ret.append(')');
+			pos++;
+
+			if (pos < desc.length() && desc.charAt(pos) == 'V') {
+				ret.append('V');
+				pos++;
+			} else {
+				pos = appendFieldType(desc, pos, classMapper, ret);
+			}
+		} else {
+			pos = appendFieldType(desc, 0, classMapper, ret);
+		}
+
+		if (pos != desc.length()) throw invalid(desc);
+
+		return ret.toString();
+	}
+
+	/**
+	 * @return the position after the field type starting at pos
+	 */
+	private static int appendFieldType(String desc, int pos, UnaryOperator<String> classMapper, StringBuilder out) {
+		while (pos < desc.length() && desc.charAt(pos) == '[') {
+			out.append('[');
+			pos++;
+		}
+
+		if (pos >= desc.length()) throw invalid(desc);
+
+		char c = desc.charAt(pos++);
+
+		if (c != 'L') {
+			if ("BCDFIJSZ".indexOf(c) < 0) throw invalid(desc);
+
+			out.append(c);
+			return pos;
+		}
+
+		int end = desc.indexOf(';', pos);
+		if (end <= pos) throw invalid(desc);
+
+		String name = desc.substring(pos, end);
+		if (name.indexOf('<') >= 0) throw new IllegalArgumentException("signatures aren't supported: " + desc);
+		if (name.indexOf('.') >= 0 || name.indexOf('[') >= 0) throw invalid(desc);
+
+		out.append('L').append(classMapper.apply(name.replace('/', '.')).replace('.', '/')).append(';');
+
+		return end + 1;
+	}
+
+	private static IllegalArgumentException invalid(String desc) {
+		return new IllegalArgumentException("invalid descriptor: " + desc);
+	}
+}
@@ -17,6 +17,8 @@
 package net.fabricmc.loader.api;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Helper class for performing mapping resolution.
@@ -63,6 +65,51 @@ public interface MappingResolver {
 	 */
 	String unmapClassName(String targetNamespace, String className);
 
+	/**
+	 * Map multiple class names to the mapping currently used at runtime.
+	 *
+	 * @param namespace the namespace of the provided class names
+	 * @param classNames the provided binary class names
+	 * @return the mapped class names by the provided ones, in iteration order of {@code classNames}
+	 */
+	default Map<String, String> mapClassNames(String namespace, Collection<String> classNames) {
+		Map<String, String> ret = new LinkedHashMap<>();
+
+		for (String className : classNames) {
+			ret.put(className, mapClassName(namespace, className));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Map all class names in a field or method descriptor to the mapping currently used at runtime.
+	 *
+	 * <p>Unlike the other methods of this class, the descriptor uses internal names, such as
+	 * {@code "(Lmypackage/MyClass;)V"}. Generic signatures aren't supported.</p>
+	 *
+	 * @param namespace the namespace of the provided descriptor
+	 * @param descriptor the descriptor
+	 * @return the mapped descriptor, with class names that have no mapping left as they are
+	 * @throws IllegalArgumentException if the descriptor is malformed or a generic signature
+	 */
+	default String mapDescriptor(String namespace, String descriptor) {
+		return DescriptorMapper.map(descriptor, className -> mapClassName(namespace, className));
+	}
+
+	/**
+	 * Unmap all class names in a field or method descriptor from the mapping currently used at runtime.
+	 *
+	 * @param targetNamespace The target namespace for unmapping.
+	 * @param descriptor the descriptor in the mapping form currently used at runtime, using internal names
+	 * @return the unmapped descriptor, with class names that have no mapping left as they are
+	 * @throws IllegalArgumentException if the descriptor is malformed or a generic signature
+	 * @see #mapDescriptor(String, String)
+	 */
+	default String unmapDescriptor(String targetNamespace, String descriptor) {
+		return DescriptorMapper.map(descriptor, className -> unmapClassName(targetNamespace, className));
+	}
+
 	/**
 	 * Map a field name to the mapping currently used at runtime.
 	 *
@@ -17,19 +17,34 @@
 package net.fabricmc.loader.entrypoint;
 
 import net.fabricmc.loader.launch.common.FabricLauncher;
+import net.fabricmc.loader.util.DigestUtil;
+import net.fabricmc.loader.util.UrlConversionException;
+import net.fabricmc.loader.util.UrlUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
 public class EntrypointTransformer {
+	private static final int CACHE_MAGIC = 0x45504331; // EPC1
+
 	public static String appletMainClass;
 
 	public final Logger logger = LogManager.getFormatterLogger("FabricLoader|EntrypointTransformer");
@@ -76,6 +91,126 @@ public class EntrypointTransformer {
 		logger.debug("[EntrypointTransformer] Patched " + (patchedClasses.size() == 1 ? "1 class." : (patchedClasses.size() + " classes.")));
 	}
 
+	/**
+	 * Like {@link #locateEntrypoints(FabricLauncher)}, but reuses the patched classes from the previous launch if the
+	 * game jars, the loader jar and the launch target are unchanged.
+	 *
+	 * @param cacheFile where to keep the patched classes
+	 * @param gameJars the jars the patches may read classes from
+	 */
+	public void locateEntrypoints(FabricLauncher launcher, Path cacheFile, Collection<Path> gameJars) {
+		if (entrypointsLocated) {
+			return;
+		}
+
+		String key = getCacheKey(launcher, gameJars);
+
+		if (key != null && readCache(cacheFile, key)) {
+			entrypointsLocated = true;
+			logger.debug("[EntrypointTransformer] Loaded " + patchedClasses.size() + " patched classes from the cache.");
+			return;
+		}
+
+		locateEntrypoints(launcher);
+
+		if (key != null) {
+			writeCache(cacheFile, key);
+		}
+	}
+
+	/**
+	 * @return the key for the patched classes, or null if an input isn't a jar that can be fingerprinted
+	 */
+	private String getCacheKey(FabricLauncher launcher, Collection<Path> gameJars) {
+		MessageDigest digest = DigestUtil.newSha1Digest();
+		digest.update((launcher.getEnvironmentType() + "\n" + launcher.getEntrypoint() + "\n").getBytes(StandardCharsets.UTF_8));
+
+		try {
+			Path loaderJar = UrlUtil.asPath(EntrypointTransformer.class.getProtectionDomain().getCodeSource().getLocation());
+			if (!Files.isRegularFile(loaderJar)) return null;
+
+			DigestUtil.updateZipContent(digest, loaderJar);
+
+			for (Path jar : gameJars) {
+				if (!Files.isRegularFile(jar)) return null;
+
+				digest.update(jar.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+				DigestUtil.updateZipContent(digest, jar);
+			}
+		} catch (IOException | UrlConversionException | RuntimeException e) {
+			logger.debug("[EntrypointTransformer] Can't fingerprint the game, not caching patched classes: " + e);
+			return null;
+		}
+
+		return DigestUtil.toHex(digest.digest());
+	}
+
+	/**
+	 * @return whether the patched classes were read, false if the file is missing, stale or damaged
+	 */
+	boolean readCache(Path cacheFile, String key) {
+		if (!Files.isRegularFile(cacheFile)) return false;
+
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+			long size = Files.size(cacheFile);
+			if (is.readInt() != CACHE_MAGIC || !is.readUTF().equals(key)) return false;
+
+			String applet = is.readBoolean() ? is.readUTF() : null;
+			int count = is.readInt();
+			// every class takes at least its name and data lengths, anything claiming more is damaged
+			if (count < 0 || count > size / 6) return false;
+
+			Map<String, byte[]> classes = new HashMap<>();
+
+			for (int i = 0; i < count; i++) {
+				String name = is.readUTF();
+				int length = is.readInt();
+				if (length < 0 || length > size) return false;
+
+				byte[] data = new byte[length];
+				is.readFully(data);
+				classes.put(name, data);
+			}
+
+			if (is.read() >= 0) return false; // trailing data, not a file we wrote
+
+			patchedClasses = classes;
+			// the hook patch records this as a side effect, which has to be replayed for cached patches
+			if (applet != null) appletMainClass = applet;
+
+			return true;
+		} catch (IOException e) {
+			logger.debug("[EntrypointTransformer] Failed to read cached patched classes: " + e);
+			return false;
+		}
+	}
+
+	void writeCache(Path cacheFile, String key) {
+		Path tmpFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+		try {
+			Files.createDirectories(cacheFile.getParent());
+
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				os.writeInt(CACHE_MAGIC);
+				os.writeUTF(key);
+				os.writeBoolean(appletMainClass != null);
+				if (appletMainClass != null) os.writeUTF(appletMainClass);
+				os.writeInt(patchedClasses.size());
+
+				for (Map.Entry<String, byte[]> entry : patchedClasses.entrySet()) {
+					os.writeUTF(entry.getKey());
+					os.writeInt(entry.getValue().length);
+					os.write(entry.getValue());
+				}
+			}
+
+			Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("[EntrypointTransformer] Failed to cache patched classes: " + e);
+		}
+	}
+
 	/**
 	 * This must run first, contractually!
 	 * @param className The class name,
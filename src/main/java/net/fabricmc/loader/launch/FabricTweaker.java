@@ -26,10 +26,12 @@ import java.net.JarURLConnection;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -46,6 +48,8 @@ import net.fabricmc.loader.game.MinecraftGameProvider;
 import net.fabricmc.loader.launch.common.FabricLauncherBase;
 import net.fabricmc.loader.launch.common.FabricMixinBootstrap;
 import net.fabricmc.loader.util.Arguments;
+import net.fabricmc.loader.util.BoundedSoftCache;
+import net.fabricmc.loader.util.MappedJarFile;
 import net.fabricmc.loader.util.SystemProperties;
 import net.fabricmc.loader.util.UrlConversionException;
 import net.fabricmc.loader.util.UrlUtil;
@@ -57,7 +61,10 @@ import net.minecraft.launchwrapper.LaunchClassLoader;
 public abstract class FabricTweaker extends FabricLauncherBase implements ITweaker {
 	protected static Logger LOGGER = LogManager.getFormatterLogger("Fabric|Tweaker");
 	protected Arguments arguments;
+	private static final long TRANSFORMED_CLASS_CACHE_SIZE = 32 * 1024 * 1024;
+
 	private LaunchClassLoader launchClassLoader;
+	private final BoundedSoftCache<String, TransformedClass> transformedClasses = new BoundedSoftCache<>(TRANSFORMED_CLASS_CACHE_SIZE, c -> c.bytes.length);
 	private boolean isDevelopment;
 
 	@SuppressWarnings("unchecked")
@@ -116,6 +123,8 @@ public abstract class FabricTweaker extends FabricLauncherBase implements ITweak
 			throw new RuntimeException("Could not locate Minecraft: provider locate failed");
 		}
 
+		getMappingConfiguration().setCacheDirectory(provider.getLaunchDirectory().resolve(".fabric").resolve("mappings"));
+
 		FabricLoaderImpl loader = FabricLoaderImpl.getInstance();
 		loader.setGameProvider(provider);
 		loader.load();
@@ -190,15 +199,27 @@ public abstract class FabricTweaker extends FabricLauncherBase implements ITweak
 	@Override
 	public byte[] getClassByteArray(String name, boolean runTransformers) throws IOException {
 		String transformedName = name.replace('/', '.');
+		List<IClassTransformer> transformers = runTransformers ? launchClassLoader.getTransformers() : null;
+
+		if (runTransformers) {
+			// mixin asks for the same classes over and over, the result only changes if more transformers got registered
+			TransformedClass cached = transformedClasses.get(name);
+			if (cached != null && cached.transformerCount == transformers.size()) return cached.bytes;
+		}
+
 		byte[] classBytes = launchClassLoader.getClassBytes(name);
 
 		if (runTransformers) {
-			for (IClassTransformer transformer : launchClassLoader.getTransformers()) {
+			for (IClassTransformer transformer : transformers) {
 				if (transformer instanceof Proxy) {
 					continue; // skip mixin as per method contract
 				}
 				classBytes = transformer.transform(name, transformedName, classBytes);
 			}
+
+			if (classBytes != null) {
+				transformedClasses.put(name, new TransformedClass(classBytes, transformers.size()));
+			}
 		}
 
 		return classBytes;
@@ -211,11 +232,12 @@ public abstract class FabricTweaker extends FabricLauncherBase implements ITweak
 	// which will then cause it to use the one we need it to.
 	@SuppressWarnings("unchecked")
 	private void preloadRemappedJar(Path remappedJarFile) throws IOException {
+		Field field = null;
 		Map<String, byte[]> resourceCache = null;
 		try {
-			Field f = LaunchClassLoader.class.getDeclaredField("resourceCache");
-			f.setAccessible(true);
-			resourceCache = (Map<String, byte[]>) f.get(launchClassLoader);
+			field = LaunchClassLoader.class.getDeclaredField("resourceCache");
+			field.setAccessible(true);
+			resourceCache = (Map<String, byte[]>) field.get(launchClassLoader);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -225,13 +247,46 @@ public abstract class FabricTweaker extends FabricLauncherBase implements ITweak
 			return;
 		}
 
+		MappedJarFile mappedJar;
+
+		try {
+			mappedJar = MappedJarFile.open(remappedJarFile);
+		} catch (ZipException e) {
+			LOGGER.debug("Can't map " + remappedJarFile + ", reading it into the resource cache: " + e);
+			readIntoResourceCache(remappedJarFile, resourceCache);
+			return;
+		}
+
+		Map<String, String> entries = new HashMap<>();
+
+		for (String name : mappedJar.getEntryNames()) {
+			if (isPreloadedClass(name)) {
+				entries.put(name.substring(0, name.length() - 6).replace('/', '.'), name);
+			}
+		}
+
+		try {
+			// the classes are only read from the mapping once the class loader asks for them
+			field.set(launchClassLoader, new MappedJarResourceCache(resourceCache, mappedJar, entries));
+			LOGGER.debug("Serving %d classes from %s through the resource cache", entries.size(), remappedJarFile.getFileName());
+		} catch (IllegalAccessException e) {
+			mappedJar.close();
+			readIntoResourceCache(remappedJarFile, resourceCache);
+		}
+	}
+
+	private static boolean isPreloadedClass(String entryName) {
+		// class_ classes will never be in the obfuscated jar, so we can safely skip them
+		return !entryName.startsWith("net/minecraft/class_") && entryName.endsWith(".class");
+	}
+
+	private void readIntoResourceCache(Path remappedJarFile, Map<String, byte[]> resourceCache) throws IOException {
 		try (FileInputStream jarFileStream = new FileInputStream(remappedJarFile.toFile());
 				JarInputStream jarStream = new JarInputStream(jarFileStream)) {
 			JarEntry entry;
 
 			while ((entry = jarStream.getNextJarEntry()) != null) {
-				if (entry.getName().startsWith("net/minecraft/class_") || !entry.getName().endsWith(".class")) {
-					// These will never be in the obfuscated jar, so we can safely skip them
+				if (!isPreloadedClass(entry.getName())) {
 					continue;
 				}
 				String className = entry.getName();
@@ -258,4 +313,14 @@ public abstract class FabricTweaker extends FabricLauncherBase implements ITweak
 	public boolean isDevelopment() {
 		return isDevelopment;
 	}
+
+	private static final class TransformedClass {
+		final byte[] bytes;
+		final int transformerCount;
+
+		TransformedClass(byte[] bytes, int transformerCount) {
+			this.bytes = bytes;
+			this.transformerCount = transformerCount;
+		}
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.fabricmc.loader.util.MappedJarFile;
+
+/**
+ * Stand-in for {@code LaunchClassLoader.resourceCache} that serves a jar's classes straight from its memory mapping.
+ *
+ * <p>Class bytes from the jar are only read when requested and aren't retained, everything put in by the class
+ * loader itself lands in the regular backing map. Keys are binary class names, like the class loader uses them.</p>
+ */
+final class MappedJarResourceCache extends AbstractMap<String, byte[]> {
+	private final Map<String, byte[]> cache;
+	private final MappedJarFile jar;
+	private final Map<String, String> entries;
+	private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param cache the original cache, its current content is kept
+	 * @param entries class name to jar entry name for the classes to serve from the jar
+	 */
+	MappedJarResourceCache(Map<String, byte[]> cache, MappedJarFile jar, Map<String, String> entries) {
+		this.cache = new ConcurrentHashMap<>(cache);
+		this.jar = jar;
+		this.entries = entries;
+	}
+
+	@Override
+	public byte[] get(Object key) {
+		byte[] ret = cache.get(key);
+		if (ret != null) return ret;
+
+		String entry = entries.get(key);
+		if (entry == null || removed.contains(key)) return null;
+
+		try {
+			return jar.read(entry);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read " + entry + " from " + jar.getPath(), e);
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return cache.containsKey(key) || entries.containsKey(key) && !removed.contains(key);
+	}
+
+	@Override
+	public byte[] put(String key, byte[] value) {
+		return cache.put(key, value);
+	}
+
+	@Override
+	public byte[] remove(Object key) {
+		byte[] ret = get(key);
+
+		cache.remove(key);
+		if (entries.containsKey(key)) removed.add((String) key);
+
+		return ret;
+	}
+
+	@Override
+	public int size() {
+		int ret = cache.size();
+
+		for (String key : entries.keySet()) {
+			if (!cache.containsKey(key) && !removed.contains(key)) ret++;
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Materializes every class, only there to satisfy the {@link Map} contract.
+	 */
+	@Override
+	public Set<Map.Entry<String, byte[]>> entrySet() {
+		Map<String, byte[]> ret = new HashMap<>(cache);
+
+		for (String key : entries.keySet()) {
+			if (!ret.containsKey(key) && !removed.contains(key)) {
+				ret.put(key, get(key));
+			}
+		}
+
+		return ret.entrySet();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import net.fabricmc.accesswidener.AccessWidener;
+import net.fabricmc.accesswidener.AccessWidenerVisitor;
+import net.fabricmc.loader.FabricLoaderImpl;
+import net.fabricmc.loader.util.DigestUtil;
+
+/**
+ * Writes a copy of a remapped game jar with the access wideners already applied.
+ *
+ * <p>The copy is named after the access widener hash and the content of the remapped jar (entry names, sizes and
+ * CRCs, which unlike the timestamps are stable across remapping runs), so it's only rebuilt when either changes.</p>
+ */
+public final class AccessWidenerBaker {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader");
+
+	private AccessWidenerBaker() { }
+
+	/**
+	 * @return the jar with the access wideners applied, may be the input jar if there's nothing to apply
+	 */
+	public static Path bake(Path jar, AccessWidener accessWidener, String accessWidenerHash) throws IOException {
+		Set<String> targets = accessWidener.getTargets();
+		if (targets.isEmpty()) return jar;
+
+		String prefix = jar.getFileName() + ".aw-";
+		Path bakedJar = jar.resolveSibling(prefix + getKey(jar, accessWidenerHash) + ".jar");
+		if (Files.exists(bakedJar)) return bakedJar;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(jar.getParent(), prefix + "*")) {
+			for (Path stale : stream) {
+				Files.deleteIfExists(stale);
+			}
+		}
+
+		long time = System.currentTimeMillis();
+		Path tmpJar = bakedJar.resolveSibling(bakedJar.getFileName() + ".tmp");
+		int transformed = 0;
+
+		try (ZipFile input = new ZipFile(jar.toFile());
+				ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(tmpJar))) {
+			Enumeration<? extends ZipEntry> entries = input.entries();
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				output.putNextEntry(new ZipEntry(entry.getName()));
+
+				if (!entry.isDirectory()) {
+					byte[] bytes = readEntry(input, entry);
+					String name = entry.getName();
+
+					if (name.endsWith(".class") && targets.contains(name.substring(0, name.length() - 6).replace('/', '.'))) {
+						ClassReader reader = new ClassReader(bytes);
+						// passing the reader lets ASM copy the untouched methods verbatim
+						ClassWriter writer = new ClassWriter(reader, 0);
+						reader.accept(AccessWidenerVisitor.createClassVisitor(FabricLoaderImpl.ASM_VERSION, writer, accessWidener), 0);
+						bytes = writer.toByteArray();
+						transformed++;
+					}
+
+					output.write(bytes);
+				}
+
+				output.closeEntry();
+			}
+		}
+
+		Files.move(tmpJar, bakedJar, StandardCopyOption.REPLACE_EXISTING);
+		LOGGER.debug("Baked access wideners into %d classes of %s in %d ms", transformed, jar.getFileName(), System.currentTimeMillis() - time);
+
+		return bakedJar;
+	}
+
+	private static String getKey(Path jar, String accessWidenerHash) throws IOException {
+		MessageDigest digest = DigestUtil.newSha1Digest();
+		digest.update(accessWidenerHash.getBytes(StandardCharsets.UTF_8));
+		DigestUtil.updateZipContent(digest, jar);
+
+		return DigestUtil.toHex(digest.digest()).substring(0, 16);
+	}
+
+	private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+		try (InputStream is = zip.getInputStream(entry)) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+			byte[] buffer = new byte[8192];
+			int len;
+
+			while ((len = is.read(buffer)) > 0) {
+				os.write(buffer, 0, len);
+			}
+
+			return os.toByteArray();
+		}
+	}
+}
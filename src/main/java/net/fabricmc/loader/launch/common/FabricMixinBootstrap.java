@@ -20,6 +20,7 @@ import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.FabricLoaderImpl;
 import net.fabricmc.loader.api.ModContainer;
 import net.fabricmc.loader.metadata.LoaderModMetadata;
+import net.fabricmc.loader.util.SystemProperties;
 import net.fabricmc.loader.util.mappings.MixinIntermediaryDevRemapper;
 import net.fabricmc.mapping.tree.TinyTree;
 import org.apache.logging.log4j.LogManager;
@@ -39,12 +40,13 @@ public final class FabricMixinBootstrap {
 
 	protected static Logger LOGGER = LogManager.getFormatterLogger("Fabric|MixinBootstrap");
 	private static boolean initialized = false;
+	private static MixinTargetIndex targetIndex;
 
 	static void addConfiguration(String configuration) {
 		Mixins.addConfiguration(configuration);
 	}
 
-	static Set<String> getMixinConfigs(FabricLoaderImpl loader, EnvType type) {
+	public static Set<String> getMixinConfigs(FabricLoaderImpl loader, EnvType type) {
 		return loader.getAllMods().stream()
 			.map(ModContainer::getMetadata)
 			.filter((m) -> m instanceof LoaderModMetadata)
@@ -81,6 +83,18 @@ public final class FabricMixinBootstrap {
 
 		MixinBootstrap.init();
 		getMixinConfigs(loader, side).forEach(FabricMixinBootstrap::addConfiguration);
+
+		if (!Boolean.parseBoolean(System.getProperty(SystemProperties.DISABLE_MIXIN_TARGET_INDEX, "false"))) {
+			targetIndex = new MixinTargetIndex();
+		}
+
 		initialized = true;
 	}
+
+	/**
+	 * @return the index of the classes the registered mixin configs may affect, or null if it's disabled
+	 */
+	public static MixinTargetIndex getTargetIndex() {
+		return targetIndex;
+	}
 }
@@ -17,203 +17,54 @@
 package net.fabricmc.loader.launch.common;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Collection;
-import java.util.Map;
-import java.util.Optional;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import org.objectweb.asm.Type;
-
-import com.google.common.base.Strings;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Maps;
-
-import net.fabricmc.mapping.reader.v2.TinyMetadata;
-import net.fabricmc.mapping.tree.ClassDef;
-import net.fabricmc.mapping.tree.FieldDef;
-import net.fabricmc.mapping.tree.LocalVariableDef;
-import net.fabricmc.mapping.tree.MethodDef;
-import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.loader.util.DigestUtil;
+import net.fabricmc.loader.util.mappings.CompactTinyTree;
+import net.fabricmc.loader.util.mappings.MaterializedTinyTree;
 import net.fabricmc.mapping.tree.TinyMappingFactory;
 import net.fabricmc.mapping.tree.TinyTree;
 
 public class MappingConfiguration {
 	protected static Logger LOGGER = LogManager.getFormatterLogger("FabricLoader");
 
-	private static TinyTree mappings;
-	private static boolean checkedMappings;
-
-	private static TinyTree wrapTree(TinyTree mappings) {
-		return new TinyTree() {
-			final String primaryNamespace = getMetadata().getNamespaces().get(0); //If the namespaces are empty we shouldn't exist
-
-			private Optional<String> remap(String name, String namespace) {
-				return Optional.ofNullable(getDefaultNamespaceClassMap().get(name)).map(mapping -> mapping.getRawName(namespace)).map(Strings::emptyToNull);
-			}
-
-			String remapDesc(String desc, String namespace) {
-				Type type = Type.getType(desc);
-
-				switch (type.getSort()) {
-				case Type.ARRAY: {
-					StringBuilder remappedDescriptor = new StringBuilder(desc.substring(0, type.getDimensions()));
-
-					remappedDescriptor.append(remapDesc(type.getElementType().getDescriptor(), namespace));
-
-					return remappedDescriptor.toString();
-				}
-
-				case Type.OBJECT:
-					return remap(type.getInternalName(), namespace).map(name -> 'L' + name + ';').orElse(desc);
-
-				case Type.METHOD: {
-					if ("()V".equals(desc)) return desc;
-
-					StringBuilder stringBuilder = new StringBuilder("(");
-					for (Type argumentType : type.getArgumentTypes()) {
-						stringBuilder.append(remapDesc(argumentType.getDescriptor(), namespace));
-					}
-
-					Type returnType = type.getReturnType();
-					if (returnType == Type.VOID_TYPE) {
-						stringBuilder.append(")V");
-					} else {
-						stringBuilder.append(')').append(remapDesc(returnType.getDescriptor(), namespace));
-					}
+	private static volatile TinyTree mappings;
+	private static volatile boolean checkedMappings;
+	private static volatile Path cacheDirectory;
 
-					return stringBuilder.toString();
-				}
-
-				default:
-					return desc;
-				}
-			}
-
-			private ClassDef wrap(ClassDef mapping) {
-				return new ClassDef() {
-					private final boolean common = getMetadata().getNamespaces().stream().skip(1).map(this::getRawName).allMatch(Strings::isNullOrEmpty);
-
-					@Override
-					public String getRawName(String namespace) {
-						try {
-							return mapping.getRawName(common ? primaryNamespace : namespace);
-						} catch (ArrayIndexOutOfBoundsException e) {
-							return ""; //No name for the namespace
-						}
-					}
-
-					@Override
-					public String getName(String namespace) {
-						return mapping.getName(namespace);
-					}
-
-					@Override
-					public String getComment() {
-						return mapping.getComment();
-					}
-
-					@Override
-					public Collection<MethodDef> getMethods() {
-						return Collections2.transform(mapping.getMethods(), method -> new MethodDef() {
-							@Override
-							public String getRawName(String namespace) {
-								try {
-									return method.getRawName(namespace);
-								} catch (ArrayIndexOutOfBoundsException e) {
-									return ""; //No name for the namespace
-								}
-							}
-
-							@Override
-							public String getName(String namespace) {
-								return method.getName(namespace);
-							}
-
-							@Override
-							public String getComment() {
-								return method.getComment();
-							}
-
-							@Override
-							public String getDescriptor(String namespace) {
-								String desc = method.getDescriptor(primaryNamespace);
-								return primaryNamespace.equals(namespace) ? desc : remapDesc(desc, namespace);
-							}
-
-							@Override
-							public Collection<ParameterDef> getParameters() {
-								return method.getParameters();
-							}
-
-							@Override
-							public Collection<LocalVariableDef> getLocalVariables() {
-								return method.getLocalVariables();
-							}
-						});
-					}
-
-					@Override
-					public Collection<FieldDef> getFields() {
-						return Collections2.transform(mapping.getFields(), field -> new FieldDef() {
-							@Override
-							public String getRawName(String namespace) {
-								try {
-									return field.getRawName(namespace);
-								} catch (ArrayIndexOutOfBoundsException e) {
-									return ""; //No name for the namespace
-								}
-							}
-
-							@Override
-							public String getName(String namespace) {
-								return field.getName(namespace);
-							}
-
-							@Override
-							public String getComment() {
-								return field.getComment();
-							}
-
-							@Override
-							public String getDescriptor(String namespace) {
-								String desc = field.getDescriptor(primaryNamespace);
-								return primaryNamespace.equals(namespace) ? desc : remapDesc(desc, namespace);
-							}
-						});
-					}
-				};
-			}
-
-			@Override
-			public TinyMetadata getMetadata() {
-				return mappings.getMetadata();
-			}
+	/**
+	 * Sets where the binary form of the mappings is kept, without one the tiny file is parsed on every launch.
+	 */
+	public void setCacheDirectory(Path directory) {
+		cacheDirectory = directory;
+	}
 
-			@Override
-			public Map<String, ClassDef> getDefaultNamespaceClassMap() {
-				return Maps.transformValues(mappings.getDefaultNamespaceClassMap(), this::wrap);
-			}
+	public TinyTree getMappings() {
+		if (!checkedMappings) {
+			loadMappings();
+		}
 
-			@Override
-			public Collection<ClassDef> getClasses() {
-				return Collections2.transform(mappings.getClasses(), this::wrap);
-			}
-		};
+		return mappings;
 	}
 
-	public TinyTree getMappings() {
+	private static synchronized void loadMappings() {
 		if (!checkedMappings) {
 			InputStream mappingStream = FabricLauncherBase.class.getClassLoader().getResourceAsStream("mappings/mappings.tiny");
 
 			if (mappingStream != null) {
-				try (BufferedReader reader = new BufferedReader(new InputStreamReader(mappingStream))) {
+				try {
 					long time = System.currentTimeMillis();
-					mappings = wrapTree(TinyMappingFactory.loadWithDetection(reader));
+					mappings = loadMappings(mappingStream);
 					LOGGER.debug("Loading mappings took " + (System.currentTimeMillis() - time) + " ms");
 				} catch (IOException ee) {
 					ee.printStackTrace();
@@ -233,8 +84,63 @@ public class MappingConfiguration {
 
 			checkedMappings = true;
 		}
+	}
 
-		return mappings;
+	private static TinyTree loadMappings(InputStream mappingStream) throws IOException {
+		Path cacheDirectory = MappingConfiguration.cacheDirectory;
+
+		if (cacheDirectory == null) {
+			return new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new InputStreamReader(mappingStream))));
+		}
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[65536];
+		int len;
+
+		while ((len = mappingStream.read(buffer)) > 0) {
+			data.write(buffer, 0, len);
+		}
+
+		byte[] hash = DigestUtil.newSha1Digest().digest(data.toByteArray());
+		Path cacheFile = cacheDirectory.resolve(DigestUtil.toHex(hash) + ".bin");
+
+		try {
+			CompactTinyTree cached = CompactTinyTree.open(cacheFile, hash);
+
+			if (cached != null) {
+				LOGGER.debug("Using cached mappings " + cacheFile.getFileName());
+				return cached;
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Failed to read cached mappings, parsing them again", e);
+		}
+
+		TinyTree ret = new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data.toByteArray())))));
+
+		try {
+			CompactTinyTree.write(ret, hash, cacheFile);
+			deleteStaleCaches(cacheDirectory, cacheFile);
+		} catch (IOException e) {
+			LOGGER.warn("Failed to cache mappings", e);
+		}
+
+		return ret;
+	}
+
+	private static void deleteStaleCaches(Path cacheDirectory, Path current) {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*.bin")) {
+			for (Path file : stream) {
+				if (file.equals(current)) continue;
+
+				try {
+					Files.delete(file);
+				} catch (IOException e) {
+					// still mapped by another instance
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Failed to clean up cached mappings: " + e);
+		}
 	}
 
 	public String getTargetNamespace() {
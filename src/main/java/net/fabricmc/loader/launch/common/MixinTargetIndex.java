@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.common;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.transformer.Config;
+import org.spongepowered.asm.mixin.transformer.IMixinTransformer;
+import org.spongepowered.asm.mixin.transformer.ext.IExtension;
+
+/**
+ * Tells which classes the mixin transformer could change, so the others can skip it.
+ *
+ * <p>Mixin only resolves the targets of a config, including the ones from refmaps and plugin supplied mixins, once it
+ * prepares the config for its phase. Until every registered config is prepared, and whenever a mixin extension from
+ * outside of Mixin itself is active (those see every class), every class is reported as a possible target.</p>
+ */
+public final class MixinTargetIndex {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("Fabric|MixinTargetIndex");
+	private static final String MIXIN_SYNTHETIC_PACKAGE = "org.spongepowered.asm.synthetic.";
+
+	static final class Snapshot {
+		final int configCount;
+		final Set<String> targets;
+		final String[] mixinPackages;
+
+		Snapshot(int configCount, Set<String> targets, String[] mixinPackages) {
+			this.configCount = configCount;
+			this.targets = targets;
+			this.mixinPackages = mixinPackages;
+		}
+
+		boolean isPossibleTarget(String name) {
+			if (targets.contains(name) || name.startsWith(MIXIN_SYNTHETIC_PACKAGE)) return true;
+
+			// mixin refuses to load mixin classes as regular classes, that has to keep happening
+			for (String pkg : mixinPackages) {
+				if (name.startsWith(pkg)) return true;
+			}
+
+			return false;
+		}
+	}
+
+	private volatile Snapshot snapshot;
+	private volatile boolean disabled;
+
+	MixinTargetIndex() { }
+
+	/**
+	 * @param name the binary class name
+	 * @return false if no mixin can affect the class, true if one might
+	 */
+	public boolean isPossibleTarget(String name) {
+		Snapshot snapshot = getSnapshot();
+
+		return snapshot == null || snapshot.isPossibleTarget(name);
+	}
+
+	private Snapshot getSnapshot() {
+		if (disabled) return null;
+
+		Snapshot ret = snapshot;
+		int configCount = Mixins.getConfigs().size();
+
+		if (ret != null && ret.configCount == configCount) {
+			return ret;
+		}
+
+		return build(configCount);
+	}
+
+	private synchronized Snapshot build(int configCount) {
+		Snapshot ret = snapshot;
+		if (ret != null && ret.configCount == configCount) return ret;
+		if (disabled || Mixins.getUnvisitedCount() > 0) return null;
+
+		String extension = findForeignExtension();
+
+		if (extension != null) {
+			LOGGER.info("Mixin extension %s is active, all classes go through the mixin transformer", extension);
+			disabled = true;
+			return null;
+		}
+
+		Set<String> targets = new HashSet<>();
+		List<String> mixinPackages = new ArrayList<>();
+		int count = 0;
+
+		for (Config config : Mixins.getConfigs()) {
+			IMixinConfig mixinConfig = config.getConfig();
+			targets.addAll(mixinConfig.getTargets());
+			mixinPackages.add(mixinConfig.getMixinPackage());
+			count++;
+		}
+
+		ret = new Snapshot(count, targets, mixinPackages.toArray(new String[0]));
+		snapshot = ret;
+		LOGGER.debug("Indexed %d mixin targets from %d configs", targets.size(), count);
+
+		return ret.configCount == configCount ? ret : null;
+	}
+
+	private static String findForeignExtension() {
+		Object transformer = MixinEnvironment.getCurrentEnvironment().getActiveTransformer();
+		if (!(transformer instanceof IMixinTransformer)) return null;
+
+		for (IExtension extension : ((IMixinTransformer) transformer).getExtensions().getExtensions()) {
+			String name = extension.getClass().getName();
+			if (!name.startsWith("org.spongepowered.asm.")) return name;
+		}
+
+		return null;
+	}
+}
@@ -20,9 +20,13 @@ import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.FabricLoaderImpl;
 import net.fabricmc.loader.ModContainer;
 import net.fabricmc.loader.api.entrypoint.PreLaunchEntrypoint;
+import net.fabricmc.loader.discovery.ModCandidate;
+import net.fabricmc.loader.discovery.ModResolutionException;
 import net.fabricmc.loader.entrypoint.minecraft.hooks.EntrypointUtils;
 import net.fabricmc.loader.game.GameProvider;
 import net.fabricmc.loader.game.GameProviders;
+import net.fabricmc.loader.gui.FabricGuiEntry;
+import net.fabricmc.loader.launch.common.AccessWidenerBaker;
 import net.fabricmc.loader.launch.common.FabricLauncherBase;
 import net.fabricmc.loader.launch.common.FabricMixinBootstrap;
 import net.fabricmc.loader.util.SystemProperties;
@@ -101,6 +105,7 @@ public final class Knot extends FabricLauncherBase {
 		}
 
 		isDevelopment = Boolean.parseBoolean(System.getProperty(SystemProperties.DEVELOPMENT, "false"));
+		getMappingConfiguration().setCacheDirectory(provider.getLaunchDirectory().resolve(".fabric").resolve("mappings"));
 
 		// Setup classloader
 		// TODO: Provide KnotCompatibilityClassLoader in non-exclusive-Fabric pre-1.13 environments?
@@ -108,31 +113,92 @@ public final class Knot extends FabricLauncherBase {
 		classLoader = useCompatibility ? new KnotCompatibilityClassLoader(isDevelopment(), envType, provider) : new KnotClassLoader(isDevelopment(), envType, provider);
 		ClassLoader cl = (ClassLoader) classLoader;
 
-		if (provider.isObfuscated()) {
-			for (Path path : provider.getGameContextJars()) {
-				PrintStream out = System.out;
-				// The Remapper lib partly uses System.out for debugging
-				if (!LOGGER.isDebugEnabled()) {
-					System.setOut(new PrintStream(new OutputStream() {
-						public void write(int b) {}
-					}));
-				}
-				FabricLauncherBase.deobfuscate(
-						provider.getGameId(), provider.getNormalizedGameVersion(),
-						provider.getLaunchDirectory(),
-						path,
-						this
-						);
-				// And lets restore it again
-				if (!LOGGER.isDebugEnabled()) {
-					System.setOut(out);
-				}
+		Set<Path> remappedJars = new LinkedHashSet<>();
+		FabricLoaderImpl loader = FabricLoaderImpl.getInstance();
+		loader.setGameProvider(provider);
+
+		// independent stages run at the same time, the dependencies also keep the order of class path proposals
+		StartupScheduler scheduler = new StartupScheduler(Integer.getInteger(SystemProperties.STARTUP_THREADS, getDefaultStartupThreads()));
+		// parsing the mappings is only needed by the game remapping if the game jar isn't remapped yet
+		StartupScheduler.Stage mappings = scheduler.add("mappings", () -> getMappingConfiguration().getMappings());
+		// production discovery scans the mod directories, opens the jars and parses their metadata without any side
+		// effects besides logging, so it runs while the game is remapped; the mods are only added further down
+		List<ModCandidate> discoveredMods = new ArrayList<>();
+		StartupScheduler.Stage coremods = isDevelopment ? null : scheduler.add("coremods", loader::loadCore);
+		StartupScheduler.Stage modDiscovery = isDevelopment ? null : scheduler.add("modDiscovery", () -> discoveredMods.addAll(discoverMods(loader, cl)));
+		StartupScheduler.Stage gameRemap = scheduler.add("gameRemap", () -> deobfuscateGame(remappedJars));
+		// development discovery proposes class path directories, so it keeps its place in the class path order
+		if (isDevelopment) coremods = scheduler.add("coremods", loader::loadCore, gameRemap);
+		StartupScheduler.Stage coremodRemap = scheduler.add("coremodRemap", () -> remapCoremods(loader, remappedJars), mappings, gameRemap, coremods);
+		// Locate entrypoints before switching class loaders
+		StartupScheduler.Stage entrypoints = scheduler.add("entrypoints", () -> {
+			List<Path> entrypointJars = new ArrayList<>(provider.getGameContextJars());
+			entrypointJars.addAll(remappedJars);
+			provider.getEntrypointTransformer().locateEntrypoints(this, provider.getLaunchDirectory().resolve(".fabric").resolve("entrypointPatches.bin"), entrypointJars);
+		}, gameRemap, coremodRemap);
+		if (isDevelopment) modDiscovery = scheduler.add("modDiscovery", () -> discoveredMods.addAll(discoverMods(loader, cl)), coremodRemap, entrypoints);
+		// the mods are added after the coremods, they are proposed to the class loader once the loader freezes
+		StartupScheduler.Stage mods = scheduler.add("mods", () -> addMods(loader, discoveredMods), modDiscovery, coremodRemap, entrypoints);
+
+		scheduler.await(entrypoints);
+		Thread.currentThread().setContextClassLoader(cl);
+
+		scheduler.await(mods);
+		scheduler.finish();
+
+		loader.freeze();
+
+		loader.loadAccessWideners();
+
+		if (!isDevelopment && !remappedJars.isEmpty() && Boolean.parseBoolean(System.getProperty(SystemProperties.BAKE_ACCESS_WIDENERS, "false"))) {
+			bakeAccessWideners(remappedJars, loader);
+		}
+
+		MixinConfigPreloader.preload(FabricMixinBootstrap.getMixinConfigs(loader, getEnvironmentType()));
+		MixinBootstrap.init();
+		FabricMixinBootstrap.init(getEnvironmentType(), loader);
+		FabricLauncherBase.finishMixinBootstrapping();
+
+		classLoader.getDelegate().initializeTransformers();
+		classLoader.saveClassPathIndex();
+		classLoader.startPrefetch();
+
+		EntrypointUtils.invoke("preLaunch", PreLaunchEntrypoint.class, PreLaunchEntrypoint::onPreLaunch);
+
+		return cl;
+	}
+
+	private static int getDefaultStartupThreads() {
+		return Math.min(4, Runtime.getRuntime().availableProcessors());
+	}
+
+	private void deobfuscateGame(Set<Path> remappedJars) {
+		if (!provider.isObfuscated()) return;
+
+		for (Path path : provider.getGameContextJars()) {
+			PrintStream out = System.out;
+			// The Remapper lib partly uses System.out for debugging, the stages running alongside only log through log4j
+			if (!LOGGER.isDebugEnabled()) {
+				System.setOut(new PrintStream(new OutputStream() {
+					public void write(int b) {}
+				}));
+			}
+			Path deobfJar = FabricLauncherBase.deobfuscate(
+					provider.getGameId(), provider.getNormalizedGameVersion(),
+					provider.getLaunchDirectory(),
+					path,
+					this
+					);
+			// the input jar is returned as is without mappings, never write next to it
+			if (!deobfJar.equals(path)) remappedJars.add(deobfJar);
+			// And lets restore it again
+			if (!LOGGER.isDebugEnabled()) {
+				System.setOut(out);
 			}
 		}
+	}
 
-		FabricLoaderImpl loader = FabricLoaderImpl.getInstance();
-		loader.setGameProvider(provider);
-		loader.loadCore();
+	private void remapCoremods(FabricLoaderImpl loader, Set<Path> remappedJars) {
 		for (Path path : provider.getGameContextJars()) {
 			for (ModContainer m : loader.coremods) {
 				String sidedOrigin = getEnvironmentType().name().toLowerCase(Locale.ENGLISH);
@@ -194,6 +260,7 @@ public final class Knot extends FabricLauncherBase {
 				}
 				try {
 					propose(UrlUtil.asUrl(jarPath));
+					remappedJars.add(jarPath);
 				} catch (UrlConversionException e) {
 					e.printStackTrace();
 				}
@@ -201,27 +268,46 @@ public final class Knot extends FabricLauncherBase {
 		}
 
 		LOGGER.info("Coremod loading done!");
+	}
 
-		// Locate entrypoints before switching class loaders
-		provider.getEntrypointTransformer().locateEntrypoints(this);
-
-		Thread.currentThread().setContextClassLoader(cl);
-
-		loader.load();
-
-		loader.freeze();
+	private static Collection<ModCandidate> discoverMods(FabricLoaderImpl loader, ClassLoader cl) {
+		Thread thread = Thread.currentThread();
+		ClassLoader prevContextClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(cl);
 
-		loader.loadAccessWideners();
+		try {
+			return loader.discoverMods();
+		} catch (ModResolutionException e) {
+			FabricGuiEntry.displayCriticalError(e, true);
+			return Collections.emptyList();
+		} finally {
+			thread.setContextClassLoader(prevContextClassLoader);
+		}
+	}
 
-		MixinBootstrap.init();
-		FabricMixinBootstrap.init(getEnvironmentType(), loader);
-		FabricLauncherBase.finishMixinBootstrapping();
+	private static void addMods(FabricLoaderImpl loader, Collection<ModCandidate> candidates) {
+		try {
+			loader.addMods(candidates);
+		} catch (ModResolutionException e) {
+			FabricGuiEntry.displayCriticalError(e, true);
+		}
+	}
 
-		classLoader.getDelegate().initializeTransformers();
+	private void bakeAccessWideners(Collection<Path> remappedJars, FabricLoaderImpl loader) {
+		try {
+			for (Path jar : remappedJars) {
+				Path bakedJar = AccessWidenerBaker.bake(jar, loader.getAccessWidener(), loader.getAccessWidenerHash());
 
-		EntrypointUtils.invoke("preLaunch", PreLaunchEntrypoint.class, PreLaunchEntrypoint::onPreLaunch);
+				if (!bakedJar.equals(jar) && !classLoader.replaceURL(UrlUtil.asUrl(jar), UrlUtil.asUrl(bakedJar))) {
+					LOGGER.debug("Class loader can't swap " + jar.getFileName() + ", applying access wideners at runtime");
+					return;
+				}
+			}
 
-		return cl;
+			classLoader.getDelegate().setGameClassesBaked();
+		} catch (IOException | UrlConversionException e) {
+			LOGGER.warn("Failed to bake access wideners, applying them at runtime", e);
+		}
 	}
 
 	public void launch(ClassLoader cl) {
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.FabricLoaderImpl;
+import net.fabricmc.loader.util.DigestUtil;
+import net.fabricmc.loader.util.UrlConversionException;
+import net.fabricmc.loader.util.UrlUtil;
+
+/**
+ * Persistent store for the pre-mixin transformed class bytes, kept in {@code .fabric/classCache}.
+ *
+ * <p>Entries are keyed on the class name and the hash of its raw bytes. The cache directory itself is named after a
+ * fingerprint of everything else that influences the transformers (access wideners, side, development flag and the
+ * loader build), so any change to those inputs simply starts a fresh cache.</p>
+ *
+ * <p>Mixin always runs again on top of the cached bytes. Its result depends on config contents and plugin decisions
+ * that can't be fingerprinted reliably, and applying mixins has side effects (plugin callbacks, generated classes)
+ * that have to happen on every launch anyway.</p>
+ *
+ * <p>The file is append only while the game runs. Replaced records are dropped by writing the next generation of it
+ * on open once they take up too much space, and nothing is appended past {@link #MAX_FILE_SIZE}.</p>
+ */
+final class KnotClassCache {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|ClassCache");
+	private static final int MAGIC = 0x4b434332; // KCC2
+	private static final int HASH_LENGTH = 20;
+	private static final int RECORD_HEADER_SIZE = 2 + HASH_LENGTH + 4;
+	private static final long MAX_FILE_SIZE = 1L << 30;
+	private static final String FILE_PREFIX = "classes-";
+	private static final String FILE_SUFFIX = ".bin";
+
+	private static final class Record {
+		final int offset;
+		final int length;
+		final byte[] hash;
+
+		Record(int offset, int length, byte[] hash) {
+			this.offset = offset;
+			this.length = length;
+			this.hash = hash;
+		}
+	}
+
+	private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(DigestUtil::newSha1Digest);
+	private final Map<String, Record> records = new ConcurrentHashMap<>();
+	private final ByteBuffer mapped;
+	private final FileChannel output;
+	private boolean full;
+
+	private KnotClassCache(ByteBuffer mapped, FileChannel output) {
+		this.mapped = mapped;
+		this.output = output;
+	}
+
+	/**
+	 * Opens (or creates) the cache matching the current transformer inputs.
+	 *
+	 * @return the cache, or null if it could not be opened
+	 */
+	static KnotClassCache open(Path gameDir, EnvType envType, boolean isDevelopment) {
+		Path cacheRoot = gameDir.resolve(".fabric").resolve("classCache");
+		String fingerprint = computeFingerprint(envType, isDevelopment);
+
+		try {
+			deleteStaleCaches(cacheRoot, fingerprint);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to list stale class caches in %s: %s", cacheRoot, e);
+		}
+
+		return open(cacheRoot.resolve(fingerprint));
+	}
+
+	/**
+	 * Opens (or creates) the cache stored in the given directory.
+	 *
+	 * <p>The record index is read through the channel and the file is only mapped once any broken tail has been
+	 * truncated, so the file is never resized or replaced while a mapping of it is live. Compaction writes the next
+	 * generation of the file under a new name for the same reason.</p>
+	 *
+	 * @return the cache, or null if it could not be opened
+	 */
+	static KnotClassCache open(Path cacheDir) {
+		try {
+			Files.createDirectories(cacheDir);
+			Path cacheFile = compactIfNeeded(findCacheFile(cacheDir));
+
+			FileChannel output = FileChannel.open(cacheFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Map<String, Record> records = new ConcurrentHashMap<>();
+			long size = output.size();
+			long end = 0;
+
+			if (size > MAX_FILE_SIZE) {
+				LOGGER.warn("Class cache %s exceeds %d MiB, discarding it", cacheFile, MAX_FILE_SIZE >> 20);
+			} else if (size >= 4) {
+				if (readMagic(output) == MAGIC) {
+					end = readRecords(output, size, records);
+				} else {
+					LOGGER.warn("Class cache %s has an unknown format, discarding it", cacheFile);
+				}
+			}
+
+			if (end == 0) {
+				output.truncate(0);
+				writeFully(output, ByteBuffer.allocate(4).putInt(0, MAGIC), 0);
+				end = 4;
+			} else {
+				output.truncate(end); // drop a partially written tail from a crashed launch
+			}
+
+			// only ever appended to from here on, the mapped range stays valid
+			ByteBuffer mapped = records.isEmpty() ? null : output.map(FileChannel.MapMode.READ_ONLY, 0, end);
+			output.position(end);
+
+			KnotClassCache ret = new KnotClassCache(mapped, output);
+			ret.records.putAll(records);
+
+			LOGGER.debug("Opened class cache %s with %d entries", cacheDir.getFileName(), records.size());
+			return ret;
+		} catch (IOException e) {
+			LOGGER.warn("Failed to open class cache in " + cacheDir + ", transformed classes won't be cached", e);
+			return null;
+		}
+	}
+
+	void close() throws IOException {
+		output.close();
+	}
+
+	/**
+	 * Picks the newest generation of the cache file in the directory and deletes all others.
+	 */
+	private static Path findCacheFile(Path cacheDir) throws IOException {
+		List<Path> files;
+
+		try (Stream<Path> stream = Files.list(cacheDir)) {
+			files = stream.collect(Collectors.toList());
+		}
+
+		Path ret = null;
+		int retGeneration = -1;
+
+		for (Path file : files) {
+			int generation = getGeneration(file);
+
+			if (generation > retGeneration) {
+				ret = file;
+				retGeneration = generation;
+			}
+		}
+
+		for (Path file : files) {
+			if (file.equals(ret)) continue;
+
+			try {
+				Files.delete(file);
+			} catch (IOException e) {
+				LOGGER.debug("Failed to delete old class cache file %s: %s", file, e);
+			}
+		}
+
+		return ret != null ? ret : cacheDir.resolve(getFileName(0));
+	}
+
+	private static String getFileName(int generation) {
+		return FILE_PREFIX + generation + FILE_SUFFIX;
+	}
+
+	/**
+	 * @return the generation of the cache file, or -1 if it isn't one
+	 */
+	private static int getGeneration(Path file) {
+		String name = file.getFileName().toString();
+		if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) return -1;
+
+		try {
+			return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the live records to the next generation of the cache file if replaced ones take up more than half of it.
+	 *
+	 * @return the file to use from now on
+	 */
+	private static Path compactIfNeeded(Path cacheFile) throws IOException {
+		if (!Files.isRegularFile(cacheFile)) return cacheFile;
+
+		Map<String, Record> live = new LinkedHashMap<>();
+		long size;
+		Path newFile;
+
+		try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+			size = channel.size();
+			if (size < 4 || size > MAX_FILE_SIZE || readMagic(channel) != MAGIC) return cacheFile; // discarded on open
+
+			readRecords(channel, size, live);
+			long liveSize = 4;
+
+			for (Map.Entry<String, Record> entry : live.entrySet()) {
+				liveSize += getRecordSize(entry.getKey().getBytes(StandardCharsets.UTF_8).length, entry.getValue().length);
+			}
+
+			if (liveSize * 2 >= size) return cacheFile;
+
+			newFile = cacheFile.resolveSibling(getFileName(getGeneration(cacheFile) + 1));
+			Path tmpFile = newFile.resolveSibling(newFile.getFileName() + ".tmp");
+
+			try (FileChannel out = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				writeFully(out, ByteBuffer.allocate(4).putInt(0, MAGIC));
+
+				for (Map.Entry<String, Record> entry : live.entrySet()) {
+					Record record = entry.getValue();
+					ByteBuffer bytes = ByteBuffer.allocate(record.length);
+					readFully(channel, bytes, record.offset);
+					bytes.flip();
+
+					writeFully(out, encodeRecord(entry.getKey(), record.hash, bytes));
+				}
+			}
+
+			Files.move(tmpFile, newFile);
+		}
+
+		Files.delete(cacheFile);
+		LOGGER.debug("Compacted class cache from %d to %d KiB", size >> 10, Files.size(newFile) >> 10);
+
+		return newFile;
+	}
+
+	private static int readMagic(FileChannel channel) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4);
+
+		return readFully(channel, buf, 0) ? buf.getInt(0) : 0;
+	}
+
+	/**
+	 * Reads the record headers from the channel, skipping over the class bytes.
+	 *
+	 * @return the end of the last complete record
+	 */
+	private static long readRecords(FileChannel channel, long size, Map<String, Record> records) throws IOException {
+		ByteBuffer lengthBuf = ByteBuffer.allocate(2);
+		long pos = 4;
+
+		while (size - pos >= 2) {
+			lengthBuf.clear();
+			if (!readFully(channel, lengthBuf, pos)) return pos;
+
+			int nameLength = lengthBuf.getShort(0) & 0xffff;
+			long dataStart = pos + 2 + nameLength + HASH_LENGTH + 4;
+			if (dataStart > size) return pos;
+
+			ByteBuffer header = ByteBuffer.allocate(nameLength + HASH_LENGTH + 4);
+			if (!readFully(channel, header, pos + 2)) return pos;
+			header.flip();
+
+			byte[] name = new byte[nameLength];
+			header.get(name);
+			byte[] hash = new byte[HASH_LENGTH];
+			header.get(hash);
+			int length = header.getInt();
+			if (length < 0 || size - dataStart < length) return pos;
+
+			String key = new String(name, StandardCharsets.UTF_8);
+			records.remove(key); // keep the iteration order of the last write for compaction
+			records.put(key, new Record((int) dataStart, length, hash));
+			pos = dataStart + length;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * @return false if the channel ended before the buffer was filled
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			int read = channel.read(buf, position);
+			if (read < 0) return false;
+			position += read;
+		}
+
+		return true;
+	}
+
+	private static long getRecordSize(int nameLength, int length) {
+		return RECORD_HEADER_SIZE + nameLength + length;
+	}
+
+	private static ByteBuffer encodeRecord(String name, byte[] rawHash, ByteBuffer bytes) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocate((int) getRecordSize(nameBytes.length, bytes.remaining()));
+		buf.putShort((short) nameBytes.length);
+		buf.put(nameBytes);
+		buf.put(rawHash);
+		buf.putInt(bytes.remaining());
+		buf.put(bytes);
+		buf.flip();
+
+		return buf;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			position += channel.write(buf, position);
+		}
+	}
+
+	byte[] hash(byte[] raw) {
+		MessageDigest digest = digests.get();
+		digest.reset();
+		return digest.digest(raw);
+	}
+
+	/**
+	 * @return the cached pre-mixin bytes, or null if there are none for these raw bytes
+	 */
+	byte[] get(String name, byte[] rawHash) {
+		Record record = records.get(name);
+		if (record == null || mapped == null || !Arrays.equals(record.hash, rawHash)) return null;
+
+		byte[] ret = new byte[record.length];
+		ByteBuffer buf = mapped.duplicate();
+		buf.position(record.offset);
+		buf.get(ret);
+
+		return ret;
+	}
+
+	void put(String name, byte[] rawHash, byte[] bytes) {
+		ByteBuffer buf = encodeRecord(name, rawHash, ByteBuffer.wrap(bytes));
+
+		// records appended in this launch aren't visible through the mapping, so drop any stale one
+		records.remove(name);
+
+		try {
+			synchronized (output) {
+				if (full) return;
+
+				if (output.position() + buf.remaining() > MAX_FILE_SIZE) {
+					full = true;
+					LOGGER.warn("Class cache reached its size limit of %d MiB, not caching further classes", MAX_FILE_SIZE >> 20);
+					return;
+				}
+
+				writeFully(output, buf);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Failed to write class cache entry for " + name, e);
+		}
+	}
+
+	private static String computeFingerprint(EnvType envType, boolean isDevelopment) {
+		FabricLoaderImpl loader = FabricLoaderImpl.getInstance();
+		MessageDigest digest = DigestUtil.newSha1Digest();
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(envType.name()).append('\n');
+		sb.append(isDevelopment).append('\n');
+		sb.append(loader.getAccessWidenerHash()).append('\n');
+		digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		// the transformers themselves are part of the loader
+		try {
+			Path loaderPath = UrlUtil.asPath(KnotClassCache.class.getProtectionDomain().getCodeSource().getLocation());
+
+			if (Files.isRegularFile(loaderPath)) {
+				DigestUtil.updateZipContent(digest, loaderPath);
+			} else if (Files.isDirectory(loaderPath)) {
+				updateDirectoryContent(digest, loaderPath);
+			}
+		} catch (IOException | UrlConversionException | RuntimeException e) {
+			LOGGER.debug("Can't fingerprint the loader, cached classes are only valid for this launch: " + e);
+			digest.update(Long.toString(System.nanoTime()).getBytes(StandardCharsets.UTF_8));
+		}
+
+		return DigestUtil.toHex(digest.digest());
+	}
+
+	private static void updateDirectoryContent(MessageDigest digest, Path dir) throws IOException {
+		List<Path> files;
+
+		try (Stream<Path> stream = Files.walk(dir)) {
+			files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+
+		for (Path file : files) {
+			digest.update(dir.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+			digest.update(Files.readAllBytes(file));
+		}
+	}
+
+	private static void deleteStaleCaches(Path cacheRoot, String fingerprint) throws IOException {
+		if (!Files.isDirectory(cacheRoot)) return;
+
+		List<Path> stale;
+
+		try (Stream<Path> stream = Files.list(cacheRoot)) {
+			stale = stream.filter(p -> !p.getFileName().toString().equals(fingerprint)).collect(Collectors.toList());
+		}
+
+		for (Path dir : stale) {
+			try (Stream<Path> stream = Files.walk(dir)) {
+				for (Path p : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(p);
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Failed to delete stale class cache %s: %s", dir, e);
+			}
+		}
+	}
+}
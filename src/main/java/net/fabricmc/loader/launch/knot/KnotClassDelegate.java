@@ -16,7 +16,6 @@
 
 package net.fabricmc.loader.launch.knot;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
@@ -27,17 +26,22 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.CodeSource;
 import java.security.cert.Certificate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Manifest;
 
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
 import org.spongepowered.asm.mixin.transformer.FabricMixinTransformerProxy;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.game.GameProvider;
-import net.fabricmc.loader.launch.common.FabricLauncherBase;
+import net.fabricmc.loader.launch.common.FabricMixinBootstrap;
+import net.fabricmc.loader.launch.common.MixinTargetIndex;
 import net.fabricmc.loader.transformer.FabricTransformer;
+import net.fabricmc.loader.util.BoundedSoftCache;
 import net.fabricmc.loader.util.FileSystemUtil;
+import net.fabricmc.loader.util.SystemProperties;
 import net.fabricmc.loader.util.UrlConversionException;
 import net.fabricmc.loader.util.UrlUtil;
 
@@ -54,13 +58,38 @@ class KnotClassDelegate {
 		}
 	}
 
-	private final Map<String, Metadata> metadataCache = new HashMap<>();
+	static final class PreparedClass {
+		final byte[] bytes;
+		final byte[] rawHash;
+		final boolean postMixin;
+
+		PreparedClass(byte[] bytes, byte[] rawHash, boolean postMixin) {
+			this.bytes = bytes;
+			this.rawHash = rawHash;
+			this.postMixin = postMixin;
+		}
+	}
+
+	// package of the classes Mixin generates on demand, e.g. for @ModifyArgs
+	private static final String MIXIN_SYNTHETIC_PACKAGE = "org.spongepowered.asm.synthetic.";
+	private static final long PRE_MIXIN_CACHE_SIZE = 32 * 1024 * 1024;
+	private static final long CLASS_NODE_CACHE_SIZE = 2048;
+
+	private final Map<String, Metadata> metadataCache = new ConcurrentHashMap<>();
+	// mixin keeps asking for the same targets and supertypes until they get loaded, both are keyed by binary name
+	private final BoundedSoftCache<String, byte[]> preMixinClasses = new BoundedSoftCache<>(PRE_MIXIN_CACHE_SIZE, bytes -> bytes.length);
+	private final BoundedSoftCache<String, ClassNode> classNodes = new BoundedSoftCache<>(CLASS_NODE_CACHE_SIZE, node -> 1);
 	private final KnotClassLoaderInterface itf;
 	private final GameProvider provider;
 	private final boolean isDevelopment;
 	private final EnvType envType;
 	private FabricMixinTransformerProxy mixinTransformer;
-	private boolean transformInitialized = false;
+	private MixinTargetIndex mixinTargets;
+	private KnotClassCache classCache;
+	// written once by the launch thread, read by every thread loading classes
+	private volatile boolean transformInitialized = false;
+	private volatile boolean gameClassesBaked = false;
+	private volatile boolean mixinConfigsSelected = false;
 
 	KnotClassDelegate(boolean isDevelopment, EnvType envType, KnotClassLoaderInterface itf, GameProvider provider) {
 		this.isDevelopment = isDevelopment;
@@ -70,92 +99,208 @@ class KnotClassDelegate {
 	}
 
 	public void initializeTransformers() {
+		initializeTransformers(new FabricMixinTransformerProxy(), FabricMixinBootstrap.getTargetIndex());
+	}
+
+	/**
+	 * @param mixinTransformer the mixin transformer, or null to skip mixin when running without it like in tests
+	 * @param mixinTargets the classes mixin may change, or null if any class may be a target
+	 */
+	void initializeTransformers(FabricMixinTransformerProxy mixinTransformer, MixinTargetIndex mixinTargets) {
 		if (transformInitialized) {
 			throw new RuntimeException("Cannot initialize KnotClassDelegate twice!");
 		}
 
-		mixinTransformer = new FabricMixinTransformerProxy();
+		this.mixinTransformer = mixinTransformer;
+		this.mixinTargets = mixinTargets;
+
+		if (Boolean.parseBoolean(System.getProperty(SystemProperties.CLASS_CACHE, "false"))) {
+			classCache = KnotClassCache.open(provider.getLaunchDirectory(), envType, isDevelopment);
+		}
 
 		transformInitialized = true;
 	}
 
+	/**
+	 * Marks the game classes on the class path as already carrying the changes {@link FabricTransformer} would apply.
+	 */
+	void setGameClassesBaked() {
+		gameClassesBaked = true;
+	}
+
 	private FabricMixinTransformerProxy getMixinTransformer() {
 		assert mixinTransformer != null;
 		return mixinTransformer;
 	}
 
+	/**
+	 * Registers a code source as soon as it is added to the class path, so class loading never has to compute its
+	 * metadata.
+	 */
+	void addCodeSource(URL url) {
+		String codeSourceStr = url.toString();
+
+		if (!metadataCache.containsKey(codeSourceStr)) {
+			metadataCache.putIfAbsent(codeSourceStr, loadMetadata(codeSourceStr));
+		}
+	}
+
 	Metadata getMetadata(String name, URL resourceURL) {
 		if (resourceURL != null) {
-			URL codeSourceURL = null;
-			String filename = name.replace('.', '/') + ".class";
+			String codeSourceStr = null;
 
 			try {
-				codeSourceURL = UrlUtil.getSource(filename, resourceURL);
+				codeSourceStr = UrlUtil.getSourceString(getClassFileName(name), resourceURL);
 			} catch (UrlConversionException e) {
 				System.err.println("Could not find code source for " + resourceURL + ": " + e.getMessage());
 			}
 
-			if (codeSourceURL != null) {
-				return metadataCache.computeIfAbsent(codeSourceURL.toString(), (codeSourceStr) -> {
-					Manifest manifest = null;
-					CodeSource codeSource = null;
-					Certificate[] certificates = null;
-					URL fCodeSourceUrl = null;
-
-					try {
-						fCodeSourceUrl = new URL(codeSourceStr);
-						Path path = UrlUtil.asPath(fCodeSourceUrl);
-
-						if (Files.isRegularFile(path)) {
-							URLConnection connection = new URL("jar:" + codeSourceStr + "!/").openConnection();
-							if (connection instanceof JarURLConnection) {
-								manifest = ((JarURLConnection) connection).getManifest();
-								certificates = ((JarURLConnection) connection).getCertificates();
-							}
+			if (codeSourceStr != null) {
+				return getMetadata(codeSourceStr);
+			}
+		}
 
-							if (manifest == null) {
-								try (FileSystemUtil.FileSystemDelegate jarFs = FileSystemUtil.getJarFileSystem(path, false)) {
-									Path manifestPath = jarFs.get().getPath("META-INF/MANIFEST.MF");
-									if (Files.exists(manifestPath)) {
-										try (InputStream stream = Files.newInputStream(manifestPath)) {
-											manifest = new Manifest(stream);
-
-											// TODO
-											/* JarEntry codeEntry = codeSourceJar.getJarEntry(filename);
-											if (codeEntry != null) {
-												codeSource = new CodeSource(codeSourceURL, codeEntry.getCodeSigners());
-											} */
-										}
-									}
-								}
+		return Metadata.EMPTY;
+	}
+
+	Metadata getMetadata(URL codeSourceURL) {
+		return getMetadata(codeSourceURL.toString());
+	}
+
+	private Metadata getMetadata(String codeSourceStr) {
+		Metadata metadata = metadataCache.get(codeSourceStr);
+
+		if (metadata == null) {
+			// computed outside of the map so concurrent loads of other classes never wait on this I/O
+			metadata = loadMetadata(codeSourceStr);
+			Metadata prev = metadataCache.putIfAbsent(codeSourceStr, metadata);
+			if (prev != null) metadata = prev;
+		}
+
+		return metadata;
+	}
+
+	private Metadata loadMetadata(String codeSourceStr) {
+		Manifest manifest = null;
+		CodeSource codeSource = null;
+		Certificate[] certificates = null;
+		URL fCodeSourceUrl = null;
+
+		try {
+			fCodeSourceUrl = new URL(codeSourceStr);
+			Path path = UrlUtil.asPath(fCodeSourceUrl);
+
+			if (Files.isRegularFile(path)) {
+				URLConnection connection = new URL("jar:" + codeSourceStr + "!/").openConnection();
+				if (connection instanceof JarURLConnection) {
+					manifest = ((JarURLConnection) connection).getManifest();
+					certificates = ((JarURLConnection) connection).getCertificates();
+				}
+
+				if (manifest == null) {
+					try (FileSystemUtil.FileSystemDelegate jarFs = FileSystemUtil.getJarFileSystem(path, false)) {
+						Path manifestPath = jarFs.get().getPath("META-INF/MANIFEST.MF");
+						if (Files.exists(manifestPath)) {
+							try (InputStream stream = Files.newInputStream(manifestPath)) {
+								manifest = new Manifest(stream);
+
+								// TODO
+								/* JarEntry codeEntry = codeSourceJar.getJarEntry(filename);
+								if (codeEntry != null) {
+									codeSource = new CodeSource(codeSourceURL, codeEntry.getCodeSigners());
+								} */
 							}
 						}
-					} catch (IOException | FileSystemNotFoundException | UrlConversionException e) {
-						if (FabricLauncherBase.getLauncher().isDevelopment()) {
-							System.err.println("Failed to load manifest: " + e);
-							e.printStackTrace();
-						}
 					}
-
-					if (codeSource == null) {
-						codeSource = new CodeSource(fCodeSourceUrl, certificates);
-					}
-
-					return new Metadata(manifest, codeSource);
-				});
+				}
+			}
+		} catch (IOException | FileSystemNotFoundException | UrlConversionException e) {
+			if (isDevelopment) {
+				System.err.println("Failed to load manifest: " + e);
+				e.printStackTrace();
 			}
 		}
 
-		return Metadata.EMPTY;
+		if (codeSource == null) {
+			codeSource = new CodeSource(fCodeSourceUrl, certificates);
+		}
+
+		return new Metadata(manifest, codeSource);
 	}
 
 	public byte[] getPostMixinClassByteArray(String name) {
-		byte[] transformedClassArray = getPreMixinClassByteArray(name, true);
+		byte[] input;
+
+		try {
+			input = getRawClassByteArray(name, true);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
+		}
+
+		return getPostMixinClassByteArray(name, input);
+	}
+
+	/**
+	 * Runs all the class transformers on raw class bytes that were already looked up by the caller.
+	 *
+	 * @param input The raw class bytes, or null if the class isn't on the class path
+	 */
+	byte[] getPostMixinClassByteArray(String name, byte[] input) {
+		return getPostMixinClassByteArray(name, prepareClass(name, input));
+	}
+
+	/**
+	 * Runs everything up to mixin, which is safe to do off the class loading thread.
+	 *
+	 * @param input The raw class bytes, or null if the class isn't on the class path
+	 */
+	PreparedClass prepareClass(String name, byte[] input) {
 		if (!transformInitialized || !canTransformClass(name)) {
-			return transformedClassArray;
+			return new PreparedClass(input, null, true);
 		}
 
-		return getMixinTransformer().transformClassBytes(name, name, transformedClassArray);
+		return transformClassBytes(name.replace('/', '.'), input);
+	}
+
+	/**
+	 * Applies mixin to a prepared class, must be called from the thread loading the class.
+	 */
+	byte[] getPostMixinClassByteArray(String name, PreparedClass prepared) {
+		if (prepared.postMixin) {
+			return prepared.bytes;
+		}
+
+		name = name.replace('/', '.');
+		byte[] postMixin;
+
+		// mixin may still generate classes that don't exist yet, those come without bytes
+		if (mixinTransformer == null || prepared.bytes != null && mixinTargets != null && !mixinTargets.isPossibleTarget(name)) {
+			postMixin = prepared.bytes;
+		} else {
+			long start = KnotMetrics.start();
+			MixinAuditTrail auditTrail = MixinAuditTrail.ENABLED ? MixinAuditTrail.get() : null;
+			if (auditTrail != null) auditTrail.beginTarget(name);
+
+			try {
+				postMixin = getMixinTransformer().transformClassBytes(name, name, prepared.bytes);
+			} finally {
+				if (auditTrail != null) auditTrail.endTarget(name);
+			}
+
+			KnotMetrics.record(KnotMetrics.Stage.MIXIN_TRANSFORM, name, start);
+
+			if (!mixinConfigsSelected) {
+				// mixin selects its configs and reads their refmaps while transforming the first class
+				mixinConfigsSelected = true;
+				MixinConfigPreloader.clear();
+			}
+		}
+
+		if (prepared.rawHash != null && prepared.bytes != null) {
+			classCache.put(name, prepared.rawHash, prepared.bytes);
+		}
+
+		return postMixin;
 	}
 
 	/**
@@ -173,20 +318,122 @@ class KnotClassDelegate {
 			}
 		}
 
+		// the class path is searched before the original loader either way, so skipOriginalLoader doesn't change the bytes
+		byte[] ret = preMixinClasses.get(name);
+		if (ret != null) return ret;
+
+		byte[] raw;
+
+		try {
+			raw = getRawClassByteArray(name, skipOriginalLoader);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
+		}
+
+		// the class cache gets written once the class is defined, through prepareClass
+		ret = transformClassBytes(name, raw).bytes;
+		if (ret != null) preMixinClasses.put(name, ret);
+
+		return ret;
+	}
+
+	/**
+	 * Parses the pre-mixin bytes of a class for mixin, keeping the parsed node until the class gets defined.
+	 *
+	 * <p>Mixin modifies the nodes it gets (e.g. preprocessing mixin classes in place), so every call returns its own
+	 * copy of the kept node. Copying is still a lot cheaper than parsing the bytes again.</p>
+	 *
+	 * @return the class node, or null if the class doesn't exist
+	 */
+	ClassNode getPreMixinClassNode(String name) {
+		name = name.replace('/', '.');
+
+		ClassNode cached = classNodes.get(name);
+
+		if (cached == null) {
+			byte[] bytes = getPreMixinClassByteArray(name, false);
+			if (bytes == null) return null;
+
+			cached = new ClassNode();
+			new ClassReader(bytes).accept(cached, 0);
+			classNodes.put(name, cached);
+		}
+
+		ClassNode ret = new ClassNode();
+
+		// visiting a method node resets its labels, which isn't safe to do concurrently
+		synchronized (cached) {
+			cached.accept(ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Drops the cached pre-mixin state of a class once it's defined, nothing needs it anymore.
+	 */
+	void onClassDefined(String name) {
+		preMixinClasses.remove(name);
+		classNodes.remove(name);
+	}
+
+	/**
+	 * Runs the transformers before mixin, shared by class loading and mixin's lookups.
+	 *
+	 * <p>The class cache is checked first, then the pre-mixin bytes mixin's lookups already produced.</p>
+	 *
+	 * @param raw The raw class bytes, or null if the class isn't on the class path
+	 * @return the pre-mixin bytes, along with the raw hash to cache them under if the class cache doesn't have them yet
+	 */
+	private PreparedClass transformClassBytes(String name, byte[] raw) {
+		// without raw bytes there is nothing to key the cache on, mixin may still generate the class
+		byte[] rawHash = classCache != null && raw != null ? classCache.hash(raw) : null;
+
+		if (rawHash != null) {
+			byte[] cached = classCache.get(name, rawHash);
+			if (cached != null) return new PreparedClass(cached, null, false);
+		}
+
+		if (raw != null) {
+			byte[] cached = preMixinClasses.get(name);
+			if (cached != null) return new PreparedClass(cached, rawHash, false);
+		}
+
+		long start = KnotMetrics.start();
 		byte[] input = provider.getEntrypointTransformer().transform(name);
+		KnotMetrics.record(KnotMetrics.Stage.ENTRYPOINT_TRANSFORM, name, start);
+
 		if (input == null) {
-			try {
-				input = getRawClassByteArray(name, skipOriginalLoader);
-			} catch (IOException e) {
-				throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
+			if (gameClassesBaked && raw != null && FabricTransformer.isMinecraftClass(name)) {
+				// the access wideners are already applied in the game jar, nothing else touches game classes here
+				return new PreparedClass(raw, rawHash, false);
 			}
+
+			input = raw;
 		}
 
+		byte[] ret = null;
+
 		if (input != null) {
-			return FabricTransformer.transform(isDevelopment, envType, name, input);
+			start = KnotMetrics.start();
+			ret = FabricTransformer.transform(isDevelopment, envType, name, input);
+			KnotMetrics.record(KnotMetrics.Stage.FABRIC_TRANSFORM, name, start);
 		}
 
-		return null;
+		return new PreparedClass(ret, rawHash, false);
+	}
+
+	/**
+	 * Checks whether the transformers may produce a class that doesn't exist on the class path.
+	 */
+	boolean mayGenerateClass(String name) {
+		if (!transformInitialized || !canTransformClass(name)) {
+			return false;
+		}
+
+		name = name.replace('/', '.');
+
+		return name.startsWith(MIXIN_SYNTHETIC_PACKAGE) || provider.getEntrypointTransformer().transform(name) != null;
 	}
 
 	private static boolean canTransformClass(String name) {
@@ -200,21 +447,6 @@ class KnotClassDelegate {
 	}
 
 	public byte[] getRawClassByteArray(String name, boolean skipOriginalLoader) throws IOException {
-		String classFile = getClassFileName(name);
-		InputStream inputStream = itf.getResourceAsStream(classFile, skipOriginalLoader);
-		if (inputStream == null) {
-			return null;
-		}
-
-		int a = inputStream.available();
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(a < 32 ? 32768 : a);
-		byte[] buffer = new byte[8192];
-		int len;
-		while ((len = inputStream.read(buffer)) > 0) {
-			outputStream.write(buffer, 0, len);
-		}
-
-		inputStream.close();
-		return outputStream.toByteArray();
+		return itf.getRawResourceBytes(getClassFileName(name), skipOriginalLoader);
 	}
 }
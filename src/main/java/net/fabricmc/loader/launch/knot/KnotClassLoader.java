@@ -18,14 +18,20 @@ package net.fabricmc.loader.launch.knot;
 
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.game.GameProvider;
+import net.fabricmc.loader.util.SystemProperties;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterface {
 	private static class DynamicURLClassLoader extends URLClassLoader {
@@ -43,15 +49,23 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 		}
 	}
 
+	private static final int MAX_PARENT_MISSES = 65536;
+
 	private final DynamicURLClassLoader urlLoader;
 	private final ClassLoader originalLoader;
 	private final KnotClassDelegate delegate;
+	private final KnotClassPath classPath;
+	private final KnotClassPrefetcher prefetcher;
+	private final Set<String> parentMisses = ConcurrentHashMap.newKeySet();
 
 	KnotClassLoader(boolean isDevelopment, EnvType envType, GameProvider provider) {
 		super(new DynamicURLClassLoader(new URL[0]));
 		this.originalLoader = getClass().getClassLoader();
 		this.urlLoader = (DynamicURLClassLoader) getParent();
 		this.delegate = new KnotClassDelegate(isDevelopment, envType, this, provider);
+		this.classPath = new KnotClassPath(provider.getLaunchDirectory());
+		KnotMetrics.init(provider.getLaunchDirectory());
+		this.prefetcher = Boolean.parseBoolean(System.getProperty(SystemProperties.CLASS_LOAD_TRACE, "false")) ? new KnotClassPrefetcher(provider.getLaunchDirectory()) : null;
 	}
 
 	@Override
@@ -61,35 +75,62 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 
 	@Override
 	public boolean isClassLoaded(String name) {
-		synchronized (getClassLoadingLock(name)) {
-			return findLoadedClass(name) != null;
-		}
+		// findLoadedClass is thread safe on its own. Taking the class loading lock here would invert the lock order
+		// against loadClass: mixin calls this while holding its processor's monitor, which loadClass acquires while
+		// holding a class loading lock.
+		return findLoadedClass(name) != null;
 	}
 
 	@Override
 	public URL getResource(String name) {
 		Objects.requireNonNull(name);
 
-		URL url = urlLoader.getResource(name);
-		if (url == null) {
+		URL url;
+
+		try {
+			url = classPath.findResource(name);
+		} catch (IOException e) {
+			url = null;
+		}
+
+		if (url == null && !parentMisses.contains(name)) {
 			url = originalLoader.getResource(name);
+			if (url == null) addParentMiss(name);
 		}
+
 		return url;
 	}
 
 	@Override
 	protected URL findResource(String name) {
-		return urlLoader.findResource(name);
+		try {
+			return classPath.findResource(name);
+		} catch (IOException e) {
+			return null;
+		}
 	}
 
 	@Override
 	public InputStream getResourceAsStream(String name) {
 		Objects.requireNonNull(name);
 
-		InputStream inputStream = urlLoader.getResourceAsStream(name);
-		if (inputStream == null) {
-			inputStream = originalLoader.getResourceAsStream(name);
+		InputStream inputStream;
+
+		try {
+			inputStream = classPath.getResourceAsStream(name);
+		} catch (IOException e) {
+			inputStream = null;
+		}
+
+		if (inputStream != null) {
+			return inputStream;
+		} else if (parentMisses.contains(name)) {
+			return null;
 		}
+
+		inputStream = originalLoader.getResourceAsStream(name);
+		if (inputStream == null) addParentMiss(name);
+
 		return inputStream;
 	}
 
@@ -97,46 +138,32 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 	public Enumeration<URL> getResources(String name) throws IOException {
 		Objects.requireNonNull(name);
 
-		Enumeration<URL> first = urlLoader.getResources(name);
-		Enumeration<URL> second = originalLoader.getResources(name);
-		return new Enumeration<URL>() {
-			Enumeration<URL> current = first;
+		List<URL> first = classPath.findResources(name);
+		if (parentMisses.contains(name)) return Collections.enumeration(first);
 
-			@Override
-			public boolean hasMoreElements() {
-				if (current == null) {
-					return false;
-				}
-
-				if (current.hasMoreElements()) {
-					return true;
-				}
+		Enumeration<URL> second = originalLoader.getResources(name);
 
-				if (current == first && second.hasMoreElements()) {
-					return true;
-				}
+		if (!second.hasMoreElements()) {
+			addParentMiss(name);
+			return Collections.enumeration(first);
+		} else if (first.isEmpty()) {
+			return second;
+		}
 
-				return false;
-			}
+		List<URL> ret = new ArrayList<>(first);
 
-			@Override
-			public URL nextElement() {
-				if (current == null) {
-					return null;
-				}
+		while (second.hasMoreElements()) {
+			ret.add(second.nextElement());
+		}
 
-				if (!current.hasMoreElements()) {
-					if (current == first) {
-						current = second;
-					} else {
-						current = null;
-						return null;
-					}
-				}
+		return Collections.enumeration(ret);
+	}
 
-				return current.nextElement();
-			}
-		};
+	private void addParentMiss(String name) {
+		// the original loader's class path is fixed, so its misses stay misses
+		if (parentMisses.size() < MAX_PARENT_MISSES) {
+			parentMisses.add(name);
+		}
 	}
 
 	@Override
@@ -147,20 +174,59 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 			// FIXME: remove the GSON exclusion once loader stops using gson.
 			// We now repackage Gson's JsonReader so removal is now possible
 			if (c == null && !name.startsWith("com.google.gson.") && !name.startsWith("java.")) {
-				byte[] input = delegate.getPostMixinClassByteArray(name);
+				long loadStart = KnotMetrics.start();
+				KnotClassPrefetcher.Prefetched prefetched = prefetcher != null ? prefetcher.take(name) : null;
+				KnotClassPath.Resource resource;
+				byte[] input;
+
+				if (prefetched != null) {
+					resource = prefetched.resource;
+					input = delegate.getPostMixinClassByteArray(name, prefetched.prepared);
+				} else {
+					try {
+						// one lookup for both the bytes and the code source
+						long start = KnotMetrics.start();
+						resource = classPath.getResource(delegate.getClassFileName(name));
+						KnotMetrics.record(KnotMetrics.Stage.RAW_READ, name, start);
+					} catch (IOException e) {
+						throw new RuntimeException("Failed to load class file for '" + name + "'!", e);
+					}
+
+					// mixin generates inner classes next to their targets, so a miss in a package we have entries in
+					// has to be offered to it. Other packages can only be the parent's (e.g. libraries).
+					if (resource != null || classPath.hasPackage(delegate.getClassFileName(name)) || delegate.mayGenerateClass(name)) {
+						input = delegate.getPostMixinClassByteArray(name, resource != null ? resource.bytes : null);
+					} else {
+						input = null;
+					}
+				}
+
 				if (input != null) {
-					KnotClassDelegate.Metadata metadata = delegate.getMetadata(name, urlLoader.getResource(delegate.getClassFileName(name)));
+					KnotClassDelegate.Metadata metadata = resource != null ? delegate.getMetadata(resource.codeSource) : KnotClassDelegate.Metadata.EMPTY;
 
 					int pkgDelimiterPos = name.lastIndexOf('.');
 					if (pkgDelimiterPos > 0) {
 						// TODO: package definition stub
 						String pkgString = name.substring(0, pkgDelimiterPos);
 						if (getPackage(pkgString) == null) {
-							definePackage(pkgString, null, null, null, null, null, null, null);
+							try {
+								definePackage(pkgString, null, null, null, null, null, null, null);
+							} catch (IllegalArgumentException e) {
+								// defined concurrently by a thread loading another class of the same package
+								if (getPackage(pkgString) == null) throw e;
+							}
 						}
 					}
 
+					long start = KnotMetrics.start();
 					c = defineClass(name, input, 0, input.length, metadata.codeSource);
+					KnotMetrics.record(KnotMetrics.Stage.DEFINE, name, start);
+					KnotMetrics.recordClass(name, loadStart);
+					delegate.onClassDefined(name);
+
+					if (prefetcher != null) {
+						prefetcher.recordDefinition(name);
+					}
 				}
 			}
 
@@ -178,7 +244,31 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 
 	@Override
 	public void addURL(URL url) {
+		// lookups go through classPath, the URL loader is only kept up to date for code inspecting our parent
 		urlLoader.addURL(url);
+		classPath.addURL(url);
+		delegate.addCodeSource(url);
+	}
+
+	@Override
+	public boolean replaceURL(URL oldUrl, URL newUrl) {
+		if (!classPath.replaceURL(oldUrl, newUrl)) return false;
+
+		urlLoader.addURL(newUrl);
+		delegate.addCodeSource(newUrl);
+		return true;
+	}
+
+	@Override
+	public void saveClassPathIndex() {
+		classPath.save();
+	}
+
+	@Override
+	public void startPrefetch() {
+		if (prefetcher != null) {
+			prefetcher.start(classPath, delegate);
+		}
 	}
 
 	static {
@@ -187,10 +277,31 @@ class KnotClassLoader extends SecureClassLoader implements KnotClassLoaderInterf
 
 	@Override
 	public InputStream getResourceAsStream(String classFile, boolean skipOriginalLoader) throws IOException {
-		InputStream inputStream = urlLoader.getResourceAsStream(classFile);
-		if (inputStream == null && !skipOriginalLoader) {
+		InputStream inputStream = classPath.getResourceAsStream(classFile);
+		if (inputStream == null && !skipOriginalLoader && !parentMisses.contains(classFile)) {
 			inputStream = originalLoader.getResourceAsStream(classFile);
+			if (inputStream == null) addParentMiss(classFile);
 		}
 		return inputStream;
 	}
+
+	@Override
+	public byte[] getRawResourceBytes(String classFile, boolean skipOriginalLoader) throws IOException {
+		KnotClassPath.Resource resource = classPath.getResource(classFile);
+		if (resource != null) {
+			return resource.bytes;
+		}
+
+		if (!skipOriginalLoader && !parentMisses.contains(classFile)) {
+			try (InputStream inputStream = originalLoader.getResourceAsStream(classFile)) {
+				if (inputStream != null) {
+					return KnotClassPath.readFully(inputStream, -1);
+				}
+			}
+
+			addParentMiss(classFile);
+		}
+
+		return null;
+	}
 }
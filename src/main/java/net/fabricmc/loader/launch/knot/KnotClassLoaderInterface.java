@@ -24,5 +24,9 @@ interface KnotClassLoaderInterface {
 	KnotClassDelegate getDelegate();
 	boolean isClassLoaded(String name);
 	void addURL(URL url);
+	boolean replaceURL(URL oldUrl, URL newUrl);
+	void saveClassPathIndex();
+	void startPrefetch();
 	InputStream getResourceAsStream(String filename, boolean skipOriginalLoader) throws IOException;
+	byte[] getRawResourceBytes(String filename, boolean skipOriginalLoader) throws IOException;
 }
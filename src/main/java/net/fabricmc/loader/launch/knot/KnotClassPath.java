@@ -0,0 +1,775 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.fabricmc.loader.util.FileSystemUtil;
+import net.fabricmc.loader.util.MappedJarFile;
+import net.fabricmc.loader.util.UrlConversionException;
+import net.fabricmc.loader.util.UrlUtil;
+
+/**
+ * Knot's view of the URLs proposed to it, indexed by package.
+ *
+ * <p>Every code source is split into the set of directories ("packages") it has entries in, so a lookup only has to
+ * probe the few code sources that can contain the requested name instead of walking the whole class path in order.
+ * The package lists of regular jar files are persisted in {@code .fabric/classPathIndex.bin}, keyed on each jar's
+ * path, size and modification time, so they don't have to be rebuilt on every launch.</p>
+ *
+ * <p>Directories aren't indexed since their content may change while the game runs (e.g. dev output being
+ * recompiled), they are probed for every lookup instead. Only file entries are indexed, lookups of directory entries
+ * scan all code sources. Returned URLs are built the same way {@link URLClassLoader} builds them.</p>
+ */
+final class KnotClassPath {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|ClassPath");
+	private static final int INDEX_MAGIC = 0x4b435031; // KCP1
+	private static final Root[] NO_ROOTS = new Root[0];
+	private static final Comparator<Root> ROOT_ORDER = Comparator.comparingInt(root -> root.ordinal);
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final BitSet ENCODED_IN_PATH = new BitSet(128);
+
+	static {
+		// reserved in path segments or excluded from URIs (RFC 2396), '/' separates the segments and stays
+		for (char c : "=;?# <>%\"{}|\\^[]`".toCharArray()) {
+			ENCODED_IN_PATH.set(c);
+		}
+
+		ENCODED_IN_PATH.set(0, 0x20);
+		ENCODED_IN_PATH.set(0x7f);
+	}
+
+	static final class Resource {
+		final URL codeSource;
+		final byte[] bytes;
+
+		Resource(URL codeSource, byte[] bytes) {
+			this.codeSource = codeSource;
+			this.bytes = bytes;
+		}
+	}
+
+	private abstract static class Root {
+		final URL url;
+		final int ordinal;
+
+		Root(URL url, int ordinal) {
+			this.url = url;
+			this.ordinal = ordinal;
+		}
+
+		/**
+		 * @return the content of the given entry, or null if this root doesn't contain it
+		 */
+		abstract byte[] read(String name) throws IOException;
+
+		/**
+		 * @return a stream over the given entry, or null if this root doesn't contain it
+		 */
+		abstract InputStream open(String name) throws IOException;
+
+		/**
+		 * @return the URL of the given file entry, or null if this root doesn't contain it
+		 */
+		abstract URL getURL(String name) throws IOException;
+
+		/**
+		 * @return the URL of the given directory entry, or null if this root doesn't contain it
+		 */
+		abstract URL getDirectoryURL(String name) throws IOException;
+
+		URL getArchiveURL(String name) throws MalformedURLException {
+			return new URL(new URL("jar", "", -1, url + "!/"), encodePath(name));
+		}
+	}
+
+	private static final class JarRoot extends Root {
+		final MappedJarFile mappedJar;
+		final JarFile jar;
+		final String[] packages;
+		final long size, lastModified;
+
+		JarRoot(URL url, int ordinal, MappedJarFile mappedJar, JarFile jar, String[] packages, long size, long lastModified) {
+			super(url, ordinal);
+			this.mappedJar = mappedJar;
+			this.jar = jar;
+			this.packages = packages;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			if (mappedJar != null) {
+				return mappedJar.read(name);
+			}
+
+			JarEntry entry = jar.getJarEntry(name);
+			if (entry == null || entry.isDirectory()) return null;
+
+			try (InputStream stream = jar.getInputStream(entry)) {
+				return readFully(stream, entry.getSize());
+			}
+		}
+
+		@Override
+		InputStream open(String name) throws IOException {
+			if (mappedJar != null) {
+				return mappedJar.openStream(name);
+			}
+
+			JarEntry entry = jar.getJarEntry(name);
+			if (entry == null || entry.isDirectory()) return null;
+
+			return jar.getInputStream(entry);
+		}
+
+		@Override
+		URL getURL(String name) throws IOException {
+			boolean found;
+
+			if (mappedJar != null) {
+				found = mappedJar.contains(name);
+			} else {
+				JarEntry entry = jar.getJarEntry(name);
+				found = entry != null && !entry.isDirectory();
+			}
+
+			return found ? getArchiveURL(name) : null;
+		}
+
+		@Override
+		URL getDirectoryURL(String name) throws IOException {
+			if (name.isEmpty()) return null;
+
+			boolean found;
+
+			if (mappedJar != null) {
+				found = mappedJar.containsDirectory(name);
+			} else {
+				JarEntry entry = jar.getJarEntry(name);
+				found = entry != null && entry.isDirectory();
+			}
+
+			return found ? getArchiveURL(name) : null;
+		}
+	}
+
+	private static final class PathRoot extends Root {
+		final Path root;
+		final boolean archive;
+
+		PathRoot(URL url, int ordinal, Path root, boolean archive) {
+			super(url, ordinal);
+			this.root = root.toAbsolutePath().normalize();
+			this.archive = archive;
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			Path path = resolve(name);
+			if (path == null || !Files.isRegularFile(path)) return null;
+
+			return Files.readAllBytes(path);
+		}
+
+		@Override
+		InputStream open(String name) throws IOException {
+			Path path = resolve(name);
+			if (path == null || !Files.isRegularFile(path)) return null;
+
+			return Files.newInputStream(path);
+		}
+
+		@Override
+		URL getURL(String name) throws IOException {
+			Path path = resolve(name);
+			if (path == null || !Files.isRegularFile(path)) return null;
+
+			return getEntryURL(name);
+		}
+
+		@Override
+		URL getDirectoryURL(String name) throws IOException {
+			if (archive && name.isEmpty()) return null; // like jars
+
+			Path path = resolve(name);
+			if (path == null || !Files.isDirectory(path)) return null;
+
+			return getEntryURL(name);
+		}
+
+		/**
+		 * @return the path of the given entry, or null if the name points outside of this root (e.g. "../x")
+		 */
+		private Path resolve(String name) {
+			Path ret;
+
+			try {
+				ret = root.resolve(name).normalize();
+			} catch (InvalidPathException e) {
+				return null;
+			}
+
+			return ret.startsWith(root) ? ret : null;
+		}
+
+		private URL getEntryURL(String name) throws MalformedURLException {
+			if (archive) return getArchiveURL(name);
+
+			String base = url.toString();
+			return new URL(base.endsWith("/") ? url : new URL(base + "/"), encodePath(name));
+		}
+
+		boolean hasPackage(String pkg) {
+			Path path = resolve(pkg);
+
+			return path != null && Files.isDirectory(path);
+		}
+	}
+
+	/**
+	 * Fallback for URLs we can't open ourselves, always probed.
+	 */
+	private static final class UrlRoot extends Root {
+		final URLClassLoader loader;
+
+		UrlRoot(URL url, int ordinal) {
+			super(url, ordinal);
+			this.loader = new URLClassLoader(new URL[] { url }, null);
+		}
+
+		@Override
+		byte[] read(String name) throws IOException {
+			URL resource = loader.findResource(name);
+			if (resource == null) return null;
+
+			try (InputStream stream = resource.openStream()) {
+				return readFully(stream, -1);
+			}
+		}
+
+		@Override
+		InputStream open(String name) throws IOException {
+			URL resource = loader.findResource(name);
+
+			return resource != null ? resource.openStream() : null;
+		}
+
+		@Override
+		URL getURL(String name) {
+			return loader.findResource(name);
+		}
+
+		@Override
+		URL getDirectoryURL(String name) {
+			// getURL already returns directories, only directory lookups skip it
+			return isDirectoryName(name) ? loader.findResource(name) : null;
+		}
+	}
+
+	private final Path indexFile;
+	private final Map<String, Root[]> packageIndex = new ConcurrentHashMap<>();
+	private final List<Root> probedRoots = new CopyOnWriteArrayList<>();
+	private final List<Root> allRoots = new CopyOnWriteArrayList<>();
+	private final List<JarRoot> jarRoots = new CopyOnWriteArrayList<>();
+	private Map<String, String[]> persistedPackages;
+	private int rootCount;
+	private boolean dirty;
+
+	KnotClassPath(Path gameDir) {
+		this.indexFile = gameDir.resolve(".fabric").resolve("classPathIndex.bin");
+	}
+
+	synchronized void addURL(URL url) {
+		addURL(url, rootCount++);
+	}
+
+	/**
+	 * Swaps a code source for another one, keeping its position on the class path.
+	 *
+	 * @return whether the URL to replace was present
+	 */
+	synchronized boolean replaceURL(URL oldUrl, URL newUrl) {
+		String oldUrlStr = oldUrl.toString();
+		Set<Root> oldRoots = new HashSet<>();
+
+		for (Root root : allRoots) {
+			if (root.url.toString().equals(oldUrlStr)) oldRoots.add(root);
+		}
+
+		if (oldRoots.isEmpty()) return false;
+
+		// add before removing, so concurrent lookups always find one of them
+		for (Root root : oldRoots) {
+			addURL(newUrl, root.ordinal);
+		}
+
+		for (String pkg : packageIndex.keySet()) {
+			packageIndex.computeIfPresent(pkg, (k, roots) -> {
+				List<Root> ret = new ArrayList<>(Arrays.asList(roots));
+				ret.removeAll(oldRoots);
+
+				return ret.isEmpty() ? null : ret.toArray(NO_ROOTS);
+			});
+		}
+
+		probedRoots.removeAll(oldRoots);
+		allRoots.removeAll(oldRoots);
+		jarRoots.removeAll(oldRoots);
+
+		for (Root root : oldRoots) {
+			if (root instanceof JarRoot && ((JarRoot) root).mappedJar != null) {
+				((JarRoot) root).mappedJar.close();
+			}
+		}
+
+		return true;
+	}
+
+	private void addURL(URL url, int ordinal) {
+		try {
+			Path path = UrlUtil.asPath(url);
+
+			if (Files.isDirectory(path)) {
+				addProbedRoot(new PathRoot(url, ordinal, path, false));
+			} else {
+				addJar(url, ordinal, path);
+			}
+		} catch (IOException | UrlConversionException | RuntimeException e) {
+			LOGGER.debug("Can't index %s, falling back to a plain URL lookup: %s", url, e);
+			addProbedRoot(new UrlRoot(url, ordinal));
+		}
+	}
+
+	private void addJar(URL url, int ordinal, Path path) throws IOException {
+		MappedJarFile mappedJar = null;
+
+		try {
+			mappedJar = MappedJarFile.open(path);
+		} catch (ZipException e) {
+			LOGGER.debug("Can't map %s, using JarFile instead: %s", path, e.getMessage());
+		}
+
+		if (path.getFileSystem() != FileSystems.getDefault()) {
+			// jars nested in mods are extracted to an in-memory file system, they aren't worth persisting
+			if (mappedJar != null) {
+				addRoot(new JarRoot(url, ordinal, mappedJar, null, null, -1, -1), listPackages(mappedJar.getEntryNames()));
+			} else {
+				// JarFile can't open those either
+				Path root = FileSystemUtil.getJarFileSystem(path, false).get().getRootDirectories().iterator().next();
+				addRoot(new PathRoot(url, ordinal, root, true), listPackages(root));
+			}
+
+			return;
+		}
+
+		long size = Files.size(path);
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+		JarFile jar = mappedJar == null ? new JarFile(path.toFile()) : null;
+		String key = getIndexKey(path, size, lastModified);
+		String[] packages = getPersistedPackages().get(key);
+
+		if (packages == null) {
+			Set<String> set;
+
+			if (mappedJar != null) {
+				set = listPackages(mappedJar.getEntryNames());
+			} else {
+				set = new HashSet<>();
+				Enumeration<JarEntry> entries = jar.entries();
+
+				while (entries.hasMoreElements()) {
+					ZipEntry entry = entries.nextElement();
+					if (!entry.isDirectory()) set.add(getPackage(entry.getName()));
+				}
+			}
+
+			packages = set.toArray(new String[0]);
+			dirty = true;
+		}
+
+		JarRoot root = new JarRoot(url, ordinal, mappedJar, jar, packages, size, lastModified);
+		jarRoots.add(root);
+		addRoot(root, Arrays.asList(packages));
+	}
+
+	private void addProbedRoot(Root root) {
+		probedRoots.add(root);
+		allRoots.add(root);
+	}
+
+	private void addRoot(Root root, Iterable<String> packages) {
+		allRoots.add(root);
+
+		for (String pkg : packages) {
+			packageIndex.compute(pkg, (k, roots) -> {
+				if (roots == null) return new Root[] { root };
+
+				// keep class path order, roots may be replaced out of order
+				int pos = roots.length;
+				while (pos > 0 && roots[pos - 1].ordinal > root.ordinal) pos--;
+
+				Root[] ret = new Root[roots.length + 1];
+				System.arraycopy(roots, 0, ret, 0, pos);
+				ret[pos] = root;
+				System.arraycopy(roots, pos, ret, pos + 1, roots.length - pos);
+				return ret;
+			});
+		}
+	}
+
+	private static Set<String> listPackages(Collection<String> entryNames) {
+		Set<String> ret = new HashSet<>();
+
+		for (String name : entryNames) {
+			ret.add(getPackage(name));
+		}
+
+		return ret;
+	}
+
+	private static Set<String> listPackages(Path root) throws IOException {
+		Set<String> ret = new HashSet<>();
+
+		try (Stream<Path> stream = Files.walk(root)) {
+			stream.filter(Files::isRegularFile).forEach(p -> ret.add(getPackage(toEntryName(root, p))));
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Looks up a class path entry, returning both its content and its code source.
+	 *
+	 * <p>Names in packages none of the code sources have entries in are rejected with a single map lookup, the others
+	 * are checked against the entry tables of the candidate jars before anything gets read. A null result therefore
+	 * means the entry definitely isn't on this class path.</p>
+	 */
+	Resource getResource(String name) throws IOException {
+		for (Root root : getRoots(name)) {
+			byte[] bytes = root.read(name);
+
+			if (bytes != null) {
+				return new Resource(root.url, bytes);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Opens the first class path entry with the given name, looked up like in {@link #getResource}.
+	 *
+	 * <p>Unlike {@link #getResource} the content isn't read upfront, large entries are streamed.</p>
+	 */
+	InputStream getResourceAsStream(String name) throws IOException {
+		for (Root root : getRoots(name)) {
+			InputStream ret = root.open(name);
+			if (ret != null) return ret;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Looks up the URL of the first class path entry with the given name, which may also be a directory.
+	 *
+	 * <p>File entries are looked up like in {@link #getResource}, directory entries need a scan of all code
+	 * sources.</p>
+	 */
+	URL findResource(String name) throws IOException {
+		if (!isDirectoryName(name)) {
+			for (Root root : getRoots(name)) {
+				URL ret = root.getURL(name);
+				if (ret != null) return ret;
+			}
+		}
+
+		for (Root root : getAllRoots()) {
+			URL ret = root.getDirectoryURL(name);
+			if (ret != null) return ret;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Looks up the URLs of all class path entries with the given name, file or directory, in class path order.
+	 */
+	List<URL> findResources(String name) throws IOException {
+		Set<Root> candidates = isDirectoryName(name) ? Collections.emptySet() : new HashSet<>(Arrays.asList(getRoots(name)));
+		List<URL> ret = null;
+
+		for (Root root : getAllRoots()) {
+			URL url = candidates.contains(root) ? root.getURL(name) : null;
+			if (url == null) url = root.getDirectoryURL(name);
+
+			if (url != null) {
+				if (ret == null) ret = new ArrayList<>();
+				ret.add(url);
+			}
+		}
+
+		return ret != null ? ret : Collections.emptyList();
+	}
+
+	/**
+	 * Checks whether any code source has entries in the package of the given entry name.
+	 *
+	 * <p>Directories are checked on disk, URLs we can't open ourselves may contain any package.</p>
+	 */
+	boolean hasPackage(String name) {
+		String pkg = getPackage(name);
+		if (packageIndex.containsKey(pkg)) return true;
+
+		for (Root root : probedRoots) {
+			if (!(root instanceof PathRoot) || ((PathRoot) root).hasPackage(pkg)) return true;
+		}
+
+		return false;
+	}
+
+	private Root[] getRoots(String name) {
+		Root[] roots = packageIndex.getOrDefault(getPackage(name), NO_ROOTS);
+
+		if (!probedRoots.isEmpty()) {
+			roots = mergeProbed(roots);
+		}
+
+		return roots;
+	}
+
+	private Root[] mergeProbed(Root[] roots) {
+		List<Root> ret = new ArrayList<>(roots.length + probedRoots.size());
+		ret.addAll(Arrays.asList(roots));
+		ret.addAll(probedRoots);
+		ret.sort(ROOT_ORDER);
+
+		return ret.toArray(NO_ROOTS);
+	}
+
+	private List<Root> getAllRoots() {
+		List<Root> ret = new ArrayList<>(allRoots);
+		ret.sort(ROOT_ORDER);
+
+		return ret;
+	}
+
+	private static boolean isDirectoryName(String name) {
+		return name.isEmpty() || name.endsWith("/");
+	}
+
+	/**
+	 * Percent-encodes an entry name for use in a URL path, matching {@code sun.net.www.ParseUtil.encodePath(name,
+	 * false)} which {@link URLClassLoader} uses.
+	 */
+	static String encodePath(String name) {
+		StringBuilder ret = null;
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (c < 0x80 && !ENCODED_IN_PATH.get(c)) {
+				if (ret != null) ret.append(c);
+				continue;
+			}
+
+			if (ret == null) ret = new StringBuilder(name.length() + 16).append(name, 0, i);
+
+			// UTF-8 per char like ParseUtil, surrogates included
+			if (c < 0x80) {
+				appendEscaped(ret, c);
+			} else if (c < 0x800) {
+				appendEscaped(ret, 0xc0 | (c >> 6));
+				appendEscaped(ret, 0x80 | (c & 0x3f));
+			} else {
+				appendEscaped(ret, 0xe0 | (c >> 12));
+				appendEscaped(ret, 0x80 | ((c >> 6) & 0x3f));
+				appendEscaped(ret, 0x80 | (c & 0x3f));
+			}
+		}
+
+		return ret != null ? ret.toString() : name;
+	}
+
+	private static void appendEscaped(StringBuilder sb, int b) {
+		sb.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+	}
+
+	/**
+	 * Persists the package lists of all regular jar files, if any had to be rebuilt.
+	 */
+	synchronized void save() {
+		if (!dirty) return;
+
+		try {
+			Files.createDirectories(indexFile.getParent());
+			Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+			try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+				os.writeInt(INDEX_MAGIC);
+				os.writeInt(jarRoots.size());
+
+				for (JarRoot root : jarRoots) {
+					os.writeUTF(getIndexKey(UrlUtil.asPath(root.url), root.size, root.lastModified));
+					os.writeInt(root.packages.length);
+
+					for (String pkg : root.packages) {
+						os.writeUTF(pkg);
+					}
+				}
+			}
+
+			Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+			dirty = false;
+		} catch (IOException | UrlConversionException e) {
+			LOGGER.debug("Failed to save class path index: %s", e);
+		}
+	}
+
+	private Map<String, String[]> getPersistedPackages() {
+		if (persistedPackages != null) return persistedPackages;
+
+		persistedPackages = new HashMap<>();
+		if (!Files.isRegularFile(indexFile)) return persistedPackages;
+
+		try (DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			long size = Files.size(indexFile);
+			if (is.readInt() != INDEX_MAGIC) return persistedPackages;
+
+			int count = is.readInt();
+			// every jar takes at least its key and package count, every package its length, anything claiming more is damaged
+			if (count < 0 || count > size / 6) throw new IOException("invalid jar count: " + count);
+
+			for (int i = 0; i < count; i++) {
+				String key = is.readUTF();
+				int packageCount = is.readInt();
+				if (packageCount < 0 || packageCount > size / 2) throw new IOException("invalid package count: " + packageCount);
+
+				String[] packages = new String[packageCount];
+
+				for (int j = 0; j < packages.length; j++) {
+					packages[j] = is.readUTF();
+				}
+
+				persistedPackages.put(key, packages);
+			}
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Failed to read class path index: %s", e);
+			persistedPackages.clear();
+			dirty = true;
+		}
+
+		return persistedPackages;
+	}
+
+	private static String getIndexKey(Path path, long size, long lastModified) {
+		return path.toAbsolutePath() + "|" + size + "|" + lastModified;
+	}
+
+	static String getPackage(String name) {
+		int pos = name.lastIndexOf('/');
+
+		return pos < 0 ? "" : name.substring(0, pos);
+	}
+
+	private static String toEntryName(Path root, Path path) {
+		String ret = root.relativize(path).toString();
+		String separator = root.getFileSystem().getSeparator();
+
+		return separator.equals("/") ? ret : ret.replace(separator, "/");
+	}
+
+	static byte[] readFully(InputStream stream, long size) throws IOException {
+		if (size >= 0 && size <= Integer.MAX_VALUE) {
+			byte[] ret = new byte[(int) size];
+			int pos = 0;
+			int len;
+
+			while (pos < ret.length && (len = stream.read(ret, pos, ret.length - pos)) > 0) {
+				pos += len;
+			}
+
+			if (pos < ret.length) {
+				return Arrays.copyOf(ret, pos);
+			}
+
+			int next = stream.read();
+
+			if (next < 0) {
+				return ret;
+			}
+
+			// longer than advertised, read the rest the slow way
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(ret.length * 2);
+			outputStream.write(ret, 0, pos);
+			outputStream.write(next);
+			copy(stream, outputStream);
+			return outputStream.toByteArray();
+		}
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(32768);
+		copy(stream, outputStream);
+		return outputStream.toByteArray();
+	}
+
+	private static void copy(InputStream stream, ByteArrayOutputStream outputStream) throws IOException {
+		byte[] buffer = new byte[8192];
+		int len;
+
+		while ((len = stream.read(buffer)) > 0) {
+			outputStream.write(buffer, 0, len);
+		}
+	}
+}
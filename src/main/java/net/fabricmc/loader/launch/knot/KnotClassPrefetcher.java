@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Records the order in which classes get defined and prepares them ahead of the loading thread on the next launch.
+ *
+ * <p>The background threads only look the classes up and run the transformers before mixin (or fetch the final
+ * bytes from the class cache). Mixin itself stays on the loading thread: its processor is globally synchronized and
+ * may load classes while applying, which could deadlock against the per-class loading locks held by other threads.</p>
+ */
+final class KnotClassPrefetcher {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|Prefetch");
+	private static final int MAX_THREADS = 4;
+	// upper bound of prepared classes waiting to be picked up by the loading thread
+	private static final int MAX_AHEAD = 2048;
+
+	static final class Prefetched {
+		final KnotClassPath.Resource resource;
+		final KnotClassDelegate.PreparedClass prepared;
+
+		Prefetched(KnotClassPath.Resource resource, KnotClassDelegate.PreparedClass prepared) {
+			this.resource = resource;
+			this.prepared = prepared;
+		}
+	}
+
+	private final Path traceFile;
+	private final Queue<String> trace = new ConcurrentLinkedQueue<>();
+	private final Set<String> defined = ConcurrentHashMap.newKeySet();
+	private final Map<String, Prefetched> prefetched = new ConcurrentHashMap<>();
+	private final Semaphore aheadPermits = new Semaphore(MAX_AHEAD);
+	private volatile boolean stopped;
+
+	KnotClassPrefetcher(Path gameDir) {
+		this.traceFile = gameDir.resolve(".fabric").resolve("classLoadTrace.txt");
+	}
+
+	/**
+	 * Starts preparing the classes of the previous launch's trace and arranges for this launch's trace to be written
+	 * on shutdown.
+	 */
+	void start(KnotClassPath classPath, KnotClassDelegate delegate) {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::saveTrace, "Knot class trace writer"));
+
+		List<String> names = loadTrace();
+		if (names.isEmpty()) return;
+
+		int threads = Math.min(MAX_THREADS, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+		AtomicInteger next = new AtomicInteger();
+
+		LOGGER.debug("Prefetching %d classes on %d threads", names.size(), threads);
+
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(() -> run(names, next, classPath, delegate), "Knot class prefetcher #" + i);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			thread.start();
+		}
+	}
+
+	/**
+	 * @return the class names of the previous launch's trace in definition order, empty if there is no usable trace
+	 */
+	List<String> loadTrace() {
+		if (!Files.isRegularFile(traceFile)) return Collections.emptyList();
+
+		List<String> lines;
+
+		try {
+			lines = Files.readAllLines(traceFile, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to read class load trace: %s", e);
+			return Collections.emptyList();
+		}
+
+		List<String> ret = new ArrayList<>(lines.size());
+
+		for (String name : lines) {
+			// only names of defined classes get written, anything else is damage
+			if (isBinaryName(name)) {
+				ret.add(name);
+			} else if (!name.isEmpty()) {
+				LOGGER.debug("Ignoring invalid class load trace entry %s", name);
+			}
+		}
+
+		return ret;
+	}
+
+	private static boolean isBinaryName(String name) {
+		if (name.isEmpty() || name.startsWith(".") || name.endsWith(".") || name.contains("..")) return false;
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (c == '/' || c == '\\' || c == ';' || c == '[' || Character.isWhitespace(c) || Character.isISOControl(c)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private void run(List<String> names, AtomicInteger next, KnotClassPath classPath, KnotClassDelegate delegate) {
+		int index;
+
+		while (!stopped && (index = next.getAndIncrement()) < names.size()) {
+			String name = names.get(index);
+			if (defined.contains(name)) continue;
+
+			try {
+				if (!aheadPermits.tryAcquire(10, TimeUnit.SECONDS)) {
+					// the loading thread stopped picking up classes, the rest of the trace is likely stale
+					stopped = true;
+					break;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			try {
+				KnotClassPath.Resource resource = classPath.getResource(delegate.getClassFileName(name));
+
+				if (resource != null && !defined.contains(name)) {
+					prefetched.put(name, new Prefetched(resource, delegate.prepareClass(name, resource.bytes)));
+
+					// lost the race against the loading thread
+					if (defined.contains(name) && prefetched.remove(name) != null) {
+						aheadPermits.release();
+					}
+
+					continue;
+				}
+			} catch (Throwable t) {
+				// the loading thread will run into the same problem and report it properly
+				LOGGER.debug("Failed to prefetch %s: %s", name, t);
+			}
+
+			aheadPermits.release();
+		}
+	}
+
+	/**
+	 * @return the prepared class, or null if it wasn't prefetched (yet)
+	 */
+	Prefetched take(String name) {
+		Prefetched ret = prefetched.remove(name);
+		if (ret != null) aheadPermits.release();
+
+		return ret;
+	}
+
+	void recordDefinition(String name) {
+		if (defined.add(name)) {
+			trace.add(name);
+
+			// prepared by a prefetcher thread after the loading thread looked for it
+			if (prefetched.remove(name) != null) {
+				aheadPermits.release();
+			}
+		}
+	}
+
+	void saveTrace() {
+		stopped = true;
+
+		try {
+			Files.createDirectories(traceFile.getParent());
+			Path tmpFile = traceFile.resolveSibling(traceFile.getFileName() + ".tmp");
+
+			try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+				for (String name : trace) {
+					writer.write(name);
+					writer.write('\n');
+				}
+			}
+
+			Files.move(tmpFile, traceFile, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to save class load trace: %s", e);
+		}
+	}
+}
@@ -30,6 +30,7 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 	KnotCompatibilityClassLoader(boolean isDevelopment, EnvType envType, GameProvider provider) {
 		super(new URL[0], KnotCompatibilityClassLoader.class.getClassLoader());
 		this.delegate = new KnotClassDelegate(isDevelopment, envType, this, provider);
+		KnotMetrics.init(provider.getLaunchDirectory());
 	}
 
 	@Override
@@ -64,6 +65,7 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 					}
 
 					c = defineClass(name, input, 0, input.length, metadata.codeSource);
+					delegate.onClassDefined(name);
 				}
 			}
 
@@ -82,6 +84,23 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 	@Override
 	public void addURL(URL url) {
 		super.addURL(url);
+		delegate.addCodeSource(url);
+	}
+
+	@Override
+	public boolean replaceURL(URL oldUrl, URL newUrl) {
+		// URLClassLoader can't drop URLs
+		return false;
+	}
+
+	@Override
+	public void saveClassPathIndex() {
+		// the compatibility loader uses URLClassLoader's own lookup
+	}
+
+	@Override
+	public void startPrefetch() {
+		// not supported, the compatibility loader is meant to be as close to a plain URLClassLoader as possible
 	}
 
 	static {
@@ -98,4 +117,11 @@ class KnotCompatibilityClassLoader extends URLClassLoader implements KnotClassLo
 
 		return super.getResourceAsStream(classFile);
 	}
+
+	@Override
+	public byte[] getRawResourceBytes(String classFile, boolean skipOriginalLoader) throws IOException {
+		try (InputStream inputStream = getResourceAsStream(classFile, skipOriginalLoader)) {
+			return inputStream != null ? KnotClassPath.readFully(inputStream, -1) : null;
+		}
+	}
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JFR event types for {@link KnotMetrics}.
+ *
+ * <p>Not every Java 8 runtime has JFR, so nothing here links against {@code jdk.jfr}: the event types are defined at
+ * runtime through {@code jdk.jfr.EventFactory} and their instances are filled and committed through method handles.</p>
+ */
+final class KnotJfrEvents {
+	private static final String[] CATEGORY = { "Fabric Loader", "Class Loading" };
+
+	private final ClassLoader loader;
+	private final Constructor<?> annotationElement;
+	private final Constructor<?> valueDescriptor;
+	private final MethodHandle isEnabled;
+	private final MethodHandle set;
+	private final MethodHandle commit;
+	private final MethodHandle newStageEvent;
+	private final MethodHandle newClassEvent;
+
+	/**
+	 * Defines the event types.
+	 *
+	 * @throws ClassNotFoundException if this JVM doesn't have JFR
+	 */
+	static KnotJfrEvents create() throws ReflectiveOperationException {
+		return new KnotJfrEvents(KnotJfrEvents.class.getClassLoader());
+	}
+
+	private KnotJfrEvents(ClassLoader loader) throws ReflectiveOperationException {
+		this.loader = loader;
+
+		Class<?> event = getJfrClass("Event");
+		Class<?> eventFactory = getJfrClass("EventFactory");
+		annotationElement = getJfrClass("AnnotationElement").getConstructor(Class.class, Object.class);
+		valueDescriptor = getJfrClass("ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		isEnabled = lookup.findVirtual(event, "isEnabled", MethodType.methodType(boolean.class)).asType(MethodType.methodType(boolean.class, Object.class));
+		set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class)).asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+		commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class)).asType(MethodType.methodType(void.class, Object.class));
+
+		MethodHandle createFactory = lookup.findStatic(eventFactory, "create", MethodType.methodType(eventFactory, List.class, List.class));
+		MethodHandle newEvent = lookup.findVirtual(eventFactory, "newEvent", MethodType.methodType(event));
+
+		try {
+			// the fields are set by index, in the order they are declared here
+			Object stageFactory = createFactory.invoke(getEventAnnotations("net.fabricmc.loader.ClassLoadStage", "Class Load Stage"),
+					Arrays.asList(getField(String.class, "stage", "Stage", false),
+							getField(String.class, "className", "Class", false),
+							getField(long.class, "time", "Time", true)));
+			Object classFactory = createFactory.invoke(getEventAnnotations("net.fabricmc.loader.ClassLoad", "Class Load"),
+					Arrays.asList(getField(String.class, "className", "Class", false),
+							getField(long.class, "time", "Time", true)));
+
+			newStageEvent = newEvent.bindTo(stageFactory).asType(MethodType.methodType(Object.class));
+			newClassEvent = newEvent.bindTo(classFactory).asType(MethodType.methodType(Object.class));
+		} catch (ReflectiveOperationException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	private Class<?> getJfrClass(String name) throws ClassNotFoundException {
+		return Class.forName("jdk.jfr." + name, false, loader);
+	}
+
+	private Object getAnnotation(String type, Object value) throws ReflectiveOperationException {
+		return annotationElement.newInstance(getJfrClass(type), value);
+	}
+
+	private List<Object> getEventAnnotations(String name, String label) throws ReflectiveOperationException {
+		return Arrays.asList(getAnnotation("Name", name),
+				getAnnotation("Label", label),
+				getAnnotation("Category", CATEGORY),
+				getAnnotation("StackTrace", false));
+	}
+
+	private Object getField(Class<?> type, String name, String label, boolean timespan) throws ReflectiveOperationException {
+		List<Object> annotations = new ArrayList<>();
+		annotations.add(getAnnotation("Label", label));
+		if (timespan) annotations.add(getAnnotation("Timespan", "NANOSECONDS"));
+
+		return valueDescriptor.newInstance(type, name, annotations);
+	}
+
+	void commitStage(String stage, String className, long time) {
+		try {
+			Object event = (Object) newStageEvent.invokeExact();
+
+			if ((boolean) isEnabled.invokeExact(event)) {
+				set.invokeExact(event, 0, (Object) stage);
+				set.invokeExact(event, 1, (Object) className);
+				set.invokeExact(event, 2, (Object) time);
+				commit.invokeExact(event);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	void commitClass(String className, long time) {
+		try {
+			Object event = (Object) newClassEvent.invokeExact();
+
+			if ((boolean) isEnabled.invokeExact(event)) {
+				set.invokeExact(event, 0, (Object) className);
+				set.invokeExact(event, 1, (Object) time);
+				commit.invokeExact(event);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.fabricmc.loader.util.SystemProperties;
+
+/**
+ * Per-stage class loading timers and counters, enabled with {@link SystemProperties#CLASS_LOAD_METRICS}.
+ *
+ * <p>The totals are published through the {@code net.fabricmc.loader:type=ClassLoading} MBean, every measurement is
+ * also emitted as a JFR event when running on a JVM with JFR. Per-class times are inclusive, they contain the time
+ * spent loading other classes from within the transformers.</p>
+ */
+final class KnotMetrics {
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(SystemProperties.CLASS_LOAD_METRICS, "false"));
+
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|Metrics");
+	private static final KnotJfrEvents JFR = ENABLED ? createJfrEvents() : null;
+
+	enum Stage {
+		RAW_READ("rawRead"),
+		ENTRYPOINT_TRANSFORM("entrypointTransform"),
+		FABRIC_TRANSFORM("fabricTransform"),
+		MIXIN_TRANSFORM("mixinTransform"),
+		DEFINE("define");
+
+		final String id;
+		final LongAdder count = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+
+		Stage(String id) {
+			this.id = id;
+		}
+	}
+
+	private static final Map<String, Long> classTimes = new ConcurrentHashMap<>();
+	private static boolean initialized;
+
+	private KnotMetrics() { }
+
+	static synchronized void init(Path gameDir) {
+		if (!ENABLED || initialized) return;
+
+		initialized = true;
+
+		KnotReports.registerMBean(new Bean(), "ClassLoading", LOGGER);
+
+		if (Boolean.parseBoolean(System.getProperty(SystemProperties.CLASS_LOAD_METRICS_DUMP, "false"))) {
+			Path file = gameDir.resolve(".fabric").resolve("classLoadMetrics.txt");
+			KnotReports.writeOnShutdown(file, "Knot class loading metrics", LOGGER, KnotMetrics::writeSummary);
+		}
+	}
+
+	/**
+	 * @return the start time to pass to {@link #record}, 0 if metrics are disabled
+	 */
+	static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	static void record(Stage stage, String className, long start) {
+		if (!ENABLED) return;
+
+		long time = System.nanoTime() - start;
+		stage.count.increment();
+		stage.nanos.add(time);
+
+		if (JFR != null) {
+			JFR.commitStage(stage.id, className, time);
+		}
+	}
+
+	/**
+	 * Records the total time spent loading a class that got defined.
+	 */
+	static void recordClass(String className, long start) {
+		if (!ENABLED) return;
+
+		long time = System.nanoTime() - start;
+		classTimes.merge(className, time, Long::sum);
+
+		if (JFR != null) {
+			JFR.commitClass(className, time);
+		}
+	}
+
+	private static KnotJfrEvents createJfrEvents() {
+		try {
+			return KnotJfrEvents.create();
+		} catch (ClassNotFoundException e) {
+			return null; // no JFR on this JVM
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.warn("Failed to define class loading JFR events", e);
+			return null;
+		}
+	}
+
+	private static Map<String, Long> getPackageTimes() {
+		Map<String, Long> packages = new HashMap<>();
+
+		for (Map.Entry<String, Long> entry : classTimes.entrySet()) {
+			String name = entry.getKey();
+			int pos = name.lastIndexOf('.');
+
+			packages.merge(pos < 0 ? "" : name.substring(0, pos), entry.getValue(), Long::sum);
+		}
+
+		return packages;
+	}
+
+	private static void writeSummary(PrintWriter writer) {
+		writer.printf("classes defined: %d%n%n", classTimes.size());
+		writer.printf("%-20s %10s %12s%n", "stage", "count", "time (ms)");
+
+		for (Stage stage : Stage.values()) {
+			writer.printf("%-20s %10d %12.1f%n", stage.id, stage.count.sum(), stage.nanos.sum() / 1e6);
+		}
+
+		writer.printf("%nslowest classes (inclusive):%n");
+		KnotReports.printTimes(writer, KnotReports.getTop(classTimes, KnotReports.SUMMARY_ENTRIES));
+
+		writer.printf("%ntop packages (inclusive):%n");
+		KnotReports.printTimes(writer, KnotReports.getTop(getPackageTimes(), KnotReports.SUMMARY_ENTRIES));
+	}
+
+	private static final class Bean implements KnotMetricsMXBean {
+		@Override
+		public long getClassesDefined() {
+			return classTimes.size();
+		}
+
+		@Override
+		public Map<String, Long> getStageCounts() {
+			Map<String, Long> ret = new LinkedHashMap<>();
+
+			for (Stage stage : Stage.values()) {
+				ret.put(stage.id, stage.count.sum());
+			}
+
+			return ret;
+		}
+
+		@Override
+		public Map<String, Long> getStageTimesMillis() {
+			Map<String, Long> ret = new LinkedHashMap<>();
+
+			for (Stage stage : Stage.values()) {
+				ret.put(stage.id, stage.nanos.sum() / 1000000);
+			}
+
+			return ret;
+		}
+
+		@Override
+		public Map<String, Long> getSlowestClassesMicros() {
+			return KnotReports.toMap(KnotReports.getTop(classTimes, KnotReports.SUMMARY_ENTRIES), 1000);
+		}
+	}
+}
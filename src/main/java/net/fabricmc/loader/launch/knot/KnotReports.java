@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Shared parts of the diagnostic reports, {@link KnotMetrics} and {@link MixinAuditTrail}.
+ */
+final class KnotReports {
+	/**
+	 * Number of entries in the top lists of the reports and MBeans.
+	 */
+	static final int SUMMARY_ENTRIES = 25;
+
+	private KnotReports() { }
+
+	/**
+	 * @return the entries with the largest values, largest first
+	 */
+	static List<Map.Entry<String, Long>> getTop(Map<String, Long> values, int count) {
+		List<Map.Entry<String, Long>> ret = new ArrayList<>(values.entrySet());
+		ret.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+		return ret.size() > count ? ret.subList(0, count) : ret;
+	}
+
+	/**
+	 * @return the entries in their order with every value divided by the divisor, for MBean attributes
+	 */
+	static Map<String, Long> toMap(List<Map.Entry<String, Long>> entries, long divisor) {
+		Map<String, Long> ret = new LinkedHashMap<>();
+
+		for (Map.Entry<String, Long> entry : entries) {
+			ret.put(entry.getKey(), entry.getValue() / divisor);
+		}
+
+		return ret;
+	}
+
+	static void printTime(PrintWriter writer, long nanos, String label) {
+		writer.printf("%10.2f ms  %s%n", nanos / 1e6, label);
+	}
+
+	static void printTimes(PrintWriter writer, List<Map.Entry<String, Long>> entries) {
+		for (Map.Entry<String, Long> entry : entries) {
+			printTime(writer, entry.getValue(), entry.getKey());
+		}
+	}
+
+	/**
+	 * Registers an MBean as {@code net.fabricmc.loader:type=<type>}, logging failures.
+	 */
+	static void registerMBean(Object bean, String type, Logger logger) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName("net.fabricmc.loader:type=" + type));
+		} catch (JMException e) {
+			logger.warn("Failed to register %s MBean", type, e);
+		}
+	}
+
+	/**
+	 * Writes a report to the file when the JVM shuts down, logging failures.
+	 */
+	static void writeOnShutdown(Path file, String name, Logger logger, Consumer<PrintWriter> report) {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> write(file, name, logger, report), name + " writer"));
+	}
+
+	static void write(Path file, String name, Logger logger, Consumer<PrintWriter> report) {
+		try {
+			Files.createDirectories(file.getParent());
+
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+				report.accept(writer);
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to write %s to %s", name, file, e);
+		}
+	}
+}
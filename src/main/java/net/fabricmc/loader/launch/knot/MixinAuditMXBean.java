@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of the mixin audit trail, registered as {@code net.fabricmc.loader:type=MixinAudit}.
+ */
+public interface MixinAuditMXBean {
+	long getTargetCount();
+	long getGeneratedClassCount();
+	Map<String, Long> getSlowestTargetsMicros();
+	Map<String, Long> getSlowestMixinsMicros();
+	Map<String, Long> getConfigTimesMillis();
+	Map<String, Long> getModTimesMillis();
+	List<String> getMixinsFor(String targetClass);
+}
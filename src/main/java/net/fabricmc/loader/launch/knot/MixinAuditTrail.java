@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.spongepowered.asm.service.IMixinAuditTrail;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.FabricLoaderImpl;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.metadata.LoaderModMetadata;
+import net.fabricmc.loader.util.SystemProperties;
+
+/**
+ * Records which mixins got applied to which class and how long it took, enabled with
+ * {@link SystemProperties#MIXIN_AUDIT}.
+ *
+ * <p>Mixin reports each mixin once its context for the target is prepared, the actual application passes then run for
+ * all of the target's mixins together. A mixin is therefore charged the time since the previous event of its target
+ * plus an equal share of the time spent after the last mixin was reported. Time spent transforming other classes
+ * loaded in the meantime is excluded.</p>
+ *
+ * <p>The results are published through the {@code net.fabricmc.loader:type=MixinAudit} MBean and written to
+ * {@code .fabric/mixinAudit.txt} on shutdown.</p>
+ */
+final class MixinAuditTrail implements IMixinAuditTrail {
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(SystemProperties.MIXIN_AUDIT, "false"));
+
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|MixinAudit");
+
+	private static final class TargetRecord {
+		final List<String> mixins = new ArrayList<>();
+		final List<Long> mixinNanos = new ArrayList<>();
+		long totalNanos;
+	}
+
+	/**
+	 * A target class currently in the mixin transformer.
+	 */
+	private static final class ActiveTarget {
+		final String name;
+		final long start;
+		final TargetRecord record = new TargetRecord();
+		long lastEvent;
+		long nestedNanos;
+		long nestedSinceEvent;
+
+		ActiveTarget(String name, long start) {
+			this.name = name;
+			this.start = start;
+			this.lastEvent = start;
+		}
+	}
+
+	private final ThreadLocal<Deque<ActiveTarget>> activeTargets = ThreadLocal.withInitial(ArrayDeque::new);
+	private final Map<String, TargetRecord> targets = new ConcurrentHashMap<>();
+	private final Map<String, Long> mixinNanos = new ConcurrentHashMap<>();
+	private final AtomicLong generatedClasses = new AtomicLong();
+	private volatile Map<String, String> configOwners;
+
+	MixinAuditTrail() { }
+
+	private static final class Holder {
+		static final MixinAuditTrail INSTANCE = create();
+	}
+
+	static MixinAuditTrail get() {
+		return Holder.INSTANCE;
+	}
+
+	private static MixinAuditTrail create() {
+		MixinAuditTrail ret = new MixinAuditTrail();
+
+		KnotReports.registerMBean(ret.new Bean(), "MixinAudit", LOGGER);
+
+		Path file = FabricLoaderImpl.getInstance().getGameDir().resolve(".fabric").resolve("mixinAudit.txt");
+		KnotReports.writeOnShutdown(file, "Mixin audit", LOGGER, ret::writeReport);
+
+		return ret;
+	}
+
+	/**
+	 * Called by Knot right before a class is passed to the mixin transformer.
+	 */
+	void beginTarget(String className) {
+		activeTargets.get().push(new ActiveTarget(className, System.nanoTime()));
+	}
+
+	/**
+	 * Called by Knot once the mixin transformer returned, also if it failed.
+	 */
+	void endTarget(String className) {
+		Deque<ActiveTarget> stack = activeTargets.get();
+		ActiveTarget target = stack.peek();
+		if (target == null || !target.name.equals(className)) return;
+
+		stack.pop();
+
+		long now = System.nanoTime();
+		long total = now - target.start - target.nestedNanos;
+		ActiveTarget parent = stack.peek();
+
+		if (parent != null) {
+			long inclusive = now - target.start;
+			parent.nestedNanos += inclusive;
+			parent.nestedSinceEvent += inclusive;
+		}
+
+		TargetRecord record = target.record;
+		if (record.mixins.isEmpty()) return;
+
+		// the application passes after the last reported mixin are shared by all of them
+		long remainder = now - target.lastEvent - target.nestedSinceEvent;
+		long share = remainder / record.mixins.size();
+
+		for (int i = 0; i < record.mixins.size(); i++) {
+			long nanos = record.mixinNanos.get(i) + share;
+			record.mixinNanos.set(i, nanos);
+			mixinNanos.merge(record.mixins.get(i), nanos, Long::sum);
+		}
+
+		record.totalNanos = total;
+		targets.put(className, record);
+	}
+
+	@Override
+	public void onApply(String className, String mixinName) {
+		ActiveTarget target = findTarget(className);
+		if (target == null) return;
+
+		long now = System.nanoTime();
+		target.record.mixins.add(mixinName);
+		target.record.mixinNanos.add(now - target.lastEvent - target.nestedSinceEvent);
+		target.lastEvent = now;
+		target.nestedSinceEvent = 0;
+	}
+
+	@Override
+	public void onPostProcess(String className) {
+	}
+
+	@Override
+	public void onGenerate(String className, String generatorName) {
+		generatedClasses.incrementAndGet();
+	}
+
+	private ActiveTarget findTarget(String className) {
+		for (ActiveTarget target : activeTargets.get()) {
+			if (target.name.equals(className)) return target;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the config part of a mixin name as reported by mixin, {@code config:mixin}
+	 */
+	private static String getConfig(String mixinName) {
+		int pos = mixinName.indexOf(':');
+
+		return pos < 0 ? "<unknown>" : mixinName.substring(0, pos);
+	}
+
+	private String getOwner(String config) {
+		Map<String, String> owners = configOwners;
+
+		if (owners == null) {
+			owners = new HashMap<>();
+			FabricLoaderImpl loader = FabricLoaderImpl.getInstance();
+			EnvType envType = loader.getEnvironmentType();
+
+			for (ModContainer mod : loader.getAllMods()) {
+				if (!(mod.getMetadata() instanceof LoaderModMetadata)) continue;
+
+				for (String modConfig : ((LoaderModMetadata) mod.getMetadata()).getMixinConfigs(envType)) {
+					owners.put(modConfig, mod.getMetadata().getId());
+				}
+			}
+
+			configOwners = owners;
+		}
+
+		return owners.getOrDefault(config, "<unknown>");
+	}
+
+	private Map<String, Long> getConfigNanos() {
+		Map<String, Long> ret = new HashMap<>();
+
+		for (Map.Entry<String, Long> entry : mixinNanos.entrySet()) {
+			ret.merge(getConfig(entry.getKey()), entry.getValue(), Long::sum);
+		}
+
+		return ret;
+	}
+
+	private Map<String, Long> getModNanos() {
+		Map<String, Long> ret = new HashMap<>();
+
+		for (Map.Entry<String, Long> entry : getConfigNanos().entrySet()) {
+			ret.merge(getOwner(entry.getKey()), entry.getValue(), Long::sum);
+		}
+
+		return ret;
+	}
+
+	private Map<String, Long> getTargetNanos() {
+		Map<String, Long> ret = new HashMap<>();
+
+		for (Map.Entry<String, TargetRecord> entry : targets.entrySet()) {
+			ret.put(entry.getKey(), entry.getValue().totalNanos);
+		}
+
+		return ret;
+	}
+
+	private void writeReport(PrintWriter writer) {
+		writer.printf("mixin targets: %d, generated classes: %d%n", targets.size(), generatedClasses.get());
+
+		writer.printf("%nper mod:%n");
+		KnotReports.printTimes(writer, KnotReports.getTop(getModNanos(), Integer.MAX_VALUE));
+
+		writer.printf("%nper config:%n");
+
+		for (Map.Entry<String, Long> entry : KnotReports.getTop(getConfigNanos(), Integer.MAX_VALUE)) {
+			KnotReports.printTime(writer, entry.getValue(), entry.getKey() + " (" + getOwner(entry.getKey()) + ")");
+		}
+
+		writer.printf("%nslowest mixins:%n");
+		KnotReports.printTimes(writer, KnotReports.getTop(mixinNanos, KnotReports.SUMMARY_ENTRIES));
+
+		writer.printf("%ntargets:%n");
+
+		for (Map.Entry<String, Long> entry : KnotReports.getTop(getTargetNanos(), Integer.MAX_VALUE)) {
+			TargetRecord record = targets.get(entry.getKey());
+			KnotReports.printTime(writer, entry.getValue(), entry.getKey());
+
+			for (int i = 0; i < record.mixins.size(); i++) {
+				writer.print("    ");
+				KnotReports.printTime(writer, record.mixinNanos.get(i), record.mixins.get(i));
+			}
+		}
+	}
+
+	final class Bean implements MixinAuditMXBean {
+		@Override
+		public long getTargetCount() {
+			return targets.size();
+		}
+
+		@Override
+		public long getGeneratedClassCount() {
+			return generatedClasses.get();
+		}
+
+		@Override
+		public Map<String, Long> getSlowestTargetsMicros() {
+			return KnotReports.toMap(KnotReports.getTop(getTargetNanos(), KnotReports.SUMMARY_ENTRIES), 1000);
+		}
+
+		@Override
+		public Map<String, Long> getSlowestMixinsMicros() {
+			return KnotReports.toMap(KnotReports.getTop(mixinNanos, KnotReports.SUMMARY_ENTRIES), 1000);
+		}
+
+		@Override
+		public Map<String, Long> getConfigTimesMillis() {
+			return KnotReports.toMap(KnotReports.getTop(getConfigNanos(), Integer.MAX_VALUE), 1000000);
+		}
+
+		@Override
+		public Map<String, Long> getModTimesMillis() {
+			return KnotReports.toMap(KnotReports.getTop(getModNanos(), Integer.MAX_VALUE), 1000000);
+		}
+
+		@Override
+		public List<String> getMixinsFor(String targetClass) {
+			TargetRecord record = targets.get(targetClass);
+
+			return record != null ? new ArrayList<>(record.mixins) : Collections.emptyList();
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.fabricmc.loader.launch.common.FabricLauncherBase;
+import net.fabricmc.loader.lib.gson.JsonReader;
+import net.fabricmc.loader.lib.gson.JsonToken;
+
+/**
+ * Reads all mixin configs and their refmaps in parallel ahead of Mixin, which would otherwise read them one by one on
+ * the launch thread through {@link MixinServiceKnot#getResourceAsStream}.
+ *
+ * <p>Mixin parses the JSON itself into its internal config objects, so what gets handed over are the raw bytes. Each
+ * resource is kept until it was requested as many times as configs refer to it, or until {@link #clear} dropped
+ * whatever Mixin didn't ask for. Mixin only reads the refmaps once it selects its configs on the first class it
+ * transforms, well after bootstrapping finished.</p>
+ */
+final class MixinConfigPreloader {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|MixinPreload");
+
+	private static final class Preloaded {
+		final byte[] bytes;
+		final AtomicInteger uses;
+
+		Preloaded(byte[] bytes, int uses) {
+			this.bytes = bytes;
+			this.uses = new AtomicInteger(uses);
+		}
+	}
+
+	private static final class ConfigResult {
+		final String name;
+		final byte[] bytes;
+		final String refmap;
+		final long nanos;
+
+		ConfigResult(String name, byte[] bytes, String refmap, long nanos) {
+			this.name = name;
+			this.bytes = bytes;
+			this.refmap = refmap;
+			this.nanos = nanos;
+		}
+	}
+
+	private static final Map<String, Preloaded> resources = new ConcurrentHashMap<>();
+
+	private MixinConfigPreloader() { }
+
+	static void preload(Collection<String> configs) {
+		preload(configs, name -> FabricLauncherBase.getLauncher().getResourceAsStream(name));
+	}
+
+	static void preload(Collection<String> configs, Function<String, InputStream> source) {
+		if (configs.isEmpty()) return;
+
+		long start = System.nanoTime();
+		int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "Mixin config preloader " + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			List<CompletableFuture<ConfigResult>> configFutures = new ArrayList<>();
+
+			for (String config : configs) {
+				configFutures.add(CompletableFuture.supplyAsync(() -> readConfig(config, source), executor));
+			}
+
+			Map<String, Integer> refmapUses = new HashMap<>();
+			List<ConfigResult> results = new ArrayList<>();
+
+			for (CompletableFuture<ConfigResult> future : configFutures) {
+				ConfigResult result = future.join();
+				if (result == null) continue;
+
+				results.add(result);
+				resources.put(result.name, new Preloaded(result.bytes, 1));
+				if (result.refmap != null) refmapUses.merge(result.refmap, 1, Integer::sum);
+			}
+
+			Map<String, CompletableFuture<Long>> refmapFutures = new HashMap<>();
+
+			for (Map.Entry<String, Integer> entry : refmapUses.entrySet()) {
+				refmapFutures.put(entry.getKey(), CompletableFuture.supplyAsync(() -> readRefmap(entry.getKey(), entry.getValue(), source), executor));
+			}
+
+			for (ConfigResult result : results) {
+				long nanos = result.nanos;
+				if (result.refmap != null) nanos += refmapFutures.get(result.refmap).join();
+
+				LOGGER.debug("Preloaded mixin config %s%s in %.2f ms", result.name, result.refmap != null ? " with refmap " + result.refmap : "", nanos / 1e6);
+			}
+
+			LOGGER.debug("Preloaded %d mixin configs and %d refmaps in %d ms", results.size(), refmapFutures.size(), (System.nanoTime() - start) / 1000000);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Hands out a preloaded resource.
+	 *
+	 * @return the resource's content, or null if it wasn't preloaded or all of its uses are taken already
+	 */
+	static InputStream getResourceAsStream(String name) {
+		Preloaded preloaded = resources.get(name);
+		if (preloaded == null) return null;
+
+		int remaining = preloaded.uses.decrementAndGet();
+		if (remaining <= 0) resources.remove(name, preloaded);
+		if (remaining < 0) return null;
+
+		return new ByteArrayInputStream(preloaded.bytes);
+	}
+
+	/**
+	 * Drops all resources that weren't requested, called once Mixin selected its configs and read their refmaps.
+	 */
+	static void clear() {
+		if (!resources.isEmpty()) {
+			LOGGER.debug("Dropping %d unused preloaded mixin resources", resources.size());
+			resources.clear();
+		}
+	}
+
+	private static ConfigResult readConfig(String name, Function<String, InputStream> source) {
+		long start = System.nanoTime();
+
+		try {
+			byte[] bytes = readResource(name, source);
+			if (bytes == null) return null; // let mixin report the missing config
+
+			return new ConfigResult(name, bytes, findRefmap(bytes), System.nanoTime() - start);
+		} catch (IOException e) {
+			LOGGER.debug("Failed to preload mixin config %s: %s", name, e);
+			return null;
+		}
+	}
+
+	private static long readRefmap(String name, int uses, Function<String, InputStream> source) {
+		long start = System.nanoTime();
+
+		try {
+			byte[] bytes = readResource(name, source);
+			if (bytes != null) resources.put(name, new Preloaded(bytes, uses));
+		} catch (IOException e) {
+			LOGGER.debug("Failed to preload mixin refmap %s: %s", name, e);
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	private static byte[] readResource(String name, Function<String, InputStream> source) throws IOException {
+		try (InputStream is = source.apply(name)) {
+			return is != null ? KnotClassPath.readFully(is, -1) : null;
+		}
+	}
+
+	/**
+	 * @return the refmap named by the config, or null if there is none or the config isn't valid JSON
+	 */
+	private static String findRefmap(byte[] config) {
+		try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(config), StandardCharsets.UTF_8))) {
+			reader.setLenient(true);
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (reader.nextName().equals("refmap") && reader.peek() == JsonToken.STRING) {
+					return reader.nextString();
+				}
+
+				reader.skipValue();
+			}
+		} catch (IOException | IllegalStateException e) {
+			// mixin will report the broken config
+		}
+
+		return null;
+	}
+}
@@ -60,6 +60,15 @@ public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBy
 
 	@Override
 	public ClassNode getClassNode(String name, boolean runTransformers) throws ClassNotFoundException, IOException {
+		ClassLoader classLoader = FabricLauncherBase.getLauncher().getTargetClassLoader();
+
+		if (runTransformers && classLoader instanceof KnotClassLoaderInterface) {
+			ClassNode node = ((KnotClassLoaderInterface) classLoader).getDelegate().getPreMixinClassNode(name);
+			if (node == null) throw new ClassNotFoundException(name);
+
+			return node;
+		}
+
 		ClassReader reader = new ClassReader(getClassBytes(name, runTransformers));
 		ClassNode node = new ClassNode();
 		reader.accept(node, 0);
@@ -149,7 +158,7 @@ public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBy
 
 	@Override
 	public IMixinAuditTrail getAuditTrail() {
-		return null;
+		return MixinAuditTrail.ENABLED ? MixinAuditTrail.get() : null;
 	}
 
 	@Override
@@ -173,6 +182,9 @@ public class MixinServiceKnot implements IMixinService, IClassProvider, IClassBy
 
 	@Override
 	public InputStream getResourceAsStream(String name) {
+		InputStream preloaded = MixinConfigPreloader.getResourceAsStream(name);
+		if (preloaded != null) return preloaded;
+
 		return FabricLauncherBase.getLauncher().getResourceAsStream(name);
 	}
 
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the startup stages of Knot on a bounded pool, each stage starting once the stages it depends on completed.
+ *
+ * <p>Stages have to be declared after their dependencies, so the declaration order is always a valid sequential
+ * order. With no more than one thread the stages run right away on the declaring thread in that order, matching the
+ * behavior before stages existed.</p>
+ *
+ * <p>Dependencies don't only express data flow but also the order of side effects that must stay the same, such as
+ * proposing jars to the class loader.</p>
+ */
+final class StartupScheduler {
+	private static final Logger LOGGER = LogManager.getFormatterLogger("FabricLoader|Startup");
+
+	@FunctionalInterface
+	interface StageTask {
+		void run() throws Exception;
+	}
+
+	static final class Stage {
+		private final String name;
+		private final CompletableFuture<Void> future;
+
+		private Stage(String name, CompletableFuture<Void> future) {
+			this.name = name;
+			this.future = future;
+		}
+	}
+
+	private final ExecutorService executor;
+	private final List<Stage> stages = new ArrayList<>();
+
+	/**
+	 * @param threads the maximum number of stages running at the same time, 0 or 1 to run them sequentially
+	 */
+	StartupScheduler(int threads) {
+		if (threads > 1) {
+			AtomicInteger threadIndex = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = new Thread(r, "Knot startup " + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			executor = null;
+		}
+	}
+
+	/**
+	 * @return whether stages run right away on the declaring thread, one at a time
+	 */
+	boolean isSequential() {
+		return executor == null;
+	}
+
+	/**
+	 * Declares a stage, scheduling it to run once all of its dependencies completed.
+	 *
+	 * <p>If a dependency failed the stage is skipped and fails as well. Null dependencies are ignored, for stages that
+	 * only depend on others in some configurations.</p>
+	 */
+	Stage add(String name, StageTask task, Stage... dependencies) {
+		CompletableFuture<Void> future;
+
+		if (executor == null) {
+			future = runNow(name, task);
+		} else {
+			List<CompletableFuture<?>> dependencyFutures = new ArrayList<>(dependencies.length);
+
+			for (Stage dependency : dependencies) {
+				if (dependency != null) dependencyFutures.add(dependency.future);
+			}
+
+			future = CompletableFuture.allOf(dependencyFutures.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+				try {
+					runTask(name, task);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+		}
+
+		Stage ret = new Stage(name, future);
+		stages.add(ret);
+
+		return ret;
+	}
+
+	private static CompletableFuture<Void> runNow(String name, StageTask task) {
+		// a failure ends startup right away, just like it did without stages
+		try {
+			runTask(name, task);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException("Startup stage " + name + " failed", e);
+		}
+
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private static void runTask(String name, StageTask task) throws Exception {
+		long start = System.nanoTime();
+		task.run();
+		LOGGER.debug("Startup stage %s took %.2f ms", name, (System.nanoTime() - start) / 1e6);
+	}
+
+	/**
+	 * Waits for a stage, rethrowing its failure (or the failure of a stage it depends on) on the calling thread.
+	 */
+	void await(Stage stage) {
+		try {
+			stage.future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+
+			throw new RuntimeException("Startup stage " + stage.name + " failed", cause);
+		}
+	}
+
+	/**
+	 * Waits for all stages in declaration order and stops the pool.
+	 */
+	void finish() {
+		try {
+			for (Stage stage : stages) {
+				await(stage);
+			}
+		} finally {
+			if (executor != null) executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import java.nio.charset.StandardCharsets;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import net.fabricmc.api.Environment;
+import net.fabricmc.api.EnvironmentInterface;
+import net.fabricmc.api.EnvironmentInterfaces;
+
+/**
+ * Reads just enough of a raw class file to tell whether a transformer could change it, without going through ASM.
+ *
+ * <p>Anything unexpected, e.g. an unknown constant pool tag or a truncated class, reports every flag so the caller
+ * falls back to the full transformation.</p>
+ */
+final class ClassFileScanner {
+	/**
+	 * The constant pool references one of the environment annotations.
+	 */
+	static final int ENVIRONMENT_ANNOTATIONS = 1;
+	/**
+	 * The class, a field, a method or an inner class entry is neither public nor private.
+	 */
+	static final int NON_PUBLIC_ACCESS = 2;
+
+	private static final int ALL = ENVIRONMENT_ANNOTATIONS | NON_PUBLIC_ACCESS;
+
+	private static final byte[][] ENVIRONMENT_DESCRIPTORS = {
+			Type.getDescriptor(Environment.class).getBytes(StandardCharsets.UTF_8),
+			Type.getDescriptor(EnvironmentInterface.class).getBytes(StandardCharsets.UTF_8),
+			Type.getDescriptor(EnvironmentInterfaces.class).getBytes(StandardCharsets.UTF_8)
+	};
+	private static final byte[] INNER_CLASSES = "InnerClasses".getBytes(StandardCharsets.UTF_8);
+
+	private ClassFileScanner() { }
+
+	/**
+	 * @return the requested flags that apply to the class
+	 */
+	static int scan(byte[] bytes, boolean checkEnvironment, boolean checkAccess) {
+		try {
+			return scan0(bytes, checkEnvironment, checkAccess);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return ALL;
+		}
+	}
+
+	private static int scan0(byte[] b, boolean checkEnvironment, boolean checkAccess) {
+		if (readInt(b, 0) != 0xcafebabe) return ALL;
+
+		int ret = 0;
+		int count = readShort(b, 8);
+		int[] utf8Offsets = checkAccess ? new int[count] : null;
+		int pos = 10;
+
+		for (int i = 1; i < count; i++) {
+			int tag = b[pos];
+
+			switch (tag) {
+			case 1: { // Utf8
+				int len = readShort(b, pos + 1);
+
+				if (checkEnvironment && (ret & ENVIRONMENT_ANNOTATIONS) == 0 && isEnvironmentDescriptor(b, pos + 3, len)) {
+					ret |= ENVIRONMENT_ANNOTATIONS;
+				}
+
+				if (utf8Offsets != null) utf8Offsets[i] = pos;
+				pos += 3 + len;
+				break;
+			}
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				pos += 5;
+				break;
+			case 5: // Long
+			case 6: // Double
+				pos += 9;
+				i++;
+				break;
+			case 7: // Class
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				pos += 3;
+				break;
+			case 15: // MethodHandle
+				pos += 4;
+				break;
+			default:
+				return ALL;
+			}
+		}
+
+		if (!checkAccess) return ret;
+
+		// access_flags, this_class, super_class
+		if (!isPublicOrPrivate(readShort(b, pos))) return ret | NON_PUBLIC_ACCESS;
+		pos += 6;
+		pos += 2 + 2 * readShort(b, pos); // interfaces
+
+		for (int member = 0; member < 2; member++) { // fields, methods
+			int memberCount = readShort(b, pos);
+			pos += 2;
+
+			for (int i = 0; i < memberCount; i++) {
+				if (!isPublicOrPrivate(readShort(b, pos))) return ret | NON_PUBLIC_ACCESS;
+
+				pos = skipAttributes(b, pos + 6);
+			}
+		}
+
+		int attributeCount = readShort(b, pos);
+		pos += 2;
+
+		for (int i = 0; i < attributeCount; i++) {
+			int nameOffset = utf8Offsets[readShort(b, pos)];
+			int len = readInt(b, pos + 2);
+
+			if (nameOffset != 0 && equals(b, nameOffset + 3, readShort(b, nameOffset + 1), INNER_CLASSES)) {
+				int classes = readShort(b, pos + 6);
+
+				for (int j = 0; j < classes; j++) {
+					// inner_class_info, outer_class_info, inner_name, inner_class_access_flags
+					if (!isPublicOrPrivate(readShort(b, pos + 8 + j * 8 + 6))) return ret | NON_PUBLIC_ACCESS;
+				}
+			}
+
+			pos += 6 + len;
+		}
+
+		return ret;
+	}
+
+	private static int skipAttributes(byte[] b, int pos) {
+		int count = readShort(b, pos);
+		pos += 2;
+
+		for (int i = 0; i < count; i++) {
+			pos += 6 + readInt(b, pos + 2);
+		}
+
+		return pos;
+	}
+
+	private static boolean isPublicOrPrivate(int access) {
+		int visibility = access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED);
+
+		return visibility == Opcodes.ACC_PUBLIC || visibility == Opcodes.ACC_PRIVATE;
+	}
+
+	private static boolean isEnvironmentDescriptor(byte[] b, int pos, int len) {
+		for (byte[] descriptor : ENVIRONMENT_DESCRIPTORS) {
+			if (equals(b, pos, len, descriptor)) return true;
+		}
+
+		return false;
+	}
+
+	private static boolean equals(byte[] b, int pos, int len, byte[] value) {
+		if (len != value.length) return false;
+
+		for (int i = 0; i < len; i++) {
+			if (b[pos + i] != value[i]) return false;
+		}
+
+		return true;
+	}
+
+	private static int readShort(byte[] b, int pos) {
+		return (b[pos] & 0xff) << 8 | b[pos + 1] & 0xff;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return (b[pos] & 0xff) << 24 | (b[pos + 1] & 0xff) << 16 | (b[pos + 2] & 0xff) << 8 | b[pos + 3] & 0xff;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import java.util.Set;
+
+/**
+ * Decides by binary name (dot separated) which classes a {@link TransformerStage} wants to see.
+ */
+@FunctionalInterface
+interface ClassNameFilter {
+	ClassNameFilter ALL = name -> true;
+
+	boolean matches(String name);
+
+	default ClassNameFilter and(ClassNameFilter other) {
+		return name -> matches(name) && other.matches(name);
+	}
+
+	/**
+	 * Matches the classes contained in the set, the set is used as is and may still change afterwards.
+	 */
+	static ClassNameFilter exact(Set<String> names) {
+		return names::contains;
+	}
+
+	static ClassNameFilter minecraftOnly() {
+		return FabricTransformer::isMinecraftClass;
+	}
+
+	static ClassNameFilter modsOnly() {
+		return name -> !FabricTransformer.isMinecraftClass(name);
+	}
+}
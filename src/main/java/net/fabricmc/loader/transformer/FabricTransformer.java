@@ -16,75 +16,171 @@
 
 package net.fabricmc.loader.transformer;
 
+import net.fabricmc.accesswidener.AccessWidener;
 import net.fabricmc.accesswidener.AccessWidenerVisitor;
 import net.fabricmc.api.EnvType;
 import net.fabricmc.loader.FabricLoaderImpl;
 import net.fabricmc.loader.game.MinecraftGameProvider;
 import net.fabricmc.loader.launch.common.FabricLauncherBase;
+import net.fabricmc.loader.util.BoundedSoftCache;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
+
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
 
 public final class FabricTransformer {
+	private static final ThreadLocal<CRC32> CHECKSUMS = ThreadLocal.withInitial(CRC32::new);
+	private static final BoundedSoftCache<String, HookResult> hookResults = new BoundedSoftCache<>(16 * 1024 * 1024, r -> 16 + (r.output != null ? r.output.length : 0));
+	private static volatile DefaultChain defaultChain;
+
 	public static byte[] lwTransformerHook(String name, String transformedName, byte[] bytes) {
 		boolean isDevelopment = FabricLauncherBase.getLauncher().isDevelopment();
 		EnvType envType = FabricLauncherBase.getLauncher().getEnvironmentType();
 
 		byte[] input = MinecraftGameProvider.TRANSFORMER.transform(name);
-		if (input != null) {
-			return FabricTransformer.transform(isDevelopment, envType, name, input);
-		} else {
-			if (bytes != null) {
-				return FabricTransformer.transform(isDevelopment, envType, name, bytes);
-			} else {
-				return null;
-			}
+		if (input == null) {
+			if (bytes == null) return null;
+
+			input = bytes;
 		}
 
+		return transformMemoized(name, input, in -> FabricTransformer.transform(isDevelopment, envType, name, in));
 	}
 
-	public static byte[] transform(boolean isDevelopment, EnvType envType, String name, byte[] bytes) {
-		boolean isMinecraftClass = name.startsWith("net.minecraft.") || name.indexOf('.') < 0;
-		boolean transformAccess = isMinecraftClass && FabricLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack();
-		boolean environmentStrip = !isMinecraftClass || isDevelopment;
-		boolean applyAccessWidener = isMinecraftClass && FabricLoaderImpl.getInstance().getAccessWidener().getTargets().contains(name);
+	/**
+	 * Runs the transformer unless it already ran on the same input for the class.
+	 *
+	 * <p>LaunchWrapper runs the transformers for both mixin's class lookups and the actual class loading. The input
+	 * for a name only changes if an earlier transformer does something different, a checksum is enough to notice.</p>
+	 */
+	static byte[] transformMemoized(String name, byte[] input, UnaryOperator<byte[]> transformer) {
+		CRC32 checksum = CHECKSUMS.get();
+		checksum.reset();
+		checksum.update(input, 0, input.length);
+		int inputChecksum = (int) checksum.getValue();
+		HookResult cached = hookResults.get(name);
 
-		if (!transformAccess && !environmentStrip && !applyAccessWidener) {
-			return bytes;
+		if (cached != null && cached.inputLength == input.length && cached.inputChecksum == inputChecksum) {
+			return cached.output != null ? cached.output : input;
 		}
 
-		ClassReader classReader = new ClassReader(bytes);
-		ClassWriter classWriter = new ClassWriter(0);
-		ClassVisitor visitor = classWriter;
-		int visitorCount = 0;
+		byte[] output = transformer.apply(input);
+		hookResults.put(name, new HookResult(input.length, inputChecksum, output != input ? output : null));
 
-		if (applyAccessWidener) {
-			visitor = AccessWidenerVisitor.createClassVisitor(FabricLoaderImpl.ASM_VERSION, visitor, FabricLoaderImpl.getInstance().getAccessWidener());
-			visitorCount++;
-		}
+		return output;
+	}
 
-		if (transformAccess) {
-			visitor = new PackageAccessFixer(FabricLoaderImpl.ASM_VERSION, visitor);
-			visitorCount++;
+	public static boolean isMinecraftClass(String name) {
+		return name.startsWith("net.minecraft.") || name.indexOf('.') < 0;
+	}
+
+	public static byte[] transform(boolean isDevelopment, EnvType envType, String name, byte[] bytes) {
+		return getChain(isDevelopment, envType).transform(name, bytes);
+	}
+
+	private static TransformerChain getChain(boolean isDevelopment, EnvType envType) {
+		DefaultChain ret = defaultChain;
+
+		if (ret == null || ret.isDevelopment != isDevelopment || ret.envType != envType) {
+			ret = new DefaultChain(isDevelopment, envType, createChain(isDevelopment, envType));
+			defaultChain = ret;
 		}
 
-		if (environmentStrip) {
-			EnvironmentStrippingData stripData = new EnvironmentStrippingData(FabricLoaderImpl.ASM_VERSION, envType.toString());
-			classReader.accept(stripData, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
-			if (stripData.stripEntireClass()) {
-				throw new RuntimeException("Cannot load class " + name + " in environment type " + envType);
+		return ret.chain;
+	}
+
+	private static TransformerChain createChain(boolean isDevelopment, EnvType envType) {
+		TransformerChain.Builder builder = TransformerChain.builder();
+		String envName = envType.toString();
+
+		builder.add(new TransformerStage() {
+			private final ClassNameFilter filter = isDevelopment ? ClassNameFilter.ALL : ClassNameFilter.modsOnly();
+
+			@Override
+			public ClassNameFilter getFilter() {
+				return filter;
 			}
-			if (!stripData.isEmpty()) {
-				visitor = new ClassStripper(FabricLoaderImpl.ASM_VERSION, visitor, stripData.getStripInterfaces(), stripData.getStripFields(), stripData.getStripMethods());
-				visitorCount++;
+
+			@Override
+			public int getScanFlags() {
+				return ClassFileScanner.ENVIRONMENT_ANNOTATIONS;
 			}
+
+			@Override
+			public ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next) {
+				EnvironmentStrippingData stripData = new EnvironmentStrippingData(FabricLoaderImpl.ASM_VERSION, envName);
+				reader.accept(stripData, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+
+				if (stripData.stripEntireClass()) {
+					throw new RuntimeException("Cannot load class " + name + " in environment type " + envType);
+				}
+
+				if (stripData.isEmpty()) return null;
+
+				return new ClassStripper(FabricLoaderImpl.ASM_VERSION, next, stripData.getStripInterfaces(), stripData.getStripFields(), stripData.getStripMethods());
+			}
+		});
+
+		if (FabricLauncherBase.getLauncher().getMappingConfiguration().requiresPackageAccessHack()) {
+			builder.add(new TransformerStage() {
+				@Override
+				public ClassNameFilter getFilter() {
+					return ClassNameFilter.minecraftOnly();
+				}
+
+				@Override
+				public int getScanFlags() {
+					return ClassFileScanner.NON_PUBLIC_ACCESS;
+				}
+
+				@Override
+				public ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next) {
+					return new PackageAccessFixer(FabricLoaderImpl.ASM_VERSION, next);
+				}
+			});
 		}
 
-		if (visitorCount <= 0) {
-			return bytes;
+		AccessWidener accessWidener = FabricLoaderImpl.getInstance().getAccessWidener();
+		// the targets are only filled in once the mods are loaded, so look them up through the live set
+		ClassNameFilter accessWidenerFilter = ClassNameFilter.minecraftOnly().and(ClassNameFilter.exact(accessWidener.getTargets()));
+
+		builder.add(new TransformerStage() {
+			@Override
+			public ClassNameFilter getFilter() {
+				return accessWidenerFilter;
+			}
+
+			@Override
+			public ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next) {
+				return AccessWidenerVisitor.createClassVisitor(FabricLoaderImpl.ASM_VERSION, next, accessWidener);
+			}
+		});
+
+		return builder.build();
+	}
+
+	private static final class DefaultChain {
+		final boolean isDevelopment;
+		final EnvType envType;
+		final TransformerChain chain;
+
+		DefaultChain(boolean isDevelopment, EnvType envType, TransformerChain chain) {
+			this.isDevelopment = isDevelopment;
+			this.envType = envType;
+			this.chain = chain;
 		}
+	}
 
-		classReader.accept(visitor, 0);
-		return classWriter.toByteArray();
+	private static final class HookResult {
+		final int inputLength;
+		final int inputChecksum;
+		final byte[] output; // null if unchanged
+
+		HookResult(int inputLength, int inputChecksum, byte[] output) {
+			this.inputLength = inputLength;
+			this.inputChecksum = inputChecksum;
+			this.output = output;
+		}
 	}
 }
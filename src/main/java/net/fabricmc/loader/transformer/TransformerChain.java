@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * An ordered list of {@link TransformerStage}s applied to a class in a single ASM pass.
+ *
+ * <p>Stages see the class in registration order. The stages applying to a class are picked from their name filters
+ * and a shared {@link ClassFileScanner} pass, a class no stage applies to is returned without being parsed.</p>
+ */
+final class TransformerChain {
+	private final TransformerStage[] stages;
+
+	private TransformerChain(List<TransformerStage> stages) {
+		this.stages = stages.toArray(new TransformerStage[0]);
+	}
+
+	static Builder builder() {
+		return new Builder();
+	}
+
+	byte[] transform(String name, byte[] bytes) {
+		TransformerStage[] applicable = new TransformerStage[stages.length];
+		int count = 0;
+		int scanFlags = 0;
+
+		for (TransformerStage stage : stages) {
+			if (stage.getFilter().matches(name)) {
+				applicable[count++] = stage;
+				scanFlags |= stage.getScanFlags();
+			}
+		}
+
+		if (count == 0) return bytes;
+
+		if (scanFlags != 0) {
+			int found = ClassFileScanner.scan(bytes, (scanFlags & ClassFileScanner.ENVIRONMENT_ANNOTATIONS) != 0, (scanFlags & ClassFileScanner.NON_PUBLIC_ACCESS) != 0);
+			int kept = 0;
+
+			for (int i = 0; i < count; i++) {
+				int flags = applicable[i].getScanFlags();
+
+				if (flags == 0 || (flags & found) != 0) {
+					applicable[kept++] = applicable[i];
+				}
+			}
+
+			count = kept;
+			if (count == 0) return bytes;
+		}
+
+		ClassReader reader = new ClassReader(bytes);
+		// passing the reader lets ASM copy the constant pool and the untouched methods verbatim
+		ClassWriter writer = new ClassWriter(reader, 0);
+		ClassVisitor visitor = writer;
+
+		for (int i = count - 1; i >= 0; i--) {
+			ClassVisitor stageVisitor = applicable[i].createVisitor(name, reader, visitor);
+			if (stageVisitor != null) visitor = stageVisitor;
+		}
+
+		if (visitor == writer) return bytes;
+
+		reader.accept(visitor, 0);
+		return writer.toByteArray();
+	}
+
+	static final class Builder {
+		private final List<TransformerStage> stages = new ArrayList<>();
+
+		private Builder() { }
+
+		Builder add(TransformerStage stage) {
+			stages.add(stage);
+			return this;
+		}
+
+		TransformerChain build() {
+			return new TransformerChain(stages);
+		}
+	}
+}
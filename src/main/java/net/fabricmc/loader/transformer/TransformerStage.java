@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * A single transformation in a {@link TransformerChain}.
+ */
+interface TransformerStage {
+	ClassNameFilter getFilter();
+
+	/**
+	 * @return the {@link ClassFileScanner} flags of which the class needs at least one for this stage to apply, 0 to
+	 * always apply to classes passing the filter
+	 */
+	default int getScanFlags() {
+		return 0;
+	}
+
+	/**
+	 * @param reader the reader for the class, may be used for an additional analysis pass
+	 * @return the visitor to put in front of {@code next}, or null if the class doesn't need this stage after all
+	 */
+	ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next);
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread safe LRU cache holding its values through soft references.
+ *
+ * <p>The cache evicts the least recently used entries once the total weight of its values exceeds the limit, the GC
+ * may drop any value earlier when memory runs low.</p>
+ */
+public final class BoundedSoftCache<K, V> {
+	private final long maxWeight;
+	private final ToLongFunction<? super V> weigher;
+	private final Map<K, Ref<K, V>> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+	private long weight;
+
+	public BoundedSoftCache(long maxWeight, ToLongFunction<? super V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	public synchronized V get(K key) {
+		expungeCleared();
+
+		Ref<K, V> ref = entries.get(key);
+		return ref != null ? ref.get() : null;
+	}
+
+	public synchronized void put(K key, V value) {
+		expungeCleared();
+
+		long valueWeight = weigher.applyAsLong(value);
+		Ref<K, V> old = entries.put(key, new Ref<>(key, value, valueWeight, queue));
+		if (old != null) removed(old);
+
+		weight += valueWeight;
+
+		for (Iterator<Ref<K, V>> it = entries.values().iterator(); weight > maxWeight && it.hasNext(); ) {
+			Ref<K, V> ref = it.next();
+			it.remove();
+			removed(ref);
+		}
+	}
+
+	public synchronized V remove(K key) {
+		expungeCleared();
+
+		Ref<K, V> ref = entries.remove(key);
+		if (ref == null) return null;
+
+		removed(ref);
+		return ref.get();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+
+		while (queue.poll() != null) {
+			// discard, the entries are gone already
+		}
+	}
+
+	private void removed(Ref<K, V> ref) {
+		weight -= ref.weight;
+		ref.removed = true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void expungeCleared() {
+		Ref<K, V> ref;
+
+		while ((ref = (Ref<K, V>) queue.poll()) != null) {
+			if (!ref.removed) {
+				entries.remove(ref.key);
+				removed(ref);
+			}
+		}
+	}
+
+	private static final class Ref<K, V> extends SoftReference<V> {
+		final K key;
+		final long weight;
+		boolean removed;
+
+		Ref(K key, V value, long weight, ReferenceQueue<V> queue) {
+			super(value, queue);
+			this.key = key;
+			this.weight = weight;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public final class DigestUtil {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private DigestUtil() {
+
+	}
+
+	public static MessageDigest newSha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-1 is not supported by this JVM!", e);
+		}
+	}
+
+	/**
+	 * Feeds the entry names, sizes and CRCs of a zip file to the digest. Unlike the file's timestamp or raw bytes these
+	 * stay the same when an identical jar gets written again, e.g. by a remapping run.
+	 */
+	public static void updateZipContent(MessageDigest digest, Path zipFile) throws IOException {
+		try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+				digest.update((entry.getSize() + "/" + entry.getCrc()).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	public static String toHex(byte[] data) {
+		char[] ret = new char[data.length * 2];
+
+		for (int i = 0; i < data.length; i++) {
+			ret[i * 2] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+			ret[i * 2 + 1] = HEX_DIGITS[data[i] & 0xf];
+		}
+
+		return new String(ret);
+	}
+}
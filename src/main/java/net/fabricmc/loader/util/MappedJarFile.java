@@ -0,0 +1,523 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only jar/zip reader working directly on a memory mapped file.
+ *
+ * <p>The central directory is parsed once on open, entries are then read by inflating straight from the mapping into
+ * an array of the exact entry size (or copied in bulk for STORED entries), bypassing the stream and buffer copies of
+ * {@link java.util.jar.JarFile}. The content is checked against the CRC-32 in the central directory, so a corrupted jar
+ * fails with a {@link ZipException} instead of yielding bad bytes. Files outside of the default file system (e.g. the
+ * in-memory one nested jars are extracted to) are read onto the heap instead.</p>
+ *
+ * <p>{@link #openStream} serves large entries without reading them upfront, STORED ones straight from the mapping.</p>
+ *
+ * <p>Zip64, encrypted entries and compression methods other than STORED and DEFLATED aren't supported, {@link #open}
+ * throws a {@link ZipException} for those so callers can fall back to {@link java.util.jar.JarFile}.</p>
+ */
+public final class MappedJarFile implements Closeable {
+	private static final int EOCD_SIG = 0x06054b50;
+	private static final int EOCD_SIZE = 22;
+	private static final int CEN_SIG = 0x02014b50;
+	private static final int CEN_SIZE = 46;
+	private static final int LOC_SIG = 0x04034b50;
+	private static final int LOC_SIZE = 30;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int INPUT_CHUNK_SIZE = 8192;
+	// deflated entries up to this size are streamed from an array inflated with the pooled inflater
+	private static final int STREAM_THRESHOLD = 64 * 1024;
+	// the dummy input nowrap mode may need past the end of the deflate data
+	private static final byte[] DUMMY_INPUT = new byte[1];
+
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+	private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+	// Inflater.setInput(ByteBuffer), Java 11+
+	private static final MethodHandle SET_INPUT_BUFFER = findSetInputBuffer();
+	// Java 8 fallback, feeds the inflater from the mapping in small chunks
+	private static final ThreadLocal<byte[]> INPUT_CHUNK = ThreadLocal.withInitial(() -> new byte[INPUT_CHUNK_SIZE]);
+
+	private static final class Entry {
+		final int method;
+		final int localHeaderOffset;
+		final int compressedSize;
+		final int size;
+		final int crc;
+
+		Entry(int method, int localHeaderOffset, int compressedSize, int size, int crc) {
+			this.method = method;
+			this.localHeaderOffset = localHeaderOffset;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.crc = crc;
+		}
+	}
+
+	private final Path path;
+	private volatile ByteBuffer buffer;
+	private final Map<String, Entry> entries;
+	private final Set<String> directories = new HashSet<>();
+
+	private MappedJarFile(Path path, ByteBuffer buffer) throws IOException {
+		this.path = path;
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.entries = readCentralDirectory(this.buffer, directories);
+	}
+
+	public static MappedJarFile open(Path path) throws IOException {
+		ByteBuffer buffer;
+
+		if (path.getFileSystem() == FileSystems.getDefault()) {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE) throw new ZipException("jar too large to map: " + path);
+
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+		} else {
+			buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		}
+
+		try {
+			return new MappedJarFile(path, buffer);
+		} catch (IndexOutOfBoundsException | IllegalArgumentException | BufferUnderflowException e) {
+			throw new ZipException("invalid jar " + path + ": " + e);
+		}
+	}
+
+	private static Map<String, Entry> readCentralDirectory(ByteBuffer buffer, Set<String> directories) throws IOException {
+		int eocd = findEndOfCentralDirectory(buffer);
+		int count = Short.toUnsignedInt(buffer.getShort(eocd + 10));
+		long cenOffset = Integer.toUnsignedLong(buffer.getInt(eocd + 16));
+
+		if (count == 0xffff || cenOffset == 0xffffffffL) {
+			throw new ZipException("zip64 isn't supported");
+		}
+
+		Map<String, Entry> ret = new HashMap<>(count * 2);
+		int pos = (int) cenOffset;
+
+		for (int i = 0; i < count; i++) {
+			if (buffer.getInt(pos) != CEN_SIG) throw new ZipException("invalid central directory header at " + pos);
+
+			int flags = Short.toUnsignedInt(buffer.getShort(pos + 8));
+			int method = Short.toUnsignedInt(buffer.getShort(pos + 10));
+			int crc = buffer.getInt(pos + 16);
+			long compressedSize = Integer.toUnsignedLong(buffer.getInt(pos + 20));
+			long size = Integer.toUnsignedLong(buffer.getInt(pos + 24));
+			int nameLen = Short.toUnsignedInt(buffer.getShort(pos + 28));
+			int extraLen = Short.toUnsignedInt(buffer.getShort(pos + 30));
+			int commentLen = Short.toUnsignedInt(buffer.getShort(pos + 32));
+			long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(pos + 42));
+			String name = readString(buffer, pos + CEN_SIZE, nameLen);
+
+			pos += CEN_SIZE + nameLen + extraLen + commentLen;
+
+			if (name.endsWith("/")) {
+				directories.add(name);
+				continue;
+			}
+
+			if ((flags & 1) != 0) throw new ZipException("encrypted entry " + name);
+			if (method != METHOD_STORED && method != METHOD_DEFLATED) throw new ZipException("unsupported compression method " + method + " for " + name);
+			if (compressedSize >= Integer.MAX_VALUE || size >= Integer.MAX_VALUE || localHeaderOffset >= Integer.MAX_VALUE) {
+				throw new ZipException("zip64 isn't supported");
+			}
+
+			// the first entry wins, matching JarFile
+			ret.putIfAbsent(name, new Entry(method, (int) localHeaderOffset, (int) compressedSize, (int) size, crc));
+		}
+
+		return ret;
+	}
+
+	private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+		int end = buffer.limit() - EOCD_SIZE;
+		int start = Math.max(0, end - 0xffff); // max comment length
+
+		for (int pos = end; pos >= start; pos--) {
+			if (buffer.getInt(pos) == EOCD_SIG) {
+				return pos;
+			}
+		}
+
+		throw new ZipException("no end of central directory record");
+	}
+
+	private static String readString(ByteBuffer buffer, int pos, int len) {
+		byte[] bytes = new byte[len];
+		ByteBuffer view = buffer.duplicate();
+		view.position(pos);
+		view.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the names of all file entries, directories excluded
+	 */
+	public Collection<String> getEntryNames() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Checks for an explicit directory entry, like {@link java.util.zip.ZipFile#getEntry} with or without the trailing
+	 * slash. Directories that only appear as part of file names don't count.
+	 */
+	public boolean containsDirectory(String name) {
+		return directories.contains(name.endsWith("/") ? name : name + "/");
+	}
+
+	/**
+	 * Reads an entry in full.
+	 *
+	 * @return the entry's content, or null if there is no such entry
+	 */
+	public byte[] read(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) return null;
+
+		ByteBuffer data = getData(name, entry);
+		byte[] ret;
+
+		if (entry.method == METHOD_STORED) {
+			ret = new byte[entry.size];
+			data.get(ret);
+		} else {
+			ret = inflate(name, data, entry.size);
+		}
+
+		CRC32 crc = CRC.get();
+		crc.reset();
+		crc.update(ret, 0, ret.length);
+
+		if ((int) crc.getValue() != entry.crc) {
+			throw new ZipException("invalid entry CRC for " + name + " in " + path);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Opens an entry for streaming.
+	 *
+	 * <p>STORED entries are read straight from the mapping and large DEFLATED entries are inflated as they are read,
+	 * small DEFLATED entries are inflated in one go like {@link #read}. The CRC-32 of streamed entries is checked when
+	 * the end of the entry is reached.</p>
+	 *
+	 * @return a stream over the entry's content, or null if there is no such entry
+	 */
+	public InputStream openStream(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if (entry == null) return null;
+
+		if (entry.method != METHOD_STORED && entry.size <= STREAM_THRESHOLD) {
+			return new ByteArrayInputStream(read(name));
+		}
+
+		InputStream ret = new ByteBufferInputStream(getData(name, entry));
+		if (entry.method != METHOD_STORED) ret = new EntryInflaterInputStream(ret, name);
+
+		return new CheckedEntryInputStream(ret, name, entry);
+	}
+
+	/**
+	 * @return the entry's raw (compressed) data as a view of the mapping
+	 */
+	private ByteBuffer getData(String name, Entry entry) throws IOException {
+		ByteBuffer buffer = this.buffer;
+		if (buffer == null) throw new IOException("jar " + path + " is closed");
+
+		if (entry.method == METHOD_STORED && entry.compressedSize != entry.size) {
+			throw new ZipException("invalid size for stored entry " + name);
+		}
+
+		try {
+			int pos = entry.localHeaderOffset;
+			if (buffer.getInt(pos) != LOC_SIG) throw new ZipException("invalid local header for " + name);
+
+			// the local header's name and extra field lengths may differ from the central directory's
+			int dataOffset = pos + LOC_SIZE + Short.toUnsignedInt(buffer.getShort(pos + 26)) + Short.toUnsignedInt(buffer.getShort(pos + 28));
+			ByteBuffer data = buffer.duplicate();
+			data.position(dataOffset);
+			data.limit(dataOffset + entry.compressedSize);
+
+			return data.slice();
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new ZipException("entry " + name + " exceeds the bounds of " + path);
+		}
+	}
+
+	private static byte[] inflate(String name, ByteBuffer input, int size) throws ZipException {
+		Inflater inflater = INFLATER.get();
+		byte[] ret = new byte[size];
+
+		try {
+			byte[] chunk = null;
+
+			if (SET_INPUT_BUFFER != null) {
+				setInput(inflater, input);
+			} else {
+				chunk = INPUT_CHUNK.get();
+			}
+
+			boolean fedDummy = false;
+			int pos = 0;
+
+			while (pos < size) {
+				if (inflater.needsInput()) {
+					if (chunk != null && input.hasRemaining()) {
+						int len = Math.min(chunk.length, input.remaining());
+						input.get(chunk, 0, len);
+						inflater.setInput(chunk, 0, len);
+					} else if (!fedDummy) {
+						inflater.setInput(DUMMY_INPUT);
+						fedDummy = true;
+					} else {
+						break;
+					}
+				}
+
+				int len = inflater.inflate(ret, pos, size - pos);
+
+				if (len == 0 && (inflater.finished() || inflater.needsDictionary())) {
+					break;
+				}
+
+				pos += len;
+			}
+
+			if (pos != size) throw new ZipException("truncated entry " + name + ": " + pos + " of " + size + " bytes");
+
+			return ret;
+		} catch (DataFormatException e) {
+			throw new ZipException("invalid deflate data for " + name + ": " + e.getMessage());
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	private static void setInput(Inflater inflater, ByteBuffer input) {
+		try {
+			SET_INPUT_BUFFER.invokeExact(inflater, input);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	private static MethodHandle findSetInputBuffer() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Inflater.class, "setInput", MethodType.methodType(void.class, ByteBuffer.class));
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? Byte.toUnsignedInt(buffer.get()) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (!buffer.hasRemaining()) return -1;
+
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	private static final class EntryInflaterInputStream extends InflaterInputStream {
+		private final String name;
+		private boolean eof;
+		private boolean closed;
+
+		EntryInflaterInputStream(InputStream in, String name) {
+			super(in, new Inflater(true), INPUT_CHUNK_SIZE);
+
+			this.name = name;
+		}
+
+		@Override
+		protected void fill() throws IOException {
+			if (eof) throw new EOFException("unexpected end of deflate data for " + name);
+
+			len = in.read(buf, 0, buf.length);
+
+			if (len < 0) {
+				// the dummy input nowrap mode may need past the end of the deflate data
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				inf.end();
+				super.close();
+			}
+		}
+	}
+
+	/**
+	 * Checks the size and CRC-32 of the content read through it once it reaches the end.
+	 */
+	private final class CheckedEntryInputStream extends FilterInputStream {
+		private final String name;
+		private final Entry entry;
+		private final CRC32 crc = new CRC32();
+		private long count;
+
+		CheckedEntryInputStream(InputStream in, String name, Entry entry) {
+			super(in);
+
+			this.name = name;
+			this.entry = entry;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ret = in.read();
+
+			if (ret < 0) {
+				check();
+			} else {
+				crc.update(ret);
+				count++;
+			}
+
+			return ret;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int ret = in.read(b, off, len);
+
+			if (ret < 0) {
+				check();
+			} else {
+				crc.update(b, off, ret);
+				count += ret;
+			}
+
+			return ret;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// the skipped content still has to go into the CRC
+			byte[] buf = new byte[(int) Math.min(Math.max(n, 0), INPUT_CHUNK_SIZE)];
+			long ret = 0;
+			int len;
+
+			while (ret < n && (len = read(buf, 0, (int) Math.min(buf.length, n - ret))) > 0) {
+				ret += len;
+			}
+
+			return ret;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public synchronized void mark(int readlimit) { }
+
+		@Override
+		public synchronized void reset() throws IOException {
+			throw new IOException("mark/reset not supported");
+		}
+
+		private void check() throws ZipException {
+			if (count != entry.size || (int) crc.getValue() != entry.crc) {
+				throw new ZipException("invalid entry CRC for " + name + " in " + path);
+			}
+		}
+	}
+
+	/**
+	 * Drops the reference to the mapping, the OS releases it once it's garbage collected.
+	 */
+	@Override
+	public void close() {
+		buffer = null;
+	}
+}
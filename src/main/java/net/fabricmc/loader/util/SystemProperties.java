@@ -22,6 +22,22 @@ public final class SystemProperties {
 	public static final String GAME_JAR_PATH = "fabric.gameJarPath";
 	public static final String GAME_VERSION = "fabric.gameVersion";
 	public static final String REMAP_CLASSPATH_FILE = "fabric.remapClasspathFile";
+	// persists transformed class bytes in .fabric/classCache between launches
+	public static final String CLASS_CACHE = "fabric.loader.classCache";
+	// records the class load order to .fabric/classLoadTrace.txt and prefetches it on the next launch
+	public static final String CLASS_LOAD_TRACE = "fabric.loader.classLoadTrace";
+	// collects per-stage class loading metrics, published through JMX and JFR
+	public static final String CLASS_LOAD_METRICS = "fabric.loader.classLoadMetrics";
+	// writes a class loading metrics summary to .fabric/classLoadMetrics.txt on shutdown
+	public static final String CLASS_LOAD_METRICS_DUMP = "fabric.loader.classLoadMetricsDump";
+	// applies access wideners to a copy of the remapped game jars instead of at class load time
+	public static final String BAKE_ACCESS_WIDENERS = "fabric.loader.bakeAccessWideners";
+	// sends every class through the mixin transformer, not just the ones a mixin config targets
+	public static final String DISABLE_MIXIN_TARGET_INDEX = "fabric.loader.disableMixinTargetIndex";
+	// records the applied mixins and their timing per target class, published through JMX and .fabric/mixinAudit.txt
+	public static final String MIXIN_AUDIT = "fabric.loader.mixinAudit";
+	// number of threads running independent Knot startup stages at the same time, 0 or 1 runs them one after another, defaults to the processor count up to 4
+	public static final String STARTUP_THREADS = "fabric.loader.startupThreads";
 
 	private SystemProperties() {
 	}
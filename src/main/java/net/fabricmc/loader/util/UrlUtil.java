@@ -27,26 +27,37 @@ public final class UrlUtil {
 	}
 
 	public static URL getSource(String filename, URL resourceURL) throws UrlConversionException {
-		URL codeSourceURL;
-
 		try {
-			URLConnection connection = resourceURL.openConnection();
-			if (connection instanceof JarURLConnection) {
-				codeSourceURL = ((JarURLConnection) connection).getJarFileURL();
-			} else {
-				String path = resourceURL.getPath();
-
-				if (path.endsWith(filename)) {
-					codeSourceURL = new URL(resourceURL.getProtocol(), resourceURL.getHost(), resourceURL.getPort(), path.substring(0, path.length() - filename.length()));
-				} else {
-					throw new UrlConversionException("Could not figure out code source for file '" + filename + "' and URL '" + resourceURL + "'!");
-				}
-			}
-		} catch (Exception e) {
+			return new URL(getSourceString(filename, resourceURL));
+		} catch (MalformedURLException e) {
 			throw new UrlConversionException(e);
 		}
+	}
+
+	/**
+	 * Figures out the code source of a resource purely from its URL string, without opening a connection.
+	 *
+	 * @param filename The name of the resource within its code source, e.g. {@code net/fabricmc/Foo.class}
+	 * @param resourceURL The URL the resource was found at
+	 * @return The string form of the code source URL, i.e. the jar file or the class path directory
+	 */
+	public static String getSourceString(String filename, URL resourceURL) throws UrlConversionException {
+		String spec = resourceURL.toString();
 
-		return codeSourceURL;
+		if (resourceURL.getProtocol().equals("jar")) {
+			// jar:<code source>!/<entry>, same split as JarURLConnection
+			int separator = spec.indexOf("!/");
+
+			if (separator < 0) {
+				throw new UrlConversionException("Could not figure out code source for file '" + filename + "' and URL '" + resourceURL + "'!");
+			}
+
+			return spec.substring(4, separator);
+		} else if (spec.endsWith(filename)) {
+			return spec.substring(0, spec.length() - filename.length());
+		} else {
+			throw new UrlConversionException("Could not figure out code source for file '" + filename + "' and URL '" + resourceURL + "'!");
+		}
 	}
 
 	public static File asFile(URL url) throws UrlConversionException {
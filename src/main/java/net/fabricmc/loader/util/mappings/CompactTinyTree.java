@@ -0,0 +1,908 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util.mappings;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+import net.fabricmc.mapping.reader.v2.TinyMetadata;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.Commented;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyTree;
+
+/**
+ * Memory mapped binary form of a {@link MaterializedTinyTree}, classes are only decoded once they are accessed.
+ *
+ * <p>Decoded classes aren't retained by the tree, so a one-off pass over all classes doesn't keep them alive. A class
+ * decodes its names up front and its members once they are first requested.</p>
+ *
+ * <p>All names, descriptors and comments are stored once in a string pool and referenced by index. A table of class
+ * record offsets allows decoding any class without touching the others, and an open addressing hash table over the
+ * first namespace's class names serves {@link #getDefaultNamespaceClassMap()}. Descriptors are stored for every
+ * namespace as produced by the materialized tree, so decoding a class never has to look up other classes.</p>
+ *
+ * <p>Layout, all values big endian ints unless noted:</p>
+ * <pre>
+ * magic, key (20 bytes), major version, minor version
+ * namespace count, namespace string ids
+ * property count, (key string id, value string id)*
+ * string count, string data offsets (string count + 1)
+ * listed class count, total class count, class record offsets (total class count)
+ * hash table size, (name hash, class index + 1)* (hash table size)
+ * string data (UTF-8)
+ * class records
+ * </pre>
+ *
+ * <p>A class record consists of flags, the raw names, the comment, the methods (raw names, descriptors, comment,
+ * parameters, local variables) and the fields (raw names, descriptors, comment). Absent comments use the string id
+ * -1.</p>
+ */
+public final class CompactTinyTree implements TinyTree {
+	private static final int MAGIC = 0x46544d32; // FTM2
+	private static final int KEY_SIZE = 20;
+	private static final int FLAG_COMMON = 1;
+
+	private final ByteBuffer buffer;
+	private final Metadata metadata;
+	private final int namespaceCount;
+	private final Map<String, Integer> namespaceIndices;
+	private final int stringOffsetsPos;
+	private final int stringDataPos;
+	private final int listedClassCount;
+	private final int classOffsetsPos;
+	private final int hashTableSize;
+	private final int hashTablePos;
+	// racy but idempotent, the decoded strings are immutable
+	private final String[] strings;
+	private final Collection<ClassDef> classCollection = new ClassList();
+	private final Map<String, ClassDef> defaultNamespaceClassMap = new DefaultNamespaceClassMap();
+
+	private CompactTinyTree(ByteBuffer buffer) {
+		this.buffer = buffer;
+
+		int pos = 4 + KEY_SIZE;
+		int majorVersion = buffer.getInt(pos);
+		int minorVersion = buffer.getInt(pos + 4);
+		pos += 8;
+
+		namespaceCount = buffer.getInt(pos);
+		int namespacePos = pos + 4;
+		pos = namespacePos + namespaceCount * 4;
+
+		int propertyCount = buffer.getInt(pos);
+		int propertyPos = pos + 4;
+		pos = propertyPos + propertyCount * 8;
+
+		int stringCount = buffer.getInt(pos);
+		stringOffsetsPos = pos + 4;
+		strings = new String[stringCount];
+		pos = stringOffsetsPos + (stringCount + 1) * 4;
+
+		listedClassCount = buffer.getInt(pos);
+		int totalClassCount = buffer.getInt(pos + 4);
+		classOffsetsPos = pos + 8;
+		pos = classOffsetsPos + totalClassCount * 4;
+
+		hashTableSize = buffer.getInt(pos);
+		hashTablePos = pos + 4;
+		stringDataPos = hashTablePos + hashTableSize * 8;
+
+		List<String> namespaces = new ArrayList<>(namespaceCount);
+		namespaceIndices = new HashMap<>();
+
+		for (int i = 0; i < namespaceCount; i++) {
+			String namespace = getString(buffer.getInt(namespacePos + i * 4));
+			namespaces.add(namespace);
+			namespaceIndices.put(namespace, i);
+		}
+
+		Map<String, String> properties = new LinkedHashMap<>();
+
+		for (int i = 0; i < propertyCount; i++) {
+			properties.put(getString(buffer.getInt(propertyPos + i * 8)), getString(buffer.getInt(propertyPos + i * 8 + 4)));
+		}
+
+		metadata = new Metadata(majorVersion, minorVersion, Collections.unmodifiableList(namespaces), Collections.unmodifiableMap(properties));
+	}
+
+	/**
+	 * Maps a file written by {@link #write}.
+	 *
+	 * @param key the key the file has to have been written with
+	 * @return the tree, or null if the file doesn't exist, has a different format or key or its header is corrupt
+	 */
+	public static CompactTinyTree open(Path file, byte[] key) throws IOException {
+		if (key.length != KEY_SIZE) throw new IllegalArgumentException("invalid key length: " + key.length);
+		if (!Files.isRegularFile(file)) return null;
+
+		ByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < 4 + KEY_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt(0) != MAGIC) return null;
+
+		for (int i = 0; i < KEY_SIZE; i++) {
+			if (buffer.get(4 + i) != key[i]) return null;
+		}
+
+		if (!isValidHeader(buffer)) return null;
+
+		return new CompactTinyTree(buffer);
+	}
+
+	/**
+	 * Checks that all sections, string offsets, class record offsets and the ids referenced from the header lie within
+	 * the file, so a truncated or corrupt file can't make decoding read past its end.
+	 */
+	private static boolean isValidHeader(ByteBuffer buffer) {
+		long limit = buffer.limit();
+		long pos = 4 + KEY_SIZE + 8;
+
+		int namespaceCount = readCount(buffer, pos);
+		if (namespaceCount < 0) return false;
+		long namespacePos = pos + 4;
+		pos = namespacePos + namespaceCount * 4L;
+
+		int propertyCount = readCount(buffer, pos);
+		if (propertyCount < 0) return false;
+		long propertyPos = pos + 4;
+		pos = propertyPos + propertyCount * 8L;
+
+		int stringCount = readCount(buffer, pos);
+		if (stringCount < 0) return false;
+		long stringOffsetsPos = pos + 4;
+		pos = stringOffsetsPos + (stringCount + 1L) * 4;
+
+		int listedClassCount = readCount(buffer, pos);
+		int totalClassCount = readCount(buffer, pos + 4);
+		if (listedClassCount < 0 || totalClassCount < listedClassCount) return false;
+		long classOffsetsPos = pos + 8;
+		pos = classOffsetsPos + totalClassCount * 4L;
+
+		int hashTableSize = readCount(buffer, pos);
+		if (hashTableSize <= 0 || (hashTableSize & (hashTableSize - 1)) != 0) return false;
+		long hashTablePos = pos + 4;
+		long stringDataPos = hashTablePos + hashTableSize * 8L;
+		if (stringDataPos > limit) return false;
+
+		// everything up to the string data is in bounds now, which keeps the positions below within int range
+		int stringEnd = 0;
+
+		for (int i = 0; i <= stringCount; i++) {
+			int offset = buffer.getInt((int) stringOffsetsPos + i * 4);
+			if (offset < stringEnd) return false;
+			stringEnd = offset;
+		}
+
+		long recordPos = stringDataPos + stringEnd;
+		if (recordPos > limit) return false;
+
+		for (int i = 0; i < totalClassCount; i++) {
+			int offset = buffer.getInt((int) classOffsetsPos + i * 4);
+			if (offset < recordPos || offset >= limit) return false;
+			recordPos = offset;
+		}
+
+		for (int i = 0; i < namespaceCount; i++) {
+			int id = buffer.getInt((int) namespacePos + i * 4);
+			if (id < 0 || id >= stringCount) return false;
+		}
+
+		for (int i = 0; i < propertyCount * 2; i++) {
+			int id = buffer.getInt((int) propertyPos + i * 4);
+			if (id < -1 || id >= stringCount) return false;
+		}
+
+		for (int i = 0; i < hashTableSize; i++) {
+			int index = buffer.getInt((int) hashTablePos + i * 8 + 4);
+			if (index < 0 || index > totalClassCount) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the count stored at the position, or -1 if it is negative or past the end of the buffer
+	 */
+	private static int readCount(ByteBuffer buffer, long pos) {
+		if (pos + 4 > buffer.limit()) return -1;
+
+		int ret = buffer.getInt((int) pos);
+
+		return ret >= 0 ? ret : -1;
+	}
+
+	@Override
+	public TinyMetadata getMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public Map<String, ClassDef> getDefaultNamespaceClassMap() {
+		return defaultNamespaceClassMap;
+	}
+
+	@Override
+	public Collection<ClassDef> getClasses() {
+		return classCollection;
+	}
+
+	private String getString(int id) {
+		if (id < 0) return null;
+
+		String ret = strings[id];
+
+		if (ret == null) {
+			int start = buffer.getInt(stringOffsetsPos + id * 4);
+			int end = buffer.getInt(stringOffsetsPos + id * 4 + 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer view = buffer.duplicate();
+			view.position(stringDataPos + start);
+			view.get(bytes);
+
+			strings[id] = ret = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		return ret;
+	}
+
+	private CompactClass getClass(int index) {
+		return new CompactClass(new Decoder(buffer.getInt(classOffsetsPos + index * 4)));
+	}
+
+	private ClassDef findClass(String name) {
+		int mask = hashTableSize - 1;
+		int hash = name.hashCode();
+		int slot = mix(hash) & mask;
+
+		// the table always has free slots, the bound only keeps a corrupt file from looping forever
+		for (int i = 0; i < hashTableSize; i++, slot = (slot + 1) & mask) {
+			int pos = hashTablePos + slot * 8;
+			int index = buffer.getInt(pos + 4) - 1;
+			if (index < 0) return null;
+
+			if (buffer.getInt(pos) == hash) {
+				CompactClass ret = getClass(index);
+				if (ret.rawNames[0].equals(name)) return ret;
+			}
+		}
+
+		return null;
+	}
+
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private final class Decoder {
+		private int pos;
+
+		Decoder(int pos) {
+			this.pos = pos;
+		}
+
+		int readInt() {
+			int ret = buffer.getInt(pos);
+			pos += 4;
+
+			return ret;
+		}
+
+		String readString() {
+			return getString(readInt());
+		}
+
+		String[] readStrings() {
+			String[] ret = new String[namespaceCount];
+
+			for (int i = 0; i < ret.length; i++) {
+				ret[i] = readString();
+			}
+
+			return ret;
+		}
+	}
+
+	private abstract class CompactMapped implements Mapped, Commented {
+		final String[] rawNames;
+		private final String comment;
+
+		CompactMapped(String[] rawNames, String comment) {
+			this.rawNames = rawNames;
+			this.comment = comment;
+		}
+
+		String getUnknownRawName() {
+			return ""; //No name for the namespace
+		}
+
+		@Override
+		public String getRawName(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+
+			return index != null ? rawNames[index] : getUnknownRawName();
+		}
+
+		@Override
+		public String getName(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+			if (index == null) return getUnknownRawName();
+
+			// fall back to the closest preceding namespace with a name like the tiny tree does
+			for (int i = index; i >= 0; i--) {
+				if (!rawNames[i].isEmpty()) return rawNames[i];
+			}
+
+			return rawNames[index];
+		}
+
+		@Override
+		public String getComment() {
+			return comment;
+		}
+	}
+
+	private final class CompactClass extends CompactMapped implements ClassDef {
+		private final boolean common;
+		private final int memberPos;
+		// racy but idempotent like the string pool
+		private volatile Members members;
+
+		CompactClass(Decoder decoder) {
+			this(decoder, decoder.readInt(), decoder.readStrings(), decoder.readString());
+		}
+
+		private CompactClass(Decoder decoder, int flags, String[] rawNames, String comment) {
+			super(rawNames, comment);
+
+			this.common = (flags & FLAG_COMMON) != 0;
+			this.memberPos = decoder.pos;
+		}
+
+		/**
+		 * Decodes the methods and fields together, the fields can only be found by reading past the methods anyway.
+		 */
+		private Members getMembers() {
+			Members ret = members;
+
+			if (ret == null) {
+				Decoder decoder = new Decoder(memberPos);
+				MethodDef[] methods = new MethodDef[decoder.readInt()];
+
+				for (int i = 0; i < methods.length; i++) {
+					methods[i] = new CompactMethod(decoder);
+				}
+
+				FieldDef[] fields = new FieldDef[decoder.readInt()];
+
+				for (int i = 0; i < fields.length; i++) {
+					fields[i] = new CompactField(decoder);
+				}
+
+				members = ret = new Members(Collections.unmodifiableList(Arrays.asList(methods)), Collections.unmodifiableList(Arrays.asList(fields)));
+			}
+
+			return ret;
+		}
+
+		@Override
+		String getUnknownRawName() {
+			return common ? rawNames[0] : super.getUnknownRawName();
+		}
+
+		@Override
+		public Collection<MethodDef> getMethods() {
+			return getMembers().methods;
+		}
+
+		@Override
+		public Collection<FieldDef> getFields() {
+			return getMembers().fields;
+		}
+	}
+
+	private static final class Members {
+		final Collection<MethodDef> methods;
+		final Collection<FieldDef> fields;
+
+		Members(Collection<MethodDef> methods, Collection<FieldDef> fields) {
+			this.methods = methods;
+			this.fields = fields;
+		}
+	}
+
+	private abstract class CompactMember extends CompactMapped {
+		private final String[] descriptors;
+
+		CompactMember(String[] rawNames, String[] descriptors, String comment) {
+			super(rawNames, comment);
+
+			this.descriptors = descriptors;
+		}
+
+		public String getDescriptor(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+
+			return descriptors[index != null ? index : 0];
+		}
+	}
+
+	private final class CompactMethod extends CompactMember implements MethodDef {
+		private final Collection<ParameterDef> parameters;
+		private final Collection<LocalVariableDef> localVariables;
+
+		CompactMethod(Decoder decoder) {
+			super(decoder.readStrings(), decoder.readStrings(), decoder.readString());
+
+			ParameterDef[] parameters = new ParameterDef[decoder.readInt()];
+
+			for (int i = 0; i < parameters.length; i++) {
+				parameters[i] = new CompactParameter(decoder.readInt(), decoder.readStrings(), decoder.readString());
+			}
+
+			LocalVariableDef[] localVariables = new LocalVariableDef[decoder.readInt()];
+
+			for (int i = 0; i < localVariables.length; i++) {
+				localVariables[i] = new CompactLocalVariable(decoder.readInt(), decoder.readInt(), decoder.readInt(), decoder.readStrings(), decoder.readString());
+			}
+
+			this.parameters = Collections.unmodifiableList(Arrays.asList(parameters));
+			this.localVariables = Collections.unmodifiableList(Arrays.asList(localVariables));
+		}
+
+		@Override
+		public Collection<ParameterDef> getParameters() {
+			return parameters;
+		}
+
+		@Override
+		public Collection<LocalVariableDef> getLocalVariables() {
+			return localVariables;
+		}
+	}
+
+	private final class CompactField extends CompactMember implements FieldDef {
+		CompactField(Decoder decoder) {
+			super(decoder.readStrings(), decoder.readStrings(), decoder.readString());
+		}
+	}
+
+	private final class CompactParameter extends CompactMapped implements ParameterDef {
+		private final int lvIndex;
+
+		CompactParameter(int lvIndex, String[] rawNames, String comment) {
+			super(rawNames, comment);
+
+			this.lvIndex = lvIndex;
+		}
+
+		@Override
+		public int getLocalVariableIndex() {
+			return lvIndex;
+		}
+	}
+
+	private final class CompactLocalVariable extends CompactMapped implements LocalVariableDef {
+		private final int lvIndex;
+		private final int startOffset;
+		private final int lvtIndex;
+
+		CompactLocalVariable(int lvIndex, int startOffset, int lvtIndex, String[] rawNames, String comment) {
+			super(rawNames, comment);
+
+			this.lvIndex = lvIndex;
+			this.startOffset = startOffset;
+			this.lvtIndex = lvtIndex;
+		}
+
+		@Override
+		public int getLocalVariableIndex() {
+			return lvIndex;
+		}
+
+		@Override
+		public int getLocalVariableStartOffset() {
+			return startOffset;
+		}
+
+		@Override
+		public int getLocalVariableTableIndex() {
+			return lvtIndex;
+		}
+	}
+
+	private static final class Metadata implements TinyMetadata {
+		private final int majorVersion;
+		private final int minorVersion;
+		private final List<String> namespaces;
+		private final Map<String, String> properties;
+
+		Metadata(int majorVersion, int minorVersion, List<String> namespaces, Map<String, String> properties) {
+			this.majorVersion = majorVersion;
+			this.minorVersion = minorVersion;
+			this.namespaces = namespaces;
+			this.properties = properties;
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return majorVersion;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return minorVersion;
+		}
+
+		@Override
+		public List<String> getNamespaces() {
+			return namespaces;
+		}
+
+		@Override
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+	}
+
+	private final class ClassList extends AbstractList<ClassDef> {
+		@Override
+		public ClassDef get(int index) {
+			if (index < 0 || index >= listedClassCount) throw new IndexOutOfBoundsException(Integer.toString(index));
+
+			return CompactTinyTree.this.getClass(index);
+		}
+
+		@Override
+		public int size() {
+			return listedClassCount;
+		}
+	}
+
+	private final class DefaultNamespaceClassMap extends AbstractMap<String, ClassDef> {
+		private Set<Entry<String, ClassDef>> entrySet;
+
+		@Override
+		public ClassDef get(Object key) {
+			return key instanceof String ? findClass((String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Entry<String, ClassDef>> entrySet() {
+			if (entrySet == null) entrySet = new EntrySet();
+
+			return entrySet;
+		}
+
+		private final class EntrySet extends AbstractSet<Entry<String, ClassDef>> {
+			@Override
+			public Iterator<Entry<String, ClassDef>> iterator() {
+				return new Iterator<Entry<String, ClassDef>>() {
+					private int slot = advance(0);
+
+					private int advance(int slot) {
+						while (slot < hashTableSize && buffer.getInt(hashTablePos + slot * 8 + 4) == 0) {
+							slot++;
+						}
+
+						return slot;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return slot < hashTableSize;
+					}
+
+					@Override
+					public Entry<String, ClassDef> next() {
+						if (!hasNext()) throw new NoSuchElementException();
+
+						CompactClass cls = CompactTinyTree.this.getClass(buffer.getInt(hashTablePos + slot * 8 + 4) - 1);
+						slot = advance(slot + 1);
+
+						return new SimpleImmutableEntry<>(cls.rawNames[0], cls);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				int ret = 0;
+
+				for (int slot = 0; slot < hashTableSize; slot++) {
+					if (buffer.getInt(hashTablePos + slot * 8 + 4) != 0) ret++;
+				}
+
+				return ret;
+			}
+		}
+	}
+
+	/**
+	 * Writes a tree in the format read by {@link #open}, replacing the file atomically.
+	 *
+	 * @param tree the tree to write, usually a {@link MaterializedTinyTree} to have the descriptors of all namespaces
+	 *             resolved already
+	 * @param key a 20 byte key identifying the source of the tree, typically its SHA-1 hash
+	 */
+	public static void write(TinyTree tree, byte[] key, Path file) throws IOException {
+		if (key.length != KEY_SIZE) throw new IllegalArgumentException("invalid key length: " + key.length);
+
+		new Writer(tree).write(key, file);
+	}
+
+	private static final class Writer {
+		private final TinyTree tree;
+		private final List<String> namespaces;
+		private final Map<String, Integer> stringIds = new HashMap<>();
+		private final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+		private final List<Integer> stringOffsets = new ArrayList<>();
+		private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		private final DataOutputStream recordOutput = new DataOutputStream(records);
+
+		Writer(TinyTree tree) {
+			this.tree = tree;
+			this.namespaces = tree.getMetadata().getNamespaces();
+		}
+
+		void write(byte[] key, Path file) throws IOException {
+			Map<ClassDef, Integer> indices = new IdentityHashMap<>();
+			List<ClassDef> classes = new ArrayList<>(tree.getClasses());
+
+			for (int i = 0; i < classes.size(); i++) {
+				indices.putIfAbsent(classes.get(i), i);
+			}
+
+			int listedClassCount = classes.size();
+
+			for (ClassDef cls : tree.getDefaultNamespaceClassMap().values()) {
+				if (!indices.containsKey(cls)) {
+					indices.put(cls, classes.size());
+					classes.add(cls);
+				}
+			}
+
+			int[] recordOffsets = new int[classes.size()];
+
+			for (int i = 0; i < classes.size(); i++) {
+				recordOffsets[i] = recordOutput.size();
+				writeClass(classes.get(i));
+			}
+
+			int[] namespaceIds = new int[namespaces.size()];
+
+			for (int i = 0; i < namespaceIds.length; i++) {
+				namespaceIds[i] = getStringId(namespaces.get(i));
+			}
+
+			Map<String, String> properties = tree.getMetadata().getProperties();
+			int[] propertyIds = new int[properties.size() * 2];
+			int propertyIndex = 0;
+
+			for (Map.Entry<String, String> entry : properties.entrySet()) {
+				propertyIds[propertyIndex++] = getStringId(entry.getKey());
+				propertyIds[propertyIndex++] = getStringId(entry.getValue());
+			}
+
+			Map<String, ClassDef> defaultMap = tree.getDefaultNamespaceClassMap();
+			int hashTableSize = Integer.highestOneBit(Math.max(defaultMap.size(), 1) * 2 - 1) << 1;
+			int[] hashTable = new int[hashTableSize * 2];
+
+			for (Map.Entry<String, ClassDef> entry : defaultMap.entrySet()) {
+				int hash = entry.getKey().hashCode();
+				int slot = mix(hash) & (hashTableSize - 1);
+
+				while (hashTable[slot * 2 + 1] != 0) {
+					slot = (slot + 1) & (hashTableSize - 1);
+				}
+
+				hashTable[slot * 2] = hash;
+				hashTable[slot * 2 + 1] = indices.get(entry.getValue()) + 1;
+			}
+
+			int headerSize = 4 + KEY_SIZE + 8
+					+ 4 + namespaceIds.length * 4
+					+ 4 + propertyIds.length * 4
+					+ 4 + (stringOffsets.size() + 1) * 4
+					+ 8 + recordOffsets.length * 4
+					+ 4 + hashTable.length * 4;
+			int recordBase = headerSize + stringData.size();
+
+			Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.createDirectories(file.toAbsolutePath().getParent());
+
+			try (OutputStream os = Files.newOutputStream(tmpFile)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+				out.writeInt(MAGIC);
+				out.write(key);
+				out.writeInt(tree.getMetadata().getMajorVersion());
+				out.writeInt(tree.getMetadata().getMinorVersion());
+				writeInts(out, namespaceIds.length, namespaceIds);
+				writeInts(out, properties.size(), propertyIds);
+
+				out.writeInt(stringOffsets.size());
+
+				for (int offset : stringOffsets) {
+					out.writeInt(offset);
+				}
+
+				out.writeInt(stringData.size());
+
+				out.writeInt(listedClassCount);
+				out.writeInt(recordOffsets.length);
+
+				for (int offset : recordOffsets) {
+					out.writeInt(recordBase + offset);
+				}
+
+				writeInts(out, hashTableSize, hashTable);
+				stringData.writeTo(out);
+				records.writeTo(out);
+				out.flush();
+			}
+
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		private static void writeInts(DataOutputStream out, int count, int[] values) throws IOException {
+			out.writeInt(count);
+
+			for (int value : values) {
+				out.writeInt(value);
+			}
+		}
+
+		private int getStringId(String str) {
+			if (str == null) return -1;
+
+			Integer ret = stringIds.get(str);
+
+			if (ret == null) {
+				ret = stringOffsets.size();
+				stringIds.put(str, ret);
+				stringOffsets.add(stringData.size());
+
+				byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+				stringData.write(bytes, 0, bytes.length);
+			}
+
+			return ret;
+		}
+
+		private void writeClass(ClassDef cls) throws IOException {
+			String[] rawNames = getRawNames(cls);
+			boolean common = MaterializedTinyTree.isCommon(cls, namespaces);
+
+			if (common) {
+				// like MaterializedTinyTree, which has done this already for its own classes
+				Arrays.fill(rawNames, 1, rawNames.length, rawNames[0]);
+			}
+
+			recordOutput.writeInt(common ? FLAG_COMMON : 0);
+			writeStrings(rawNames);
+			writeString(cls.getComment());
+
+			recordOutput.writeInt(cls.getMethods().size());
+
+			for (MethodDef method : cls.getMethods()) {
+				writeStrings(getRawNames(method));
+				writeDescriptors(method.getDescriptor(namespaces.get(0)), method::getDescriptor);
+				writeString(method.getComment());
+
+				recordOutput.writeInt(method.getParameters().size());
+
+				for (ParameterDef parameter : method.getParameters()) {
+					recordOutput.writeInt(parameter.getLocalVariableIndex());
+					writeStrings(getRawNames(parameter));
+					writeString(parameter.getComment());
+				}
+
+				recordOutput.writeInt(method.getLocalVariables().size());
+
+				for (LocalVariableDef local : method.getLocalVariables()) {
+					recordOutput.writeInt(local.getLocalVariableIndex());
+					recordOutput.writeInt(local.getLocalVariableStartOffset());
+					recordOutput.writeInt(local.getLocalVariableTableIndex());
+					writeStrings(getRawNames(local));
+					writeString(local.getComment());
+				}
+			}
+
+			recordOutput.writeInt(cls.getFields().size());
+
+			for (FieldDef field : cls.getFields()) {
+				writeStrings(getRawNames(field));
+				writeDescriptors(field.getDescriptor(namespaces.get(0)), field::getDescriptor);
+				writeString(field.getComment());
+			}
+		}
+
+		private void writeDescriptors(String primary, Function<String, String> getter) throws IOException {
+			writeString(primary);
+
+			for (int i = 1; i < namespaces.size(); i++) {
+				writeString(getter.apply(namespaces.get(i)));
+			}
+		}
+
+		private String[] getRawNames(Mapped mapping) {
+			String[] ret = new String[namespaces.size()];
+
+			for (int i = 0; i < ret.length; i++) {
+				try {
+					ret[i] = mapping.getRawName(namespaces.get(i));
+				} catch (ArrayIndexOutOfBoundsException e) {
+					ret[i] = ""; //No name for the namespace
+				}
+
+				if (ret[i] == null) ret[i] = "";
+			}
+
+			return ret;
+		}
+
+		private void writeStrings(String[] strings) throws IOException {
+			for (String str : strings) {
+				writeString(str);
+			}
+		}
+
+		private void writeString(String str) throws IOException {
+			recordOutput.writeInt(getStringId(str));
+		}
+	}
+}
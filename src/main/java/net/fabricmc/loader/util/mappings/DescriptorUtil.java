@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util.mappings;
+
+import java.util.function.Function;
+
+public final class DescriptorUtil {
+	private DescriptorUtil() { }
+
+	/**
+	 * Replaces the class names in a field or method descriptor in a single scan.
+	 *
+	 * <p>Only plain descriptors are supported, generic signatures such as {@code Ljava/util/List<Lfoo/Bar;>;} are
+	 * rejected.</p>
+	 *
+	 * @param classMapper maps an internal class name, returns null to keep it
+	 * @return the remapped descriptor, the same instance if nothing changed
+	 * @throws IllegalArgumentException if the descriptor isn't a valid field or method descriptor, or is a signature
+	 */
+	public static String remapDescriptor(String desc, Function<String, String> classMapper) {
+		return new DescriptorRemapper(desc, classMapper).remap();
+	}
+
+	private static final class DescriptorRemapper {
+		private final String desc;
+		private final Function<String, String> classMapper;
+		private StringBuilder ret;
+		private int copied;
+
+		DescriptorRemapper(String desc, Function<String, String> classMapper) {
+			this.desc = desc;
+			this.classMapper = classMapper;
+		}
+
+		String remap() {
+			int pos;
+
+			if (desc.startsWith("(")) {
+				pos = 1;
+
+				while (pos < desc.length() && desc.charAt(pos) != ')') {
+					pos = readFieldType(pos);
+				}
+
+				if (pos >= desc.length()) throw invalid();
+				pos++;
+
+				if (pos < desc.length() && desc.charAt(pos) == 'V') {
+					pos++;
+				} else {
+					pos = readFieldType(pos);
+				}
+			} else {
+				pos = readFieldType(0);
+			}
+
+			if (pos != desc.length()) throw invalid();
+			if (ret == null) return desc;
+
+			return ret.append(desc, copied, desc.length()).toString();
+		}
+
+		/**
+		 * @return the position after the field type starting at pos
+		 */
+		private int readFieldType(int pos) {
+			while (pos < desc.length() && desc.charAt(pos) == '[') {
+				pos++;
+			}
+
+			if (pos >= desc.length()) throw invalid();
+
+			char c = desc.charAt(pos++);
+
+			if (c != 'L') {
+				if ("BCDFIJSZ".indexOf(c) < 0) throw invalid();
+				return pos;
+			}
+
+			int end = desc.indexOf(';', pos);
+			if (end <= pos) throw invalid();
+
+			String name = desc.substring(pos, end);
+			if (name.indexOf('<') >= 0) throw new IllegalArgumentException("signatures aren't supported: " + desc);
+			if (name.indexOf('.') >= 0 || name.indexOf('[') >= 0) throw invalid();
+
+			String mapped = classMapper.apply(name);
+
+			if (mapped != null && !mapped.equals(name)) {
+				if (ret == null) ret = new StringBuilder(desc.length() + 16);
+
+				ret.append(desc, copied, pos).append(mapped);
+				copied = end;
+			}
+
+			return end + 1;
+		}
+
+		private IllegalArgumentException invalid() {
+			return new IllegalArgumentException("invalid descriptor: " + desc);
+		}
+	}
+}
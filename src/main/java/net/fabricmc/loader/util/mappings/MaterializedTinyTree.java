@@ -0,0 +1,292 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.util.mappings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Strings;
+
+import net.fabricmc.mapping.reader.v2.TinyMetadata;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyTree;
+
+/**
+ * Immutable copy of a {@link TinyTree} with every raw name and every descriptor resolved for all namespaces up front.
+ *
+ * <p>Descriptors are only read from the first namespace and remapped to the others through the class names, classes
+ * without a name in any namespace but the first keep that name in all of them. Comments, parameters and local
+ * variables are served by the source tree.</p>
+ */
+public final class MaterializedTinyTree implements TinyTree {
+	private final TinyMetadata metadata;
+	private final Map<String, Integer> namespaceIndices;
+	private final String primaryNamespace;
+	private final List<ClassDef> classes;
+	private final Map<String, ClassDef> defaultNamespaceClassMap;
+
+	public MaterializedTinyTree(TinyTree source) {
+		this.metadata = source.getMetadata();
+
+		List<String> namespaces = metadata.getNamespaces();
+		this.primaryNamespace = namespaces.get(0);
+		this.namespaceIndices = new HashMap<>();
+
+		for (int i = 0; i < namespaces.size(); i++) {
+			namespaceIndices.put(namespaces.get(i), i);
+		}
+
+		// class names first, the member descriptors are remapped through them
+		Map<ClassDef, MaterializedClass> materialized = new IdentityHashMap<>();
+		List<ClassDef> classes = new ArrayList<>(source.getClasses().size());
+
+		for (ClassDef classDef : source.getClasses()) {
+			MaterializedClass mc = new MaterializedClass(classDef);
+			materialized.put(classDef, mc);
+			classes.add(mc);
+		}
+
+		Map<String, ClassDef> defaultNamespaceClassMap = new HashMap<>();
+
+		for (Map.Entry<String, ClassDef> entry : source.getDefaultNamespaceClassMap().entrySet()) {
+			ClassDef mc = materialized.get(entry.getValue());
+			defaultNamespaceClassMap.put(entry.getKey(), mc != null ? mc : new MaterializedClass(entry.getValue()));
+		}
+
+		this.classes = Collections.unmodifiableList(classes);
+		this.defaultNamespaceClassMap = Collections.unmodifiableMap(defaultNamespaceClassMap);
+
+		for (ClassDef classDef : defaultNamespaceClassMap.values()) {
+			((MaterializedClass) classDef).materializeMembers();
+		}
+
+		for (ClassDef classDef : classes) {
+			((MaterializedClass) classDef).materializeMembers();
+		}
+	}
+
+	private static String getRawName(Mapped mapping, String namespace) {
+		try {
+			return mapping.getRawName(namespace);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return ""; //No name for the namespace
+		}
+	}
+
+	/**
+	 * Checks whether a class has no name in any namespace but the primary one, in which case the primary name is used
+	 * for all namespaces, including ones the tree doesn't know.
+	 */
+	static boolean isCommon(ClassDef classDef, List<String> namespaces) {
+		if (classDef instanceof MaterializedClass) {
+			return ((MaterializedClass) classDef).common;
+		}
+
+		for (int i = 1; i < namespaces.size(); i++) {
+			if (!Strings.isNullOrEmpty(getRawName(classDef, namespaces.get(i)))) return false;
+		}
+
+		return true;
+	}
+
+	private String[] getRawNames(Mapped mapping) {
+		String[] ret = new String[namespaceIndices.size()];
+
+		for (Map.Entry<String, Integer> entry : namespaceIndices.entrySet()) {
+			ret[entry.getValue()] = getRawName(mapping, entry.getKey());
+		}
+
+		return ret;
+	}
+
+	private String[] getDescriptors(String desc) {
+		String[] ret = new String[namespaceIndices.size()];
+		ret[0] = desc;
+
+		for (Map.Entry<String, Integer> entry : namespaceIndices.entrySet()) {
+			int index = entry.getValue();
+			if (index == 0) continue;
+
+			ret[index] = DescriptorUtil.remapDescriptor(desc, name -> {
+				ClassDef classDef = defaultNamespaceClassMap.get(name);
+				return classDef != null ? Strings.emptyToNull(classDef.getRawName(entry.getKey())) : null;
+			});
+		}
+
+		return ret;
+	}
+
+	@Override
+	public TinyMetadata getMetadata() {
+		return metadata;
+	}
+
+	@Override
+	public Map<String, ClassDef> getDefaultNamespaceClassMap() {
+		return defaultNamespaceClassMap;
+	}
+
+	@Override
+	public Collection<ClassDef> getClasses() {
+		return classes;
+	}
+
+	private final class MaterializedClass implements ClassDef {
+		private final ClassDef source;
+		private final String[] rawNames;
+		private final boolean common;
+		private Collection<MethodDef> methods;
+		private Collection<FieldDef> fields;
+
+		MaterializedClass(ClassDef source) {
+			this.source = source;
+			this.rawNames = getRawNames(source);
+
+			boolean common = true;
+
+			for (int i = 1; i < rawNames.length; i++) {
+				if (!Strings.isNullOrEmpty(rawNames[i])) common = false;
+			}
+
+			if (common) {
+				for (int i = 1; i < rawNames.length; i++) {
+					rawNames[i] = rawNames[0];
+				}
+			}
+
+			this.common = common;
+		}
+
+		void materializeMembers() {
+			if (methods != null) return;
+
+			List<MethodDef> methods = new ArrayList<>(source.getMethods().size());
+
+			for (MethodDef method : source.getMethods()) {
+				methods.add(new MaterializedMethod(method, getRawNames(method), getDescriptors(method.getDescriptor(primaryNamespace))));
+			}
+
+			List<FieldDef> fields = new ArrayList<>(source.getFields().size());
+
+			for (FieldDef field : source.getFields()) {
+				fields.add(new MaterializedField(field, getRawNames(field), getDescriptors(field.getDescriptor(primaryNamespace))));
+			}
+
+			this.methods = Collections.unmodifiableList(methods);
+			this.fields = Collections.unmodifiableList(fields);
+		}
+
+		@Override
+		public String getRawName(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+
+			return index != null ? rawNames[index] : MaterializedTinyTree.getRawName(source, common ? primaryNamespace : namespace);
+		}
+
+		@Override
+		public String getName(String namespace) {
+			return source.getName(namespace);
+		}
+
+		@Override
+		public String getComment() {
+			return source.getComment();
+		}
+
+		@Override
+		public Collection<MethodDef> getMethods() {
+			return methods;
+		}
+
+		@Override
+		public Collection<FieldDef> getFields() {
+			return fields;
+		}
+	}
+
+	private abstract class MaterializedMember<T extends Mapped> {
+		final T source;
+		private final String[] rawNames;
+		private final String[] descriptors;
+
+		MaterializedMember(T source, String[] rawNames, String[] descriptors) {
+			this.source = source;
+			this.rawNames = rawNames;
+			this.descriptors = descriptors;
+		}
+
+		public String getRawName(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+
+			return index != null ? rawNames[index] : MaterializedTinyTree.getRawName(source, namespace);
+		}
+
+		public String getName(String namespace) {
+			return source.getName(namespace);
+		}
+
+		public String getDescriptor(String namespace) {
+			Integer index = namespaceIndices.get(namespace);
+			if (index != null) return descriptors[index];
+
+			// unknown namespaces have no class names, the descriptor stays as is
+			return descriptors[0];
+		}
+	}
+
+	private final class MaterializedMethod extends MaterializedMember<MethodDef> implements MethodDef {
+		MaterializedMethod(MethodDef source, String[] rawNames, String[] descriptors) {
+			super(source, rawNames, descriptors);
+		}
+
+		@Override
+		public String getComment() {
+			return source.getComment();
+		}
+
+		@Override
+		public Collection<ParameterDef> getParameters() {
+			return source.getParameters();
+		}
+
+		@Override
+		public Collection<LocalVariableDef> getLocalVariables() {
+			return source.getLocalVariables();
+		}
+	}
+
+	private final class MaterializedField extends MaterializedMember<FieldDef> implements FieldDef {
+		MaterializedField(FieldDef source, String[] rawNames, String[] descriptors) {
+			super(source, rawNames, descriptors);
+		}
+
+		@Override
+		public String getComment() {
+			return source.getComment();
+		}
+	}
+}
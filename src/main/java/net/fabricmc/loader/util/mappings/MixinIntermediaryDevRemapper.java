@@ -25,6 +25,7 @@ import org.spongepowered.asm.mixin.transformer.ClassInfo;
 import com.google.common.base.Strings;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MixinIntermediaryDevRemapper extends MixinRemapper {
 	private static final String ambiguousName = "<ambiguous>"; // dummy value for ambiguous mappings - needs querying with additional owner and/or desc info
@@ -34,6 +35,13 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 	private final Map<String, String> nameMethodLookup = new HashMap<>();
 	private final Map<String, String> nameDescFieldLookup = new HashMap<>();
 	private final Map<String, String> nameDescMethodLookup = new HashMap<>();
+	// names that resolved to a mapping, keyed by the queried owner, name and descriptor. Misses aren't kept, mixins
+	// applied later may add interfaces that provide a mapping.
+	private final Map<MemberKey, String> methodCache = new ConcurrentHashMap<>();
+	private final Map<MemberKey, String> fieldCache = new ConcurrentHashMap<>();
+	// per owner, the supertypes to search, recomputed once any of them gained interfaces
+	private final Map<String, Hierarchy> methodHierarchies = new ConcurrentHashMap<>();
+	private final Map<String, Hierarchy> fieldHierarchies = new ConcurrentHashMap<>();
 
 	public MixinIntermediaryDevRemapper(TinyTree mappings, String from, String to) {
 		super(mappings, from, to);
@@ -75,21 +83,19 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 		throw new RuntimeException("Ambiguous Mixin: " + type + " lookup " + name + " " + desc+" is not unique");
 	}
 
-	private String mapMethodNameInner(String owner, String name, String desc) {
+	private String mapMethodNameInner(String owner, String otherClass, String name, String desc, String otherDesc) {
 		String result = super.mapMethodName(owner, name, desc);
 		if (result.equals(name)) {
-			String otherClass = unmap(owner);
-			return super.mapMethodName(otherClass, name, unmapDesc(desc));
+			return super.mapMethodName(otherClass, name, otherDesc);
 		} else {
 			return result;
 		}
 	}
 
-	private String mapFieldNameInner(String owner, String name, String desc) {
+	private String mapFieldNameInner(String owner, String otherClass, String name, String desc, String otherDesc) {
 		String result = super.mapFieldName(owner, name, desc);
 		if (result.equals(name)) {
-			String otherClass = unmap(owner);
-			return super.mapFieldName(otherClass, name, unmapDesc(desc));
+			return super.mapFieldName(otherClass, name, otherDesc);
 		} else {
 			return result;
 		}
@@ -97,6 +103,18 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 
 	@Override
 	public String mapMethodName(String owner, String name, String desc) {
+		MemberKey key = new MemberKey(owner, name, desc);
+		String ret = methodCache.get(key);
+
+		if (ret == null) {
+			ret = mapMethodName0(owner, name, desc);
+			if (!ret.equals(name)) methodCache.put(key, ret);
+		}
+
+		return ret;
+	}
+
+	private String mapMethodName0(String owner, String name, String desc) {
 		// handle unambiguous values early
 		if (owner == null || allPossibleClassNames.contains(owner)) {
 			String newName;
@@ -134,16 +152,44 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 		}
 
+		Hierarchy hierarchy = methodHierarchies.get(owner);
+
+		if (hierarchy == null || !hierarchy.isCurrent()) {
+			hierarchy = computeMethodHierarchy(owner);
+			methodHierarchies.put(owner, hierarchy);
+		}
+
+		String[] owners = hierarchy.owners;
+
+		String otherDesc = desc != null ? unmapDesc(desc) : null;
+
+		for (int i = 0; i < owners.length; i += 2) {
+			String s;
+			if (!(s = mapMethodNameInner(owners[i], owners[i + 1], name, desc, otherDesc)).equals(name)) {
+				return s;
+			}
+		}
+
+		return name;
+	}
+
+	private Hierarchy computeMethodHierarchy(String owner) {
+		List<String> ret = new ArrayList<>();
+		List<ClassInfo> classes = new ArrayList<>();
+		Set<String> visited = new HashSet<>();
 		Queue<ClassInfo> classInfos = new ArrayDeque<>();
-		classInfos.add(ClassInfo.forName(owner));
+		ClassInfo start = ClassInfo.forName(owner);
+		if (start != null) classInfos.add(start);
 
 		while (!classInfos.isEmpty()) {
 			ClassInfo c = classInfos.remove();
+			// a type reached again through another path can't yield a different result
+			if (!visited.add(c.getName())) continue;
+
+			classes.add(c);
 			String ownerO = unmap(c.getName());
-			String s;
-			if (!(s = mapMethodNameInner(ownerO, name, desc)).equals(name)) {
-				return s;
-			}
+			ret.add(ownerO);
+			ret.add(unmap(ownerO));
 
 			if (!c.getSuperName().startsWith("java/")) {
 				ClassInfo cSuper = c.getSuperClass();
@@ -164,11 +210,23 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 		}
 
-		return name;
+		return new Hierarchy(ret.toArray(new String[0]), classes);
 	}
 
 	@Override
 	public String mapFieldName(String owner, String name, String desc) {
+		MemberKey key = new MemberKey(owner, name, desc);
+		String ret = fieldCache.get(key);
+
+		if (ret == null) {
+			ret = mapFieldName0(owner, name, desc);
+			if (!ret.equals(name)) fieldCache.put(key, ret);
+		}
+
+		return ret;
+	}
+
+	private String mapFieldName0(String owner, String name, String desc) {
 		// handle unambiguous values early
 		if (owner == null || allPossibleClassNames.contains(owner)) {
 			String newName = nameDescFieldLookup.get(getNameDescKey(name, desc));
@@ -200,14 +258,37 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			}
 		}
 
-		ClassInfo c = ClassInfo.forName(map(owner));
+		Hierarchy hierarchy = fieldHierarchies.get(owner);
 
-		while (c != null) {
-			String nextOwner = unmap(c.getName());
+		if (hierarchy == null || !hierarchy.isCurrent()) {
+			hierarchy = computeFieldHierarchy(owner);
+			fieldHierarchies.put(owner, hierarchy);
+		}
+
+		String[] owners = hierarchy.owners;
+
+		String otherDesc = desc != null ? unmapDesc(desc) : null;
+
+		for (int i = 0; i < owners.length; i += 2) {
 			String s;
-			if (!(s = mapFieldNameInner(nextOwner, name, desc)).equals(name)) {
+			if (!(s = mapFieldNameInner(owners[i], owners[i + 1], name, desc, otherDesc)).equals(name)) {
 				return s;
 			}
+		}
+
+		return name;
+	}
+
+	private Hierarchy computeFieldHierarchy(String owner) {
+		List<String> ret = new ArrayList<>();
+		List<ClassInfo> classes = new ArrayList<>();
+		ClassInfo c = ClassInfo.forName(map(owner));
+
+		while (c != null) {
+			classes.add(c);
+			String nextOwner = unmap(c.getName());
+			ret.add(nextOwner);
+			ret.add(unmap(nextOwner));
 
 			if (c.getSuperName().startsWith("java/")) {
 				break;
@@ -216,10 +297,67 @@ public class MixinIntermediaryDevRemapper extends MixinRemapper {
 			c = c.getSuperClass();
 		}
 
-		return name;
+		return new Hierarchy(ret.toArray(new String[0]), classes);
 	}
 
 	private static String getNameDescKey(String name, String descriptor) {
 		return name+ ";;" + descriptor;
 	}
+
+	private static final class Hierarchy {
+		final String[] owners; // pairs of unmapped name and the unmapped name unmapped once more
+		private final ClassInfo[] classes;
+		private final int[] interfaceCounts;
+
+		Hierarchy(String[] owners, List<ClassInfo> classes) {
+			this.owners = owners;
+			this.classes = classes.toArray(new ClassInfo[0]);
+			this.interfaceCounts = new int[this.classes.length];
+
+			for (int i = 0; i < this.classes.length; i++) {
+				interfaceCounts[i] = this.classes[i].getInterfaces().size();
+			}
+		}
+
+		/**
+		 * Checks that none of the classes gained interfaces, which mixins add as they get applied.
+		 */
+		boolean isCurrent() {
+			if (classes.length == 0) return false; // the owner wasn't available yet
+
+			for (int i = 0; i < classes.length; i++) {
+				if (classes[i].getInterfaces().size() != interfaceCounts[i]) return false;
+			}
+
+			return true;
+		}
+	}
+
+	private static final class MemberKey {
+		final String owner;
+		final String name;
+		final String desc;
+		final int hash;
+
+		MemberKey(String owner, String name, String desc) {
+			this.owner = owner;
+			this.name = name;
+			this.desc = desc;
+			this.hash = Objects.hash(owner, name, desc);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof MemberKey)) return false;
+
+			MemberKey o = (MemberKey) obj;
+
+			return hash == o.hash && Objects.equals(owner, o.owner) && Objects.equals(name, o.name) && Objects.equals(desc, o.desc);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.util.mappings.CompactTinyTree;
+import net.fabricmc.loader.util.mappings.MaterializedTinyTree;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+final class FabricMappingResolverTests {
+	private static final int THREADS = 8;
+	private static final int CLASSES = 200;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testLookups() {
+		TinyTree tree = load();
+		FabricMappingResolver resolver = new FabricMappingResolver(() -> tree, "named");
+
+		assertEquals("net.minecraft.World0", resolver.mapClassName("official", "c0"));
+		assertEquals("net.minecraft.World0", resolver.mapClassName("intermediary", "net.minecraft.class_0"));
+		assertEquals("c0", resolver.unmapClassName("official", "net.minecraft.World0"));
+		assertEquals("unmapped.Class", resolver.mapClassName("official", "unmapped.Class"));
+
+		assertEquals("getWorld", resolver.mapMethodName("official", "c0", "a", "(Lc1;)Lc0;"));
+		assertEquals("getWorld", resolver.mapMethodName("intermediary", "net.minecraft.class_0", "method_0_get", "(Lnet/minecraft/class_1;)Lnet/minecraft/class_0;"));
+		assertEquals("tick", resolver.mapMethodName("official", "c0", "a", "()V"), "overloads are told apart by descriptor");
+		assertEquals("a", resolver.mapMethodName("official", "c0", "a", "(I)V"));
+		assertEquals("player", resolver.mapFieldName("official", "c0", "b", "Lc1;"));
+		assertEquals("b", resolver.mapFieldName("official", "unmapped.Class", "b", "Lc1;"));
+
+		assertEquals("(Lnet/minecraft/World1;[ILunmapped/Class;)V", resolver.mapDescriptor("official", "(Lc1;[ILunmapped/Class;)V"));
+		assertEquals("(Lc1;[ILunmapped/Class;)V", resolver.unmapDescriptor("official", "(Lnet/minecraft/World1;[ILunmapped/Class;)V"));
+		assertThrows(IllegalArgumentException.class, () -> resolver.mapDescriptor("official", "(V)V"));
+
+		assertThrows(IllegalArgumentException.class, () -> resolver.mapMethodName("official", "net/minecraft/World0", "a", "()V"));
+		assertThrows(IllegalArgumentException.class, () -> resolver.mapClassName("unknown", "c0"));
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception {
+		TinyTree tree = load();
+		assertConcurrentLookups(tree);
+
+		// the compact tree decodes classes on demand without keeping them, so every thread works on its own copies
+		byte[] key = new byte[20];
+		Path file = tempDir.resolve("mappings.bin");
+		CompactTinyTree.write(tree, key, file);
+		assertConcurrentLookups(CompactTinyTree.open(file, key));
+	}
+
+	private static void assertConcurrentLookups(TinyTree tree) throws Exception {
+		FabricMappingResolver resolver = new FabricMappingResolver(() -> tree, "named");
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<Object>>> results = new ArrayList<>();
+
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				int offset = t * CLASSES / THREADS;
+
+				results.add(executor.submit(() -> {
+					start.await();
+					List<Object> namespaceData = new ArrayList<>();
+
+					// all threads race for building the namespace data and the member tables of the same classes
+					for (int n = 0; n < CLASSES; n++) {
+						int i = (n + offset) % CLASSES;
+						int next = (i + 1) % CLASSES;
+
+						assertEquals("getWorld", resolver.mapMethodName("official", "c" + i, "a", "(Lc" + next + ";)Lc" + i + ";"));
+						assertEquals("tick", resolver.mapMethodName("intermediary", "net.minecraft.class_" + i, "method_" + i, "()V"));
+						assertEquals("player", resolver.mapFieldName("official", "c" + i, "b", "Lc" + next + ";"));
+						assertEquals("Lnet/minecraft/World" + next + ";", resolver.mapDescriptor("official", "Lc" + next + ";"));
+					}
+
+					namespaceData.add(resolver.getNamespaceData("official"));
+					namespaceData.add(resolver.getNamespaceData("intermediary"));
+
+					return namespaceData;
+				}));
+			}
+
+			start.countDown();
+			List<Object> first = null;
+
+			for (Future<List<Object>> result : results) {
+				List<Object> namespaceData = result.get();
+				if (first == null) first = namespaceData;
+
+				assertSame(first.get(0), namespaceData.get(0), "all threads end up with the same namespace data");
+				assertSame(first.get(1), namespaceData.get(1));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static TinyTree load() {
+		StringBuilder mappings = new StringBuilder("tiny\t2\t0\tofficial\tintermediary\tnamed\n");
+
+		for (int i = 0; i < CLASSES; i++) {
+			int next = (i + 1) % CLASSES;
+			mappings.append("c\tc").append(i).append("\tnet/minecraft/class_").append(i).append("\tnet/minecraft/World").append(i).append('\n');
+			mappings.append("\tm\t(Lc").append(next).append(";)Lc").append(i).append(";\ta\tmethod_").append(i).append("_get\tgetWorld\n");
+			mappings.append("\tm\t()V\ta\tmethod_").append(i).append("\ttick\n");
+			mappings.append("\tf\tLc").append(next).append(";\tb\tfield_").append(i).append("\tplayer\n");
+		}
+
+		try {
+			return new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(mappings.toString()))));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.entrypoint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import net.fabricmc.loader.launch.common.FabricLauncher;
+
+final class EntrypointTransformerTests {
+	private static final String KEY = "key";
+	// magic, key, applet flag
+	private static final int APPLET_OFFSET = 4 + 2 + KEY.length() + 1;
+
+	@TempDir
+	Path tempDir;
+	private Path cacheFile;
+
+	@BeforeEach
+	public void setup() {
+		cacheFile = tempDir.resolve("entrypointPatches.bin");
+	}
+
+	@AfterEach
+	public void cleanup() {
+		EntrypointTransformer.appletMainClass = null;
+	}
+
+	@Test
+	public void testCacheRoundTrip() {
+		writeCache();
+
+		EntrypointTransformer.appletMainClass = null;
+		EntrypointTransformer transformer = createUnpatched();
+		assertTrue(transformer.readCache(cacheFile, KEY));
+
+		byte[] patched = transformer.transform("test.Patched");
+		assertNotNull(patched);
+		assertEquals("test/Patched", new ClassReader(patched).getClassName());
+		assertNull(transformer.transform("test.Other"));
+		assertEquals("test.Applet", EntrypointTransformer.appletMainClass, "the applet main class is replayed");
+	}
+
+	@Test
+	public void testStaleKey() {
+		writeCache();
+
+		assertFalse(createUnpatched().readCache(cacheFile, "other key"));
+	}
+
+	@Test
+	public void testCorruptCache() throws IOException {
+		writeCache();
+		byte[] content = Files.readAllBytes(cacheFile);
+
+		assertUnreadable(Arrays.copyOf(content, content.length - 1));
+		assertUnreadable(Arrays.copyOf(content, content.length + 1));
+		assertUnreadable(Arrays.copyOf(content, APPLET_OFFSET - 2));
+
+		int countOffset = APPLET_OFFSET + 2 + "test.Applet".length();
+		byte[] hugeCount = content.clone();
+		ByteBuffer.wrap(hugeCount).putInt(countOffset, Integer.MAX_VALUE);
+		assertUnreadable(hugeCount);
+
+		// the data length follows the class name
+		byte[] negativeLength = content.clone();
+		ByteBuffer.wrap(negativeLength).putInt(countOffset + 4 + 2 + "test.Patched".length(), -1);
+		assertUnreadable(negativeLength);
+
+		assertUnreadable(new byte[] { 1, 2, 3 });
+	}
+
+	private void writeCache() {
+		EntrypointTransformer transformer = new EntrypointTransformer(t -> Collections.singletonList(new EntrypointPatch(t) {
+			@Override
+			public void process(FabricLauncher launcher, Consumer<ClassNode> classEmitter) {
+				ClassNode node = new ClassNode();
+				node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Patched", null, "java/lang/Object", null);
+				classEmitter.accept(node);
+				EntrypointTransformer.appletMainClass = "test.Applet";
+			}
+		}));
+
+		transformer.locateEntrypoints(null);
+		transformer.writeCache(cacheFile, KEY);
+	}
+
+	private void assertUnreadable(byte[] content) throws IOException {
+		Files.write(cacheFile, content);
+
+		assertFalse(createUnpatched().readCache(cacheFile, KEY));
+	}
+
+	private static EntrypointTransformer createUnpatched() {
+		return new EntrypointTransformer(t -> Collections.emptyList());
+	}
+}
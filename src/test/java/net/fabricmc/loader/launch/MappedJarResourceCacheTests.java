@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.util.MappedJarFile;
+
+final class MappedJarResourceCacheTests {
+	private static final byte[] JAR_A = "jar a".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] JAR_B = "jar b".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] LOADED = "loaded".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path tempDir;
+	private MappedJarFile jar;
+	private Map<String, byte[]> cache;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		Path file = tempDir.resolve("game.jar");
+
+		try (OutputStream os = Files.newOutputStream(file);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			zos.putNextEntry(new ZipEntry("a/A.class"));
+			zos.write(JAR_A);
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("b/B.class"));
+			zos.write(JAR_B);
+			zos.closeEntry();
+		}
+
+		jar = MappedJarFile.open(file);
+		Map<String, String> entries = new HashMap<>();
+		entries.put("a.A", "a/A.class");
+		entries.put("b.B", "b/B.class");
+
+		cache = new MappedJarResourceCache(Collections.singletonMap("c.C", LOADED), jar, entries);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		jar.close();
+	}
+
+	@Test
+	public void testLookups() {
+		assertArrayEquals(JAR_A, cache.get("a.A"));
+		assertArrayEquals(LOADED, cache.get("c.C"), "the original content is kept");
+		assertNull(cache.get("d.D"));
+		assertTrue(cache.containsKey("b.B"));
+		assertFalse(cache.containsKey("d.D"));
+		assertEquals(3, cache.size());
+		assertEquals(3, cache.entrySet().size());
+	}
+
+	@Test
+	public void testPutAndRemove() {
+		cache.put("a.A", LOADED);
+		assertArrayEquals(LOADED, cache.get("a.A"), "entries put by the class loader take precedence");
+
+		assertArrayEquals(JAR_B, cache.remove("b.B"));
+		assertNull(cache.get("b.B"));
+		assertFalse(cache.containsKey("b.B"));
+		assertEquals(2, cache.size());
+
+		cache.put("b.B", LOADED);
+		assertArrayEquals(LOADED, cache.get("b.B"));
+		assertEquals(3, cache.size());
+
+		assertArrayEquals(LOADED, cache.remove("a.A"));
+		assertNull(cache.get("a.A"), "removing hides the jar's entry as well");
+		assertEquals(2, cache.entrySet().size());
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.common;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+final class MixinTargetIndexTests {
+	@Test
+	public void testSnapshot() {
+		MixinTargetIndex.Snapshot snapshot = new MixinTargetIndex.Snapshot(2,
+				new HashSet<>(Arrays.asList("net.minecraft.client.Main", "net.minecraft.Block$Inner")),
+				new String[] { "com.example.mixin.", "org.test.mixins." });
+
+		assertTrue(snapshot.isPossibleTarget("net.minecraft.client.Main"));
+		assertTrue(snapshot.isPossibleTarget("net.minecraft.Block$Inner"));
+		assertFalse(snapshot.isPossibleTarget("net.minecraft.Block"));
+		assertFalse(snapshot.isPossibleTarget("net.minecraft.client.MainMenu"));
+
+		// mixin classes keep going through mixin so it can reject loading them directly
+		assertTrue(snapshot.isPossibleTarget("com.example.mixin.MainMixin"));
+		assertTrue(snapshot.isPossibleTarget("org.test.mixins.sub.OtherMixin"));
+		assertFalse(snapshot.isPossibleTarget("com.example.mixinhelpers.Helper"));
+
+		assertTrue(snapshot.isPossibleTarget("org.spongepowered.asm.synthetic.args.Args$1"));
+		assertFalse(snapshot.isPossibleTarget("org.spongepowered.asm.mixin.Mixins"));
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class KnotClassCacheTests {
+	private static final byte[] RAW_A = "raw a".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] RAW_B = "raw b".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] BYTES_A = "transformed a".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] BYTES_B = "transformed b".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		KnotClassCache cache = open();
+		cache.put("a.A", cache.hash(RAW_A), BYTES_A);
+		cache.put("b.B", cache.hash(RAW_B), BYTES_B);
+		cache.close();
+
+		cache = open();
+		assertArrayEquals(BYTES_A, cache.get("a.A", cache.hash(RAW_A)));
+		assertArrayEquals(BYTES_B, cache.get("b.B", cache.hash(RAW_B)));
+		assertNull(cache.get("a.A", cache.hash(RAW_B)), "raw bytes changed");
+		assertNull(cache.get("c.C", cache.hash(RAW_A)));
+		cache.close();
+	}
+
+	@Test
+	public void testTruncatedTail() throws IOException {
+		KnotClassCache cache = open();
+		cache.put("a.A", cache.hash(RAW_A), BYTES_A);
+		cache.put("b.B", cache.hash(RAW_B), BYTES_B);
+		cache.close();
+
+		Path file = getCacheFile();
+		byte[] content = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(content, content.length - 3));
+
+		cache = open();
+		assertArrayEquals(BYTES_A, cache.get("a.A", cache.hash(RAW_A)));
+		assertNull(cache.get("b.B", cache.hash(RAW_B)));
+
+		// the broken tail is dropped, so new records are readable again
+		cache.put("b.B", cache.hash(RAW_B), BYTES_B);
+		cache.close();
+
+		cache = open();
+		assertArrayEquals(BYTES_A, cache.get("a.A", cache.hash(RAW_A)));
+		assertArrayEquals(BYTES_B, cache.get("b.B", cache.hash(RAW_B)));
+		cache.close();
+	}
+
+	@Test
+	public void testCorruptLength() throws IOException {
+		KnotClassCache cache = open();
+		cache.put("a.A", cache.hash(RAW_A), BYTES_A);
+		cache.close();
+
+		// a record claiming more bytes than the file holds
+		byte[] name = "b.B".getBytes(StandardCharsets.UTF_8);
+		byte[] record = new byte[2 + name.length + 20 + 4];
+		record[1] = (byte) name.length;
+		System.arraycopy(name, 0, record, 2, name.length);
+		record[record.length - 4] = 0x7f;
+		Files.write(getCacheFile(), record, StandardOpenOption.APPEND);
+
+		cache = open();
+		assertArrayEquals(BYTES_A, cache.get("a.A", cache.hash(RAW_A)));
+		assertNull(cache.get("b.B", cache.hash(RAW_B)));
+		cache.close();
+	}
+
+	@Test
+	public void testUnknownFormat() throws IOException {
+		Files.createDirectories(tempDir);
+		Files.write(tempDir.resolve("classes-0.bin"), "not a class cache".getBytes(StandardCharsets.UTF_8));
+
+		KnotClassCache cache = open();
+		assertNull(cache.get("a.A", cache.hash(RAW_A)));
+		cache.put("a.A", cache.hash(RAW_A), BYTES_A);
+		cache.close();
+
+		cache = open();
+		assertArrayEquals(BYTES_A, cache.get("a.A", cache.hash(RAW_A)));
+		cache.close();
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		KnotClassCache cache = open();
+		byte[] latest = null;
+
+		for (int i = 0; i < 10; i++) {
+			latest = ("transformed a " + i).getBytes(StandardCharsets.UTF_8);
+			cache.put("a.A", cache.hash(RAW_A), latest);
+		}
+
+		cache.put("b.B", cache.hash(RAW_B), BYTES_B);
+		cache.close();
+
+		Path oldFile = getCacheFile();
+		long oldSize = Files.size(oldFile);
+
+		cache = open();
+		Path newFile = getCacheFile();
+		assertFalse(newFile.equals(oldFile), "compaction should write a new file");
+		assertFalse(Files.exists(oldFile));
+		assertTrue(Files.size(newFile) < oldSize);
+
+		assertArrayEquals(latest, cache.get("a.A", cache.hash(RAW_A)));
+		assertArrayEquals(BYTES_B, cache.get("b.B", cache.hash(RAW_B)));
+		cache.close();
+	}
+
+	private KnotClassCache open() {
+		KnotClassCache ret = KnotClassCache.open(tempDir);
+		assertNotNull(ret);
+
+		return ret;
+	}
+
+	private Path getCacheFile() throws IOException {
+		List<Path> files;
+
+		try (Stream<Path> stream = Files.list(tempDir)) {
+			files = stream.collect(Collectors.toList());
+		}
+
+		assertEquals(1, files.size(), files.toString());
+		return files.get(0);
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.tree.ClassNode;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.util.UrlUtil;
+
+final class KnotClassDelegateTests {
+	private static final int THREADS = 8;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testConcurrentMetadata() throws Exception {
+		Path jar = tempDir.resolve("test.jar");
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, "test");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				JarOutputStream jos = new JarOutputStream(os, manifest)) {
+			for (int i = 0; i < 16; i++) {
+				jos.putNextEntry(new ZipEntry("test/Class" + i + ".class"));
+				jos.closeEntry();
+			}
+		}
+
+		Path dir = tempDir.resolve("classes");
+		Files.createDirectories(dir.resolve("test"));
+		Files.write(dir.resolve("test/Dir.class"), new byte[0]);
+
+		URL jarUrl = UrlUtil.asUrl(jar);
+		URL dirUrl = UrlUtil.asUrl(dir);
+		KnotClassDelegate delegate = new KnotClassDelegate(false, EnvType.CLIENT, null, null);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<KnotClassDelegate.Metadata[]>> results = new ArrayList<>();
+
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					KnotClassDelegate.Metadata[] ret = new KnotClassDelegate.Metadata[17];
+
+					for (int i = 0; i < 16; i++) {
+						ret[i] = delegate.getMetadata("test.Class" + i, new URL("jar:" + jarUrl + "!/test/Class" + i + ".class"));
+					}
+
+					ret[16] = delegate.getMetadata("test.Dir", new URL(dirUrl, "test/Dir.class"));
+					return ret;
+				}));
+			}
+
+			start.countDown();
+			KnotClassDelegate.Metadata jarMetadata = null;
+			KnotClassDelegate.Metadata dirMetadata = null;
+
+			for (Future<KnotClassDelegate.Metadata[]> result : results) {
+				KnotClassDelegate.Metadata[] metadata = result.get();
+				if (jarMetadata == null) jarMetadata = metadata[0];
+				if (dirMetadata == null) dirMetadata = metadata[16];
+
+				for (int i = 0; i < 16; i++) {
+					assertSame(jarMetadata, metadata[i], "all threads share one entry per code source");
+				}
+
+				assertSame(dirMetadata, metadata[16]);
+			}
+
+			assertNotNull(jarMetadata.manifest);
+			assertEquals("test", jarMetadata.manifest.getMainAttributes().get(Attributes.Name.IMPLEMENTATION_TITLE));
+			assertEquals(jarUrl, jarMetadata.codeSource.getLocation());
+			assertEquals(dirUrl, dirMetadata.codeSource.getLocation());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPreMixinClassNodeCopies() throws Exception {
+		Path jar = tempDir.resolve("nodes.jar");
+		KnotClassLoadingBenchmark.writeJar(jar, 1);
+
+		KnotClassLoader loader = new KnotClassLoader(false, EnvType.CLIENT, new KnotClassLoadingBenchmark.BenchmarkGameProvider(tempDir));
+		loader.addURL(UrlUtil.asUrl(jar));
+		KnotClassDelegate delegate = loader.getDelegate();
+		String name = "bench.generated.p0.Class0";
+
+		ClassNode first = delegate.getPreMixinClassNode(name);
+		assertNotNull(first);
+		int methods = first.methods.size();
+
+		// mixin modifies the nodes it gets, which mustn't leak into the next lookup
+		first.methods.clear();
+		first.interfaces.add("test/Added");
+		ClassNode second = delegate.getPreMixinClassNode(name);
+		assertNotSame(first, second);
+		assertEquals(methods, second.methods.size());
+		assertTrue(second.interfaces.isEmpty());
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Integer>> results = new ArrayList<>();
+
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					int ret = 0;
+
+					for (int i = 0; i < 100; i++) {
+						ClassNode node = delegate.getPreMixinClassNode(name);
+						ret += node.methods.size();
+						node.methods.clear();
+					}
+
+					return ret;
+				}));
+			}
+
+			for (Future<Integer> result : results) {
+				assertEquals(methods * 100, (int) result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertNull(delegate.getPreMixinClassNode("bench.generated.Missing"));
+	}
+
+	@Test
+	public void testPreseededMetadata() throws Exception {
+		Path dir = tempDir.resolve("classes");
+		Files.createDirectories(dir);
+
+		URL dirUrl = UrlUtil.asUrl(dir);
+		KnotClassDelegate delegate = new KnotClassDelegate(false, EnvType.CLIENT, null, null);
+		delegate.addCodeSource(dirUrl);
+		KnotClassDelegate.Metadata metadata = delegate.getMetadata(dirUrl);
+
+		assertSame(metadata, delegate.getMetadata("test.Dir", new URL(dirUrl, "test/Dir.class")));
+		// registering the same code source again keeps the existing entry
+		delegate.addCodeSource(dirUrl);
+		assertSame(metadata, delegate.getMetadata(dirUrl));
+	}
+}
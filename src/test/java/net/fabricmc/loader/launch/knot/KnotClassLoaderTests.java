@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.entrypoint.EntrypointTransformer;
+import net.fabricmc.loader.util.UrlUtil;
+
+final class KnotClassLoaderTests {
+	private static final int THREADS = 8;
+	private static final int CLASSES = 2000;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testConcurrentLoading() throws Exception {
+		Path jar = tempDir.resolve("classes.jar");
+		List<String> names = KnotClassLoadingBenchmark.writeJar(jar, CLASSES);
+		URL jarUrl = UrlUtil.asUrl(jar);
+
+		KnotClassLoader loader = new KnotClassLoader(false, EnvType.CLIENT, new KnotClassLoadingBenchmark.BenchmarkGameProvider(tempDir));
+		loader.addURL(jarUrl);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Class<?>[]>> results = new ArrayList<>();
+
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				// every thread loads every class in its own order, racing both on the same names and on superclasses
+				List<Integer> order = new ArrayList<>(CLASSES);
+				for (int i = 0; i < CLASSES; i++) order.add(i);
+				Collections.shuffle(order, new Random(t));
+
+				results.add(executor.submit(() -> {
+					start.await();
+					Class<?>[] ret = new Class<?>[CLASSES];
+
+					for (int i : order) {
+						ret[i] = Class.forName(names.get(i), false, loader);
+					}
+
+					return ret;
+				}));
+			}
+
+			start.countDown();
+			Class<?>[] expected = null;
+
+			// a deadlock between the per-class locks would hang here
+			for (Future<Class<?>[]> result : results) {
+				Class<?>[] classes = assertTimeoutPreemptively(Duration.ofMinutes(1), () -> result.get());
+
+				if (expected == null) {
+					expected = classes;
+				} else {
+					for (int i = 0; i < CLASSES; i++) {
+						assertSame(expected[i], classes[i], "every thread sees the same definition");
+					}
+				}
+			}
+
+			for (int i = 0; i < CLASSES; i++) {
+				Class<?> cls = expected[i];
+				assertSame(loader, cls.getClassLoader());
+				assertNotNull(cls.getPackage());
+				assertEquals(jarUrl, cls.getProtectionDomain().getCodeSource().getLocation());
+
+				if (i % KnotClassLoadingBenchmark.CHAIN_LENGTH != 0) assertSame(expected[i - 1], cls.getSuperclass());
+			}
+
+			Object instance = expected[CLASSES - 1].getConstructor().newInstance();
+			assertEquals("x3", expected[CLASSES - 1].getMethod("method1", int.class, String.class).invoke(instance, 2, "x"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testConcurrentTransformation() throws Exception {
+		Path jar = tempDir.resolve("classes.jar");
+		List<String> names = KnotClassLoadingBenchmark.writeJar(jar, CLASSES);
+
+		// the first class of every chain only extends the shared base class, so the threads don't wait on each other
+		List<String> gated = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) gated.add(names.get(i * KnotClassLoadingBenchmark.CHAIN_LENGTH));
+
+		Set<String> gatedSet = new HashSet<>(gated);
+		CountDownLatch inTransform = new CountDownLatch(THREADS);
+
+		// every gated class only leaves the entrypoint transformer once all of them are in it
+		EntrypointTransformer entrypointTransformer = new EntrypointTransformer(transformer -> Collections.emptyList()) {
+			@Override
+			public byte[] transform(String className) {
+				if (gatedSet.contains(className)) {
+					inTransform.countDown();
+
+					try {
+						if (!inTransform.await(30, TimeUnit.SECONDS)) throw new IllegalStateException("transformers ran one at a time");
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+
+				return super.transform(className);
+			}
+		};
+		entrypointTransformer.locateEntrypoints(KnotClassLoadingBenchmark.getLauncher());
+
+		KnotClassLoader loader = KnotClassLoadingBenchmark.createLoader(tempDir, entrypointTransformer);
+		loader.addURL(UrlUtil.asUrl(jar));
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<Class<?>>> results = new ArrayList<>();
+
+		try {
+			for (String name : gated) {
+				results.add(executor.submit(() -> Class.forName(name, false, loader)));
+			}
+
+			for (Future<Class<?>> result : results) {
+				Class<?> cls = assertTimeoutPreemptively(Duration.ofMinutes(1), () -> result.get());
+				assertSame(loader, cls.getClassLoader());
+				// the Fabric transformer ran as well
+				assertThrows(NoSuchMethodException.class, () -> cls.getDeclaredMethod(KnotClassLoadingBenchmark.SERVER_ONLY_METHOD));
+				assertNotNull(cls.getDeclaredMethod("method0", int.class, String.class));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
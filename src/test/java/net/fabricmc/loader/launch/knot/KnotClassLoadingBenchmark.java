@@ -0,0 +1,372 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.fabricmc.loader.entrypoint.EntrypointTransformer;
+import net.fabricmc.loader.game.GameProvider;
+import net.fabricmc.loader.launch.common.FabricLauncherBase;
+import net.fabricmc.loader.util.UrlUtil;
+
+/**
+ * Loads a jar of generated classes through {@link KnotClassLoader} from an increasing number of threads, each thread
+ * loading its own share of the classes, and prints the throughput of every run.
+ *
+ * <p>The entrypoint and Fabric transformers run on every class, the latter stripping a server only method from each.
+ * Mixin is left out, it serializes inside Mixin itself. The classes form short inheritance chains spread over several
+ * packages, so loading one class regularly loads a superclass another thread is about to ask for.</p>
+ *
+ * <p>Every thread count runs twice: once with all loads behind a single lock, the way the whole pipeline used to be
+ * serialized, and once with only the per-class locking of {@link KnotClassLoader}.</p>
+ *
+ * <p>usage: [class count] [max threads]</p>
+ */
+public final class KnotClassLoadingBenchmark {
+	private static final String PACKAGE = "bench/generated/";
+	private static final int METHODS = 24;
+	// length of the inheritance chains, every class but the first of a chain extends its predecessor
+	static final int CHAIN_LENGTH = 8;
+	static final String SERVER_ONLY_METHOD = "serverOnly";
+
+	public static void main(String[] args) throws Exception {
+		int classCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		Path dir = Files.createTempDirectory("knot-bench");
+		Path jar = dir.resolve("classes.jar");
+		List<String> names = writeJar(jar, classCount);
+
+		// warm up the JIT so the first measured run isn't penalized
+		run(dir, jar, names, maxThreads, true);
+		run(dir, jar, names, maxThreads, false);
+
+		System.out.printf("%d classes%n", classCount);
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long serialized = run(dir, jar, names, threads, true);
+			long concurrent = run(dir, jar, names, threads, false);
+
+			System.out.printf("%2d threads: serialized %6d ms, %8.0f classes/s, concurrent %6d ms, %8.0f classes/s, %.2fx%n",
+					threads,
+					serialized / 1000000, classCount * 1e9 / serialized,
+					concurrent / 1000000, classCount * 1e9 / concurrent,
+					(double) serialized / concurrent);
+		}
+	}
+
+	private static long run(Path dir, Path jar, List<String> names, int threads, boolean serialized) throws Exception {
+		KnotClassLoader loader = createLoader(dir, createEntrypointTransformer());
+		loader.addURL(UrlUtil.asUrl(jar));
+		Object lock = new Object();
+
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			int offset = i;
+
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+
+					for (int j = offset; j < names.size(); j += threads) {
+						if (serialized) {
+							synchronized (lock) {
+								Class.forName(names.get(j), false, loader);
+							}
+						} else {
+							Class.forName(names.get(j), false, loader);
+						}
+					}
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			});
+
+			thread.start();
+			workers.add(thread);
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+
+		for (Thread thread : workers) {
+			thread.join();
+		}
+
+		long time = System.nanoTime() - startTime;
+		if (failure.get() != null) throw new RuntimeException("class loading failed", failure.get());
+
+		return time;
+	}
+
+	/**
+	 * Creates a class loader running the entrypoint and Fabric transformers, but not mixin.
+	 */
+	static KnotClassLoader createLoader(Path dir, EntrypointTransformer entrypointTransformer) {
+		KnotClassLoader ret = new KnotClassLoader(false, EnvType.CLIENT, new BenchmarkGameProvider(dir, entrypointTransformer));
+		ret.getDelegate().initializeTransformers(null, null);
+
+		return ret;
+	}
+
+	/**
+	 * @return an entrypoint transformer without any patches, already located
+	 */
+	static EntrypointTransformer createEntrypointTransformer() {
+		EntrypointTransformer ret = new EntrypointTransformer(transformer -> Collections.emptyList());
+		ret.locateEntrypoints(getLauncher());
+
+		return ret;
+	}
+
+	/**
+	 * @return the current launcher, creating one if needed, the transformers read their configuration from it
+	 */
+	static synchronized FabricLauncherBase getLauncher() {
+		if (FabricLauncherBase.getLauncher() == null) new BenchmarkLauncher();
+
+		return (FabricLauncherBase) FabricLauncherBase.getLauncher();
+	}
+
+	/**
+	 * Writes the classes, returning their binary names in the order they were written.
+	 */
+	static List<String> writeJar(Path jar, int classCount) throws IOException {
+		List<String> ret = new ArrayList<>(classCount);
+
+		try (JarOutputStream os = new JarOutputStream(Files.newOutputStream(jar))) {
+			writeClass(os, PACKAGE + "Base", "java/lang/Object");
+
+			for (int i = 0; i < classCount; i++) {
+				String name = getClassName(i);
+				writeClass(os, name, i % CHAIN_LENGTH == 0 ? PACKAGE + "Base" : getClassName(i - 1));
+				ret.add(name.replace('/', '.'));
+			}
+		}
+
+		return ret;
+	}
+
+	static String getClassName(int index) {
+		// spread over a few packages like a real class path
+		return PACKAGE + "p" + (index % 64) + "/Class" + index;
+	}
+
+	private static void writeClass(JarOutputStream os, String name, String superName) throws IOException {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		// stripped by the Fabric transformer on the client
+		MethodVisitor serverOnly = writer.visitMethod(Opcodes.ACC_PUBLIC, SERVER_ONLY_METHOD, "()V", null, null);
+		AnnotationVisitor annotation = serverOnly.visitAnnotation(Type.getDescriptor(Environment.class), false);
+		annotation.visitEnum("value", Type.getDescriptor(EnvType.class), EnvType.SERVER.name());
+		annotation.visitEnd();
+		serverOnly.visitCode();
+		serverOnly.visitInsn(Opcodes.RETURN);
+		serverOnly.visitMaxs(0, 0);
+		serverOnly.visitEnd();
+
+		for (int i = 0; i < METHODS; i++) {
+			MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "(ILjava/lang/String;)Ljava/lang/String;", null, null);
+			mv.visitCode();
+			mv.visitVarInsn(Opcodes.ALOAD, 2);
+			mv.visitVarInsn(Opcodes.ILOAD, 1);
+			mv.visitLdcInsn(i);
+			mv.visitInsn(Opcodes.IADD);
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf", "(I)Ljava/lang/String;", false);
+			mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+			mv.visitInsn(Opcodes.ARETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		writer.visitEnd();
+
+		os.putNextEntry(new ZipEntry(name + ".class"));
+		os.write(writer.toByteArray());
+		os.closeEntry();
+	}
+
+	static final class BenchmarkGameProvider implements GameProvider {
+		private final Path launchDir;
+		private final EntrypointTransformer entrypointTransformer;
+
+		BenchmarkGameProvider(Path launchDir) {
+			this(launchDir, null);
+		}
+
+		BenchmarkGameProvider(Path launchDir, EntrypointTransformer entrypointTransformer) {
+			this.launchDir = launchDir;
+			this.entrypointTransformer = entrypointTransformer;
+		}
+
+		@Override
+		public String getGameId() {
+			return "benchmark";
+		}
+
+		@Override
+		public String getGameName() {
+			return "Benchmark";
+		}
+
+		@Override
+		public String getRawGameVersion() {
+			return "0";
+		}
+
+		@Override
+		public String getNormalizedGameVersion() {
+			return "0";
+		}
+
+		@Override
+		public Collection<BuiltinMod> getBuiltinMods() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getEntrypoint() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Path getLaunchDirectory() {
+			return launchDir;
+		}
+
+		@Override
+		public boolean isObfuscated() {
+			return false;
+		}
+
+		@Override
+		public boolean requiresUrlClassLoader() {
+			return false;
+		}
+
+		@Override
+		public List<Path> getGameContextJars() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean locateGame(EnvType envType, String[] args, ClassLoader loader) {
+			return true;
+		}
+
+		@Override
+		public EntrypointTransformer getEntrypointTransformer() {
+			if (entrypointTransformer == null) throw new UnsupportedOperationException();
+
+			return entrypointTransformer;
+		}
+
+		@Override
+		public void launch(ClassLoader loader) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String[] getLaunchArguments(boolean sanitize) {
+			return new String[0];
+		}
+	}
+
+	static final class BenchmarkLauncher extends FabricLauncherBase {
+		@Override
+		public void propose(URL url) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public EnvType getEnvironmentType() {
+			return EnvType.CLIENT;
+		}
+
+		@Override
+		public boolean isClassLoaded(String name) {
+			return false;
+		}
+
+		@Override
+		public InputStream getResourceAsStream(String name) {
+			return null;
+		}
+
+		@Override
+		public ClassLoader getTargetClassLoader() {
+			return null;
+		}
+
+		@Override
+		public byte[] getClassByteArray(String name, boolean runTransformers) {
+			return null;
+		}
+
+		@Override
+		public boolean isDevelopment() {
+			return false;
+		}
+
+		@Override
+		public String getEntrypoint() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getTargetNamespace() {
+			return "intermediary";
+		}
+
+		@Override
+		public Collection<URL> getLoadTimeDependencies() {
+			return Collections.emptyList();
+		}
+	}
+}
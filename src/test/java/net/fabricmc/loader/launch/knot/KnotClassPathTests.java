@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.util.UrlUtil;
+
+final class KnotClassPathTests {
+	private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path tempDir;
+	private Path gameDir;
+	private Path jar;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		gameDir = tempDir.resolve("game");
+		jar = tempDir.resolve("test.jar");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (String name : new String[] { "a/b/C.class", "a/D.class", "root.txt" }) {
+				zos.putNextEntry(new ZipEntry(name));
+				zos.write(CONTENT);
+				zos.closeEntry();
+			}
+		}
+	}
+
+	@Test
+	public void testIndexRoundTrip() throws Exception {
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		assertLookups(classPath);
+		classPath.save();
+
+		Path indexFile = getIndexFile();
+		assertTrue(Files.isRegularFile(indexFile));
+
+		classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		assertLookups(classPath);
+
+		// the package lists came from the index, so there is nothing to write back
+		Files.delete(indexFile);
+		classPath.save();
+		assertFalse(Files.exists(indexFile));
+	}
+
+	@Test
+	public void testCorruptIndex() throws Exception {
+		Files.createDirectories(getIndexFile().getParent());
+		Files.write(getIndexFile(), "not an index".getBytes(StandardCharsets.UTF_8));
+		assertRebuilt();
+	}
+
+	@Test
+	public void testTruncatedIndex() throws Exception {
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.save();
+
+		byte[] index = Files.readAllBytes(getIndexFile());
+		Files.write(getIndexFile(), Arrays.copyOf(index, index.length - 2));
+		assertRebuilt();
+	}
+
+	@Test
+	public void testOversizedCounts() throws Exception {
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.save();
+
+		byte[] index = Files.readAllBytes(getIndexFile());
+		int packageCountPos = 8 + 2 + ((index[8] & 0xff) << 8 | index[9] & 0xff);
+
+		// a package count far beyond the file size mustn't be allocated
+		byte[] damaged = index.clone();
+		damaged[packageCountPos] = 0x7f;
+		Files.write(getIndexFile(), damaged);
+		assertRebuilt();
+
+		damaged = index.clone();
+		damaged[packageCountPos] = (byte) 0x80;
+		Files.write(getIndexFile(), damaged);
+		assertRebuilt();
+
+		// same for the jar count
+		damaged = index.clone();
+		damaged[4] = 0x7f;
+		Files.write(getIndexFile(), damaged);
+		assertRebuilt();
+	}
+
+	@Test
+	public void testStaleIndex() throws Exception {
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.save();
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			zos.putNextEntry(new ZipEntry("e/F.class"));
+			zos.write(CONTENT);
+			zos.closeEntry();
+		}
+
+		// size changed, so the jar's entry in the index doesn't apply anymore
+		classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		assertNotNull(classPath.getResource("e/F.class"));
+		assertNull(classPath.getResource("a/D.class"));
+	}
+
+	@Test
+	public void testNegativeLookups() throws Exception {
+		Path dir = tempDir.resolve("classes");
+		Files.createDirectories(dir.resolve("d/e"));
+		Files.write(dir.resolve("d/e/F.class"), CONTENT);
+
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.addURL(UrlUtil.asUrl(dir));
+
+		assertNotNull(classPath.getResource("a/b/C.class"));
+		assertNotNull(classPath.getResource("d/e/F.class"));
+
+		// packages with entries in any root may still hold generated classes
+		assertTrue(classPath.hasPackage("d/e/Generated.class"));
+		assertNull(classPath.getResource("d/e/Generated.class"));
+		assertTrue(classPath.hasPackage("a/b/C$Anonymous.class"));
+
+		// anything else is definitely absent
+		assertFalse(classPath.hasPackage("org/lwjgl/Version.class"));
+		assertNull(classPath.getResource("org/lwjgl/Version.class"));
+		assertFalse(classPath.hasPackage("d/x/Missing.class"));
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		Path dir = tempDir.resolve("classes");
+		Files.createDirectories(dir.resolve("d"));
+		Files.write(dir.resolve("d/e.txt"), CONTENT);
+
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.addURL(UrlUtil.asUrl(dir));
+
+		try (InputStream is = classPath.getResourceAsStream("a/b/C.class")) {
+			assertArrayEquals(CONTENT, KnotClassPath.readFully(is, -1));
+		}
+
+		try (InputStream is = classPath.getResourceAsStream("d/e.txt")) {
+			assertArrayEquals(CONTENT, KnotClassPath.readFully(is, -1));
+		}
+
+		assertNull(classPath.getResourceAsStream("a/b/Missing.class"));
+	}
+
+	@Test
+	public void testDirectoryTraversal() throws Exception {
+		Path dir = tempDir.resolve("classes");
+		Files.createDirectories(dir.resolve("d"));
+		Files.write(dir.resolve("d/e.txt"), CONTENT);
+		Files.createDirectories(tempDir.resolve("outside"));
+		Files.write(tempDir.resolve("outside/secret.txt"), CONTENT);
+
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(dir));
+
+		// names normalizing to entries inside the root still work
+		assertNotNull(classPath.getResource("d/../d/e.txt"));
+
+		for (String name : new String[] { "../outside/secret.txt", "d/../../outside/secret.txt", tempDir.resolve("outside/secret.txt").toString() }) {
+			assertNull(classPath.getResource(name), name);
+			assertNull(classPath.getResourceAsStream(name), name);
+			assertNull(classPath.findResource(name), name);
+		}
+
+		assertNull(classPath.findResource("../outside/"));
+		assertFalse(classPath.hasPackage("../outside/secret.txt"));
+	}
+
+	@Test
+	public void testReplaceURL() throws Exception {
+		byte[] other = "other".getBytes(StandardCharsets.UTF_8);
+		byte[] baked = "baked".getBytes(StandardCharsets.UTF_8);
+		Path otherJar = writeJar("other.jar", other, "a/b/C.class");
+		Path bakedJar = writeJar("baked.jar", baked, "a/b/C.class", "a/D.class", "root.txt");
+
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		classPath.addURL(UrlUtil.asUrl(otherJar));
+		assertArrayEquals(CONTENT, classPath.getResource("a/b/C.class").bytes);
+
+		assertFalse(classPath.replaceURL(UrlUtil.asUrl(tempDir.resolve("missing.jar")), UrlUtil.asUrl(bakedJar)));
+		assertTrue(classPath.replaceURL(UrlUtil.asUrl(jar), UrlUtil.asUrl(bakedJar)));
+
+		// the replacement keeps the position of the replaced jar, ahead of the other one
+		KnotClassPath.Resource resource = classPath.getResource("a/b/C.class");
+		assertArrayEquals(baked, resource.bytes);
+		assertEquals(UrlUtil.asUrl(bakedJar).toString(), resource.codeSource.toString());
+		assertArrayEquals(baked, classPath.getResource("a/D.class").bytes);
+		assertEquals(2, classPath.findResources("a/b/C.class").size());
+	}
+
+	private Path writeJar(String fileName, byte[] content, String... names) throws IOException {
+		Path ret = tempDir.resolve(fileName);
+
+		try (OutputStream os = Files.newOutputStream(ret);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (String name : names) {
+				zos.putNextEntry(new ZipEntry(name));
+				zos.write(content);
+				zos.closeEntry();
+			}
+		}
+
+		return ret;
+	}
+
+	private void assertRebuilt() throws Exception {
+		KnotClassPath classPath = new KnotClassPath(gameDir);
+		classPath.addURL(UrlUtil.asUrl(jar));
+		assertLookups(classPath);
+
+		Files.delete(getIndexFile());
+		classPath.save();
+		assertTrue(Files.isRegularFile(getIndexFile()), "a rebuilt index is written back");
+	}
+
+	private void assertLookups(KnotClassPath classPath) throws Exception {
+		KnotClassPath.Resource resource = classPath.getResource("a/b/C.class");
+		assertNotNull(resource);
+		assertArrayEquals(CONTENT, resource.bytes);
+		assertEquals(UrlUtil.asUrl(jar).toString(), resource.codeSource.toString());
+
+		assertNotNull(classPath.getResource("a/D.class"));
+		assertNotNull(classPath.getResource("root.txt"));
+		assertNull(classPath.getResource("a/b/Missing.class"));
+		assertNull(classPath.getResource("x/Y.class"));
+
+		assertTrue(classPath.hasPackage("a/b/Missing.class"));
+		assertFalse(classPath.hasPackage("x/Y.class"));
+	}
+
+	private Path getIndexFile() {
+		return gameDir.resolve(".fabric").resolve("classPathIndex.bin");
+	}
+}
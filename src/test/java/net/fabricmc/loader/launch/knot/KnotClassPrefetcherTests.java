@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class KnotClassPrefetcherTests {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testTraceRoundTrip() {
+		KnotClassPrefetcher prefetcher = new KnotClassPrefetcher(tempDir);
+		assertTrue(prefetcher.loadTrace().isEmpty());
+
+		prefetcher.recordDefinition("a.A");
+		prefetcher.recordDefinition("b.B$Inner");
+		prefetcher.recordDefinition("a.A");
+		prefetcher.recordDefinition("C");
+		prefetcher.saveTrace();
+
+		assertFalse(Files.exists(getTraceFile().resolveSibling("classLoadTrace.txt.tmp")));
+		assertEquals(Arrays.asList("a.A", "b.B$Inner", "C"), new KnotClassPrefetcher(tempDir).loadTrace());
+	}
+
+	@Test
+	public void testInvalidEntries() throws IOException {
+		Files.createDirectories(getTraceFile().getParent());
+		Files.write(getTraceFile(), Arrays.asList("a.A", "", "../../etc/passwd", "b/B", "[La.A;", ".a", "a..A", "a.A B", "b.B"), StandardCharsets.UTF_8);
+
+		assertEquals(Arrays.asList("a.A", "b.B"), new KnotClassPrefetcher(tempDir).loadTrace());
+	}
+
+	@Test
+	public void testCorruptTrace() throws IOException {
+		Files.createDirectories(getTraceFile().getParent());
+		// not valid UTF-8
+		Files.write(getTraceFile(), new byte[] { 'a', '.', 'A', '\n', (byte) 0xc3, (byte) 0x28, '\n' });
+
+		assertTrue(new KnotClassPrefetcher(tempDir).loadTrace().isEmpty());
+
+		// the next launch replaces the trace
+		KnotClassPrefetcher prefetcher = new KnotClassPrefetcher(tempDir);
+		prefetcher.recordDefinition("a.A");
+		prefetcher.saveTrace();
+		assertEquals(Arrays.asList("a.A"), new KnotClassPrefetcher(tempDir).loadTrace());
+	}
+
+	private Path getTraceFile() {
+		return tempDir.resolve(".fabric").resolve("classLoadTrace.txt");
+	}
+}
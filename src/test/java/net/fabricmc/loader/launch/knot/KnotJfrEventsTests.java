@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+final class KnotJfrEventsTests {
+	@Test
+	public void testEvents() throws Exception {
+		KnotJfrEvents events;
+
+		try {
+			events = KnotJfrEvents.create();
+		} catch (ClassNotFoundException e) {
+			events = null;
+		}
+
+		assumeTrue(events != null, "no JFR on this JVM");
+
+		events.commitStage(KnotMetrics.Stage.DEFINE.id, "a.B", 1000);
+		events.commitClass("a.B", 2000);
+
+		// looked up reflectively like the events themselves, the tests shouldn't need jdk.jfr to compile either
+		Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+		Object recorder = recorderClass.getMethod("getFlightRecorder").invoke(null);
+		Set<String> names = new HashSet<>();
+
+		for (Object type : (List<?>) recorderClass.getMethod("getEventTypes").invoke(recorder)) {
+			names.add((String) type.getClass().getMethod("getName").invoke(type));
+		}
+
+		assertTrue(names.contains("net.fabricmc.loader.ClassLoadStage"), names::toString);
+		assertTrue(names.contains("net.fabricmc.loader.ClassLoad"), names::toString);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class KnotReportsTests {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testTop() {
+		Map<String, Long> values = new HashMap<>();
+		values.put("a", 3000000L);
+		values.put("b", 1000000L);
+		values.put("c", 2000000L);
+
+		List<Map.Entry<String, Long>> top = KnotReports.getTop(values, 2);
+		assertEquals(2, top.size());
+		assertEquals("a", top.get(0).getKey());
+		assertEquals("c", top.get(1).getKey());
+
+		assertEquals(3, KnotReports.getTop(values, Integer.MAX_VALUE).size());
+		assertEquals(Arrays.asList("a", "c"), new ArrayList<>(KnotReports.toMap(top, 1000).keySet()));
+		assertEquals(Arrays.asList(3000L, 2000L), new ArrayList<>(KnotReports.toMap(top, 1000).values()));
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		Map<String, Long> values = new HashMap<>();
+		values.put("slow", 12345678L);
+		values.put("fast", 500000L);
+
+		Path file = tempDir.resolve("sub").resolve("report.txt");
+		KnotReports.write(file, "test report", LogManager.getFormatterLogger("FabricLoader|Test"), writer -> {
+			writer.printf("header%n");
+			KnotReports.printTimes(writer, KnotReports.getTop(values, Integer.MAX_VALUE));
+		});
+
+		assertEquals(Arrays.asList("header", String.format("%10.2f ms  slow", 12.35), String.format("%10.2f ms  fast", 0.5)),
+				Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+}
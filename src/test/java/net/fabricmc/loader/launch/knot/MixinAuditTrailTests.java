@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+final class MixinAuditTrailTests {
+	private static final long SLEEP_MILLIS = 50;
+
+	@Test
+	public void testRecords() {
+		MixinAuditTrail trail = new MixinAuditTrail();
+		MixinAuditMXBean bean = trail.new Bean();
+
+		trail.beginTarget("a.A");
+		trail.onApply("a.A", "a.mixins.json:AMixin");
+		trail.onApply("a.A", "b.mixins.json:BMixin");
+		// events for classes that aren't being transformed are ignored
+		trail.onApply("b.B", "a.mixins.json:BMixin");
+		trail.onGenerate("a.A$Args", "ArgsClassGenerator");
+		trail.endTarget("a.A");
+
+		// targets without mixins aren't recorded
+		trail.beginTarget("c.C");
+		trail.endTarget("c.C");
+
+		assertEquals(1, bean.getTargetCount());
+		assertEquals(1, bean.getGeneratedClassCount());
+		assertEquals(Arrays.asList("a.mixins.json:AMixin", "b.mixins.json:BMixin"), bean.getMixinsFor("a.A"));
+		assertEquals(Collections.emptyList(), bean.getMixinsFor("b.B"));
+		assertEquals(Collections.emptyList(), bean.getMixinsFor("c.C"));
+		assertEquals(2, bean.getSlowestMixinsMicros().size());
+	}
+
+	@Test
+	public void testNestedTargets() throws InterruptedException {
+		MixinAuditTrail trail = new MixinAuditTrail();
+		MixinAuditMXBean bean = trail.new Bean();
+
+		long start = System.nanoTime();
+		trail.beginTarget("a.Outer");
+		Thread.sleep(SLEEP_MILLIS);
+		trail.onApply("a.Outer", "a.mixins.json:First");
+
+		// loading another class while the outer one is in the transformer
+		trail.beginTarget("a.Inner");
+		Thread.sleep(SLEEP_MILLIS);
+		trail.onApply("a.Inner", "a.mixins.json:InnerMixin");
+		trail.endTarget("a.Inner");
+
+		trail.onApply("a.Outer", "a.mixins.json:Second");
+		// a mismatched end doesn't pop the outer target
+		trail.endTarget("a.Inner");
+		trail.endTarget("a.Outer");
+		long elapsedMicros = (System.nanoTime() - start) / 1000;
+
+		Map<String, Long> targets = bean.getSlowestTargetsMicros();
+		Map<String, Long> mixins = bean.getSlowestMixinsMicros();
+		assertEquals(2, targets.size());
+		assertTrue(targets.get("a.Inner") >= SLEEP_MILLIS * 1000, targets.toString());
+		assertTrue(targets.get("a.Outer") >= SLEEP_MILLIS * 1000, targets.toString());
+		assertTrue(targets.get("a.Outer") + targets.get("a.Inner") <= elapsedMicros, "the inner target's time is excluded from the outer one");
+
+		assertTrue(mixins.get("a.mixins.json:First") >= SLEEP_MILLIS * 1000, mixins.toString());
+		assertTrue(mixins.get("a.mixins.json:InnerMixin") >= SLEEP_MILLIS * 1000, mixins.toString());
+		assertTrue(mixins.get("a.mixins.json:Second") < SLEEP_MILLIS * 1000, "the nested load isn't charged to the next mixin");
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+final class MixinConfigPreloaderTests {
+	private final Map<String, byte[]> files = new HashMap<>();
+	private final Map<String, AtomicInteger> reads = new ConcurrentHashMap<>();
+
+	@AfterEach
+	public void cleanup() {
+		MixinConfigPreloader.clear();
+	}
+
+	@Test
+	public void testHandoff() throws IOException {
+		put("a.mixins.json", "{\"package\": \"a.mixin\", \"refmap\": \"shared-refmap.json\"}");
+		put("b.mixins.json", "{\"refmap\": \"shared-refmap.json\", \"package\": \"b.mixin\"}");
+		put("c.mixins.json", "not json");
+		put("shared-refmap.json", "{\"mappings\": {}}");
+
+		MixinConfigPreloader.preload(Arrays.asList("a.mixins.json", "b.mixins.json", "c.mixins.json", "missing.mixins.json"), this::open);
+
+		assertEquals(1, reads.get("shared-refmap.json").get(), "refmaps are read once");
+		assertNull(MixinConfigPreloader.getResourceAsStream("missing.mixins.json"), "missing configs are left to mixin");
+
+		assertResource("a.mixins.json");
+		assertNull(MixinConfigPreloader.getResourceAsStream("a.mixins.json"), "configs are handed out once");
+		assertResource("c.mixins.json");
+
+		// one use per config referring to the refmap
+		assertResource("shared-refmap.json");
+		assertResource("shared-refmap.json");
+		assertNull(MixinConfigPreloader.getResourceAsStream("shared-refmap.json"));
+	}
+
+	@Test
+	public void testRefmapAfterBootstrap() throws IOException {
+		put("a.mixins.json", "{\"refmap\": \"a-refmap.json\"}");
+		put("b.mixins.json", "{\"refmap\": \"b-refmap.json\"}");
+		put("a-refmap.json", "{}");
+		put("b-refmap.json", "{\"mappings\": {}}");
+
+		MixinConfigPreloader.preload(Arrays.asList("a.mixins.json", "b.mixins.json"), this::open);
+
+		// bootstrapping only reads the configs
+		assertResource("a.mixins.json");
+		assertResource("b.mixins.json");
+
+		// selecting the configs on the first transformed class reads the refmaps
+		assertResource("a-refmap.json");
+		assertEquals(1, reads.get("a-refmap.json").get(), "the refmap is served from memory");
+	}
+
+	@Test
+	public void testClear() throws IOException {
+		put("a.mixins.json", "{\"refmap\": \"a-refmap.json\"}");
+		put("b.mixins.json", "{\"refmap\": \"b-refmap.json\"}");
+		put("a-refmap.json", "{}");
+		put("b-refmap.json", "{}");
+
+		MixinConfigPreloader.preload(Arrays.asList("a.mixins.json", "b.mixins.json"), this::open);
+		assertResource("a.mixins.json");
+		assertResource("a-refmap.json");
+
+		// mixin selected its configs without asking for the rest, they mustn't stay around
+		MixinConfigPreloader.clear();
+		assertNull(MixinConfigPreloader.getResourceAsStream("b.mixins.json"));
+		assertNull(MixinConfigPreloader.getResourceAsStream("b-refmap.json"));
+	}
+
+	private void put(String name, String content) {
+		files.put(name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private InputStream open(String name) {
+		reads.computeIfAbsent(name, ignored -> new AtomicInteger()).incrementAndGet();
+		byte[] content = files.get(name);
+
+		return content != null ? new ByteArrayInputStream(content) : null;
+	}
+
+	private void assertResource(String name) throws IOException {
+		try (InputStream is = MixinConfigPreloader.getResourceAsStream(name)) {
+			assertNotNull(is, name);
+			assertArrayEquals(files.get(name), KnotClassPath.readFully(is, -1));
+		}
+	}
+}
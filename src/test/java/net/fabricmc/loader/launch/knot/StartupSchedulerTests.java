@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.launch.knot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+final class StartupSchedulerTests {
+	@Test
+	public void testSequential() {
+		for (int threads : new int[] { 0, 1 }) {
+			StartupScheduler scheduler = new StartupScheduler(threads);
+			assertTrue(scheduler.isSequential(), Integer.toString(threads));
+
+			Thread caller = Thread.currentThread();
+			List<String> order = new ArrayList<>();
+			StartupScheduler.Stage a = scheduler.add("a", () -> order.add("a"));
+			assertEquals(Arrays.asList("a"), order, "stages run right away");
+			scheduler.add("b", () -> assertSame(caller, Thread.currentThread()), a);
+
+			// failures surface at the declaration
+			IOException failure = new IOException();
+			RuntimeException e = assertThrows(RuntimeException.class, () -> scheduler.add("c", () -> {
+				throw failure;
+			}));
+			assertSame(failure, e.getCause());
+			scheduler.finish();
+		}
+
+		assertFalse(new StartupScheduler(2).isSequential());
+	}
+
+	@Test
+	public void testOrdering() throws Exception {
+		StartupScheduler scheduler = new StartupScheduler(4);
+		List<String> events = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch started = new CountDownLatch(2);
+		AtomicBoolean overlapped = new AtomicBoolean();
+
+		StartupScheduler.StageTask independent = () -> {
+			started.countDown();
+			// both independent stages have to be running at the same time for this to pass
+			overlapped.compareAndSet(false, started.await(10, TimeUnit.SECONDS));
+		};
+
+		StartupScheduler.Stage a = scheduler.add("a", () -> {
+			independent.run();
+			events.add("a");
+		});
+		StartupScheduler.Stage b = scheduler.add("b", () -> {
+			independent.run();
+			events.add("b");
+		});
+		StartupScheduler.Stage c = scheduler.add("c", () -> events.add("c"), a, b);
+		// a missing dependency is ignored
+		StartupScheduler.Stage d = scheduler.add("d", () -> events.add("d"), c, null);
+		scheduler.add("e", () -> events.add("e"), d);
+
+		scheduler.finish();
+		assertTrue(overlapped.get());
+		assertEquals(5, events.size());
+		assertEquals(Arrays.asList("c", "d", "e"), events.subList(2, 5));
+	}
+
+	@Test
+	public void testFailurePropagation() {
+		StartupScheduler scheduler = new StartupScheduler(2);
+		IOException failure = new IOException("broken");
+		AtomicBoolean dependentRan = new AtomicBoolean();
+		AtomicBoolean independentRan = new AtomicBoolean();
+
+		StartupScheduler.Stage a = scheduler.add("a", () -> {
+			throw failure;
+		});
+		StartupScheduler.Stage b = scheduler.add("b", () -> dependentRan.set(true), a);
+		StartupScheduler.Stage c = scheduler.add("c", () -> independentRan.set(true));
+		StartupScheduler.Stage d = scheduler.add("d", () -> {
+			throw new IllegalStateException("unchecked");
+		}, c);
+
+		// checked failures are wrapped, also for the stages skipped because of them
+		RuntimeException e = assertThrows(RuntimeException.class, () -> scheduler.await(b));
+		assertSame(failure, e.getCause());
+		assertFalse(dependentRan.get());
+
+		scheduler.await(c);
+		assertTrue(independentRan.get());
+		assertEquals("unchecked", assertThrows(IllegalStateException.class, () -> scheduler.await(d)).getMessage());
+
+		e = assertThrows(RuntimeException.class, scheduler::finish);
+		assertSame(failure, e.getCause());
+	}
+}
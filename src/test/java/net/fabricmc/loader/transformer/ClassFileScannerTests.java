@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import net.fabricmc.api.Environment;
+
+final class ClassFileScannerTests {
+	private static final int ALL = ClassFileScanner.ENVIRONMENT_ANNOTATIONS | ClassFileScanner.NON_PUBLIC_ACCESS;
+
+	@Test
+	public void testPlainClass() {
+		byte[] bytes = new ClassBuilder(Opcodes.ACC_PUBLIC).field(Opcodes.ACC_PRIVATE).method(Opcodes.ACC_PUBLIC).build();
+
+		assertEquals(0, ClassFileScanner.scan(bytes, true, true));
+	}
+
+	@Test
+	public void testEnvironmentAnnotation() {
+		ClassBuilder builder = new ClassBuilder(Opcodes.ACC_PUBLIC);
+		builder.writer.visitAnnotation(Type.getDescriptor(Environment.class), false).visitEnd();
+		byte[] bytes = builder.build();
+
+		assertEquals(ClassFileScanner.ENVIRONMENT_ANNOTATIONS, ClassFileScanner.scan(bytes, true, true));
+		assertEquals(0, ClassFileScanner.scan(bytes, false, true));
+	}
+
+	@Test
+	public void testNonPublicAccess() {
+		assertEquals(ClassFileScanner.NON_PUBLIC_ACCESS, ClassFileScanner.scan(new ClassBuilder(0).build(), true, true));
+		assertEquals(ClassFileScanner.NON_PUBLIC_ACCESS, ClassFileScanner.scan(new ClassBuilder(Opcodes.ACC_PUBLIC).field(0).build(), true, true));
+		assertEquals(ClassFileScanner.NON_PUBLIC_ACCESS, ClassFileScanner.scan(new ClassBuilder(Opcodes.ACC_PUBLIC).method(Opcodes.ACC_PROTECTED).build(), true, true));
+		assertEquals(0, ClassFileScanner.scan(new ClassBuilder(0).build(), true, false));
+
+		ClassBuilder builder = new ClassBuilder(Opcodes.ACC_PUBLIC);
+		builder.writer.visitInnerClass("test/Scanned$Inner", "test/Scanned", "Inner", Opcodes.ACC_STATIC);
+		assertEquals(ClassFileScanner.NON_PUBLIC_ACCESS, ClassFileScanner.scan(builder.build(), true, true));
+	}
+
+	@Test
+	public void testWideConstants() {
+		// long and double constants take two pool slots, everything after them has to be found still
+		ClassBuilder builder = new ClassBuilder(Opcodes.ACC_PUBLIC);
+		builder.writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "l", "J", null, 1L << 40).visitEnd();
+		builder.writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "d", "D", null, 0.5).visitEnd();
+		builder.writer.visitAnnotation(Type.getDescriptor(Environment.class), false).visitEnd();
+		builder.method(0);
+
+		assertEquals(ALL, ClassFileScanner.scan(builder.build(), true, true));
+	}
+
+	@Test
+	public void testMalformedClass() {
+		byte[] bytes = new ClassBuilder(Opcodes.ACC_PUBLIC).build();
+
+		assertEquals(ALL, ClassFileScanner.scan(Arrays.copyOf(bytes, bytes.length / 2), true, true));
+		assertEquals(ALL, ClassFileScanner.scan(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, true, true));
+		assertEquals(ALL, ClassFileScanner.scan(new byte[0], true, false));
+	}
+
+	private static final class ClassBuilder {
+		final ClassWriter writer = new ClassWriter(0);
+		private int members;
+
+		ClassBuilder(int access) {
+			writer.visit(Opcodes.V1_8, access | Opcodes.ACC_SUPER, "test/Scanned", null, "java/lang/Object", null);
+		}
+
+		ClassBuilder field(int access) {
+			writer.visitField(access, "field" + members++, "I", null, null).visitEnd();
+			return this;
+		}
+
+		ClassBuilder method(int access) {
+			MethodVisitor mv = writer.visitMethod(access, "method" + members++, "()V", null, null);
+			mv.visitCode();
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(0, 1);
+			mv.visitEnd();
+			return this;
+		}
+
+		byte[] build() {
+			writer.visitEnd();
+			return writer.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+final class FabricTransformerTests {
+	@Test
+	public void testMemoizedTransform() {
+		AtomicInteger runs = new AtomicInteger();
+		UnaryOperator<byte[]> transformer = in -> {
+			runs.incrementAndGet();
+			return ("transformed " + new String(in, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+		};
+
+		byte[] output = FabricTransformer.transformMemoized("test.Memo", bytes("abc"), transformer);
+		assertArrayEquals(bytes("transformed abc"), output);
+		// e.g. mixin's lookup and the actual class loading
+		assertSame(output, FabricTransformer.transformMemoized("test.Memo", bytes("abc"), transformer));
+		assertEquals(1, runs.get());
+
+		// an earlier transformer changed the class, same length or not
+		assertArrayEquals(bytes("transformed abd"), FabricTransformer.transformMemoized("test.Memo", bytes("abd"), transformer));
+		assertArrayEquals(bytes("transformed abcd"), FabricTransformer.transformMemoized("test.Memo", bytes("abcd"), transformer));
+		assertEquals(3, runs.get());
+
+		FabricTransformer.transformMemoized("test.Memo2", bytes("abcd"), transformer);
+		assertEquals(4, runs.get(), "the memo is per class");
+	}
+
+	@Test
+	public void testMemoizedUnchanged() {
+		AtomicInteger runs = new AtomicInteger();
+		UnaryOperator<byte[]> transformer = in -> {
+			runs.incrementAndGet();
+			return in;
+		};
+
+		FabricTransformer.transformMemoized("test.Unchanged", bytes("abc"), transformer);
+		byte[] input = bytes("abc");
+
+		// classes left alone come back as the current input, nothing is retained for them
+		assertSame(input, FabricTransformer.transformMemoized("test.Unchanged", input, transformer));
+		assertEquals(1, runs.get());
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.loader.transformer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+final class TransformerChainTests {
+	private static final String NAME = "test.Chained";
+
+	@Test
+	public void testStageOrder() {
+		TransformerChain chain = TransformerChain.builder()
+				.add(new FieldAdder("first", ClassNameFilter.ALL, 0))
+				.add(new FieldAdder("second", ClassNameFilter.ALL, 0))
+				.build();
+
+		assertEquals(Arrays.asList("first", "second"), getFieldNames(chain.transform(NAME, createClass(Opcodes.ACC_PUBLIC))));
+	}
+
+	@Test
+	public void testNameFilter() {
+		byte[] bytes = createClass(Opcodes.ACC_PUBLIC);
+		TransformerChain chain = TransformerChain.builder()
+				.add(new FieldAdder("exact", ClassNameFilter.exact(Collections.singleton("test.Other")), 0))
+				.add(new FieldAdder("both", ClassNameFilter.ALL.and(name -> name.startsWith("test.")), 0))
+				.build();
+
+		assertEquals(Collections.singletonList("both"), getFieldNames(chain.transform(NAME, bytes)));
+		assertSame(bytes, chain.transform("other.Chained", bytes), "no stage applies, so the class isn't parsed");
+	}
+
+	@Test
+	public void testScanFlags() {
+		TransformerChain chain = TransformerChain.builder()
+				.add(new FieldAdder("access", ClassNameFilter.ALL, ClassFileScanner.NON_PUBLIC_ACCESS))
+				.build();
+
+		byte[] publicClass = createClass(Opcodes.ACC_PUBLIC);
+		assertSame(publicClass, chain.transform(NAME, publicClass));
+		assertEquals(Collections.singletonList("access"), getFieldNames(chain.transform(NAME, createClass(0))));
+	}
+
+	@Test
+	public void testSkippedVisitor() {
+		byte[] bytes = createClass(Opcodes.ACC_PUBLIC);
+		TransformerChain chain = TransformerChain.builder()
+				.add(new TransformerStage() {
+					@Override
+					public ClassNameFilter getFilter() {
+						return ClassNameFilter.ALL;
+					}
+
+					@Override
+					public ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next) {
+						return null;
+					}
+				})
+				.build();
+
+		assertSame(bytes, chain.transform(NAME, bytes));
+	}
+
+	@Test
+	public void testMinecraftFilter() {
+		assertTrue(ClassNameFilter.minecraftOnly().matches("net.minecraft.client.Main"));
+		assertFalse(ClassNameFilter.modsOnly().matches("net.minecraft.client.Main"));
+		assertTrue(ClassNameFilter.modsOnly().matches("com.example.Mod"));
+	}
+
+	private static byte[] createClass(int access) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, access | Opcodes.ACC_SUPER, NAME.replace('.', '/'), null, "java/lang/Object", null);
+		writer.visitEnd();
+
+		return writer.toByteArray();
+	}
+
+	private static List<String> getFieldNames(byte[] bytes) {
+		ClassNode node = new ClassNode();
+		new ClassReader(bytes).accept(node, 0);
+		List<String> ret = new ArrayList<>();
+
+		for (FieldNode field : node.fields) {
+			ret.add(field.name);
+		}
+
+		return ret;
+	}
+
+	private static final class FieldAdder implements TransformerStage {
+		private final String field;
+		private final ClassNameFilter filter;
+		private final int scanFlags;
+
+		FieldAdder(String field, ClassNameFilter filter, int scanFlags) {
+			this.field = field;
+			this.filter = filter;
+			this.scanFlags = scanFlags;
+		}
+
+		@Override
+		public ClassNameFilter getFilter() {
+			return filter;
+		}
+
+		@Override
+		public int getScanFlags() {
+			return scanFlags;
+		}
+
+		@Override
+		public ClassVisitor createVisitor(String name, ClassReader reader, ClassVisitor next) {
+			return new ClassVisitor(Opcodes.ASM9, next) {
+				@Override
+				public void visitEnd() {
+					visitField(Opcodes.ACC_PUBLIC, field, "I", null, null).visitEnd();
+					super.visitEnd();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import net.fabricmc.loader.util.BoundedSoftCache;
+
+final class BoundedSoftCacheTests {
+	@Test
+	public void testWeightEviction() {
+		BoundedSoftCache<String, String> cache = new BoundedSoftCache<>(10, String::length);
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		assertNotNull(cache.get("a")); // b is now the least recently used
+
+		cache.put("c", "1234");
+		assertNull(cache.get("b"));
+		assertEquals("1234", cache.get("a"));
+		assertEquals("1234", cache.get("c"));
+	}
+
+	@Test
+	public void testReplaceAndRemove() {
+		BoundedSoftCache<String, String> cache = new BoundedSoftCache<>(10, String::length);
+		cache.put("a", "123456789");
+		cache.put("a", "1");
+		// the replaced value's weight is gone, so both fit
+		cache.put("b", "123456789");
+		assertEquals("1", cache.get("a"));
+		assertEquals("123456789", cache.get("b"));
+
+		assertEquals("123456789", cache.remove("b"));
+		assertNull(cache.remove("b"));
+		cache.put("c", "123456789");
+		assertEquals("1", cache.get("a"));
+
+		cache.clear();
+		assertNull(cache.get("a"));
+		assertNull(cache.get("c"));
+		cache.put("d", "1234567890");
+		assertEquals("1234567890", cache.get("d"));
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.util.mappings.CompactTinyTree;
+import net.fabricmc.loader.util.mappings.MaterializedTinyTree;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.LocalVariableDef;
+import net.fabricmc.mapping.tree.Mapped;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.ParameterDef;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+final class CompactTinyTreeTests {
+	private static final String MAPPINGS = "tiny\t2\t0\tofficial\tintermediary\tnamed\n"
+			+ "\tcustom-property\tvalue\n"
+			+ "c\ta\tnet/minecraft/class_1\tnet/minecraft/World\n"
+			+ "\tc\tThe world.\n"
+			+ "\tm\t(Lb;[Lc;I)La;\ta\tmethod_1\tgetOther\n"
+			+ "\t\tc\tFinds another world.\n"
+			+ "\t\tp\t1\t\t\tentity\n"
+			+ "\t\tp\t2\t\t\tentities\n"
+			+ "\t\tv\t4\t10\t2\t\t\tresult\n"
+			+ "\tf\tLc;\tb\tfield_1\tplayer\n"
+			+ "c\tb\t\t\n" // no names besides the official one, so the official name is used for all namespaces
+			+ "\tm\t()V\ta\t\t\n"
+			+ "c\td\td\td\n" // same name everywhere, but that's not the same as having none
+			+ "c\tc\tnet/minecraft/class_2\tnet/minecraft/Player\n"
+			+ "\tf\tLa;\ta\tfield_2\tworld\n";
+	private static final String[] NAMESPACES = { "official", "intermediary", "named", "unknown" };
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		TinyTree source = new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS))));
+		byte[] key = new byte[20];
+		key[0] = 42;
+
+		Path file = tempDir.resolve("mappings.bin");
+		CompactTinyTree.write(source, key, file);
+		CompactTinyTree tree = CompactTinyTree.open(file, key);
+		assertNotNull(tree);
+
+		assertEquals(source.getMetadata().getMajorVersion(), tree.getMetadata().getMajorVersion());
+		assertEquals(source.getMetadata().getMinorVersion(), tree.getMetadata().getMinorVersion());
+		assertEquals(source.getMetadata().getNamespaces(), tree.getMetadata().getNamespaces());
+		assertEquals(source.getMetadata().getProperties(), tree.getMetadata().getProperties());
+
+		assertEquals(source.getClasses().size(), tree.getClasses().size());
+		Iterator<ClassDef> classes = tree.getClasses().iterator();
+
+		for (ClassDef expected : source.getClasses()) {
+			assertClassEquals(expected, classes.next());
+		}
+
+		assertEquals(source.getDefaultNamespaceClassMap().keySet(), tree.getDefaultNamespaceClassMap().keySet());
+
+		for (String name : source.getDefaultNamespaceClassMap().keySet()) {
+			assertNames(source.getDefaultNamespaceClassMap().get(name), tree.getDefaultNamespaceClassMap().get(name));
+		}
+
+		assertNull(tree.getDefaultNamespaceClassMap().get("e"));
+	}
+
+	@Test
+	public void testDecodedClasses() throws IOException {
+		TinyTree source = new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS))));
+		byte[] key = new byte[20];
+
+		Path file = tempDir.resolve("mappings.bin");
+		CompactTinyTree.write(source, key, file);
+		CompactTinyTree tree = CompactTinyTree.open(file, key);
+		assertNotNull(tree);
+
+		// decoded classes aren't retained, each access decodes the class again
+		List<ClassDef> classes = new ArrayList<>(tree.getClasses());
+		assertNotSame(classes.get(0), tree.getClasses().iterator().next());
+		assertNotSame(tree.getDefaultNamespaceClassMap().get("a"), tree.getDefaultNamespaceClassMap().get("a"));
+
+		// the members are decoded once per class instance, also when the fields are requested first
+		ClassDef world = tree.getDefaultNamespaceClassMap().get("a");
+		Collection<FieldDef> fields = world.getFields();
+		assertSame(fields, world.getFields());
+		assertSame(world.getMethods(), world.getMethods());
+		assertEquals(1, world.getMethods().size());
+		assertEquals("player", fields.iterator().next().getRawName("named"));
+		assertEquals("getOther", world.getMethods().iterator().next().getRawName("named"));
+
+		for (ClassDef cls : classes) {
+			assertClassEquals(source.getDefaultNamespaceClassMap().get(cls.getRawName("official")), cls);
+		}
+	}
+
+	@Test
+	public void testKeyMismatch() throws IOException {
+		TinyTree source = new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS))));
+		byte[] key = new byte[20];
+
+		Path file = tempDir.resolve("mappings.bin");
+		CompactTinyTree.write(source, key, file);
+		key[19] = 1;
+
+		assertNull(CompactTinyTree.open(file, key));
+	}
+
+	@Test
+	public void testCorruptHeader() throws IOException {
+		TinyTree source = new MaterializedTinyTree(TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS))));
+		byte[] key = new byte[20];
+
+		Path file = tempDir.resolve("mappings.bin");
+		CompactTinyTree.write(source, key, file);
+		byte[] data = Files.readAllBytes(file);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+
+		// walk the header to the fields to corrupt
+		int namespaceCountPos = 4 + 20 + 8;
+		int propertyCountPos = namespaceCountPos + 4 + buffer.getInt(namespaceCountPos) * 4;
+		int stringCountPos = propertyCountPos + 4 + buffer.getInt(propertyCountPos) * 8;
+		int stringOffsetsPos = stringCountPos + 4;
+		int classCountsPos = stringOffsetsPos + (buffer.getInt(stringCountPos) + 1) * 4;
+		int classOffsetsPos = classCountsPos + 8;
+		int hashTableSizePos = classOffsetsPos + buffer.getInt(classCountsPos + 4) * 4;
+		int hashTableSize = buffer.getInt(hashTableSizePos);
+		int firstRecord = buffer.getInt(classOffsetsPos);
+
+		// everything before the first class record belongs to the header or the string data
+		for (int length = 0; length <= firstRecord; length++) {
+			assertNull(open(Arrays.copyOf(data, length), key), "truncated to " + length);
+		}
+
+		assertNull(open(withInt(data, namespaceCountPos, -1), key));
+		assertNull(open(withInt(data, namespaceCountPos, Integer.MAX_VALUE), key));
+		assertNull(open(withInt(data, stringCountPos, 1 << 28), key));
+		assertNull(open(withInt(data, classCountsPos, buffer.getInt(classCountsPos + 4) + 1), key), "more listed than total classes");
+		assertNull(open(withInt(data, hashTableSizePos, hashTableSize - 1), key), "hash table size not a power of two");
+		assertNull(open(withInt(data, hashTableSizePos, hashTableSize << 16), key), "hash table past the end");
+		assertNull(open(withInt(data, stringOffsetsPos + 4, -1), key), "string offsets not monotonic");
+		assertNull(open(withInt(data, classOffsetsPos, data.length), key), "class record past the end");
+		assertNull(open(withInt(data, hashTableSizePos + 8, Integer.MAX_VALUE), key), "class index past the classes");
+
+		// a table without free slots mustn't loop forever on a missing name
+		byte[] full = data.clone();
+
+		for (int i = 0; i < hashTableSize; i++) {
+			full = withInt(full, hashTableSizePos + 4 + i * 8, 0);
+			full = withInt(full, hashTableSizePos + 8 + i * 8, 1);
+		}
+
+		CompactTinyTree tree = open(full, key);
+		assertNotNull(tree);
+		assertNull(assertTimeoutPreemptively(Duration.ofSeconds(10), () -> tree.getDefaultNamespaceClassMap().get("missing")));
+	}
+
+	private CompactTinyTree open(byte[] data, byte[] key) throws IOException {
+		Path file = tempDir.resolve("corrupt.bin");
+		Files.write(file, data);
+
+		return CompactTinyTree.open(file, key);
+	}
+
+	private static byte[] withInt(byte[] data, int pos, int value) {
+		byte[] ret = data.clone();
+		ByteBuffer.wrap(ret).putInt(pos, value);
+
+		return ret;
+	}
+
+	private static void assertClassEquals(ClassDef expected, ClassDef actual) {
+		assertNames(expected, actual);
+		assertEquals(expected.getComment(), actual.getComment());
+
+		assertEquals(expected.getMethods().size(), actual.getMethods().size());
+		Iterator<MethodDef> methods = actual.getMethods().iterator();
+
+		for (MethodDef expectedMethod : expected.getMethods()) {
+			MethodDef method = methods.next();
+			assertNames(expectedMethod, method);
+			assertDescriptors(expectedMethod, method);
+			assertEquals(expectedMethod.getComment(), method.getComment());
+
+			List<ParameterDef> parameters = new ArrayList<>(method.getParameters());
+			assertEquals(expectedMethod.getParameters().size(), parameters.size());
+			int i = 0;
+
+			for (ParameterDef expectedParameter : expectedMethod.getParameters()) {
+				ParameterDef parameter = parameters.get(i++);
+				assertEquals(expectedParameter.getLocalVariableIndex(), parameter.getLocalVariableIndex());
+				assertNames(expectedParameter, parameter);
+			}
+
+			List<LocalVariableDef> locals = new ArrayList<>(method.getLocalVariables());
+			assertEquals(expectedMethod.getLocalVariables().size(), locals.size());
+			i = 0;
+
+			for (LocalVariableDef expectedLocal : expectedMethod.getLocalVariables()) {
+				LocalVariableDef local = locals.get(i++);
+				assertEquals(expectedLocal.getLocalVariableIndex(), local.getLocalVariableIndex());
+				assertEquals(expectedLocal.getLocalVariableStartOffset(), local.getLocalVariableStartOffset());
+				assertEquals(expectedLocal.getLocalVariableTableIndex(), local.getLocalVariableTableIndex());
+				assertNames(expectedLocal, local);
+			}
+		}
+
+		assertEquals(expected.getFields().size(), actual.getFields().size());
+		Iterator<FieldDef> fields = actual.getFields().iterator();
+
+		for (FieldDef expectedField : expected.getFields()) {
+			FieldDef field = fields.next();
+			assertNames(expectedField, field);
+			assertDescriptors(expectedField, field);
+			assertEquals(expectedField.getComment(), field.getComment());
+		}
+	}
+
+	private static void assertNames(Mapped expected, Mapped actual) {
+		for (String namespace : NAMESPACES) {
+			assertEquals(getRawName(expected, namespace), getRawName(actual, namespace), namespace);
+		}
+	}
+
+	private static String getRawName(Mapped mapping, String namespace) {
+		try {
+			return mapping.getRawName(namespace);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			return "";
+		}
+	}
+
+	private static void assertDescriptors(MethodDef expected, MethodDef actual) {
+		for (String namespace : NAMESPACES) {
+			assertEquals(expected.getDescriptor(namespace), actual.getDescriptor(namespace), namespace);
+		}
+	}
+
+	private static void assertDescriptors(FieldDef expected, FieldDef actual) {
+		for (String namespace : NAMESPACES) {
+			assertEquals(expected.getDescriptor(namespace), actual.getDescriptor(namespace), namespace);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import net.fabricmc.loader.api.MappingResolver;
+import net.fabricmc.loader.util.mappings.DescriptorUtil;
+
+final class DescriptorMappingTests {
+	private static final Function<String, String> CLASS_MAPPER = name -> {
+		switch (name) {
+		case "net/minecraft/class_1": return "net/minecraft/World";
+		case "net/minecraft/class_2": return "net/minecraft/Player";
+		default: return null;
+		}
+	};
+
+	@Test
+	public void testPrimitives() {
+		for (String desc : new String[] { "B", "C", "D", "F", "I", "J", "S", "Z", "()V", "(IJ)D", "[[J", "([Z[[D)[I" }) {
+			assertSame(desc, DescriptorUtil.remapDescriptor(desc, CLASS_MAPPER));
+		}
+	}
+
+	@Test
+	public void testClasses() {
+		assertEquals("Lnet/minecraft/World;", DescriptorUtil.remapDescriptor("Lnet/minecraft/class_1;", CLASS_MAPPER));
+		assertEquals("[[Lnet/minecraft/World;", DescriptorUtil.remapDescriptor("[[Lnet/minecraft/class_1;", CLASS_MAPPER));
+		assertEquals("[I", DescriptorUtil.remapDescriptor("[I", CLASS_MAPPER));
+	}
+
+	@Test
+	public void testMethods() {
+		assertEquals("(ILnet/minecraft/World;[Lnet/minecraft/Player;J)Lnet/minecraft/World;",
+				DescriptorUtil.remapDescriptor("(ILnet/minecraft/class_1;[Lnet/minecraft/class_2;J)Lnet/minecraft/class_1;", CLASS_MAPPER));
+		assertEquals("(Ljava/lang/String;Lnet/minecraft/Player;)V",
+				DescriptorUtil.remapDescriptor("(Ljava/lang/String;Lnet/minecraft/class_2;)V", CLASS_MAPPER));
+	}
+
+	@Test
+	public void testUnmappedClasses() {
+		String desc = "(Ljava/lang/String;[Lnet/minecraft/class_3;)Ljava/lang/Object;";
+
+		assertSame(desc, DescriptorUtil.remapDescriptor(desc, CLASS_MAPPER));
+	}
+
+	@Test
+	public void testInvalidDescriptors() {
+		assertThrows(IllegalArgumentException.class, () -> DescriptorUtil.remapDescriptor("Ljava/util/List<Lnet/minecraft/class_1;>;", CLASS_MAPPER));
+		assertThrows(IllegalArgumentException.class, () -> DescriptorUtil.remapDescriptor("TT;", CLASS_MAPPER));
+		assertThrows(IllegalArgumentException.class, () -> DescriptorUtil.remapDescriptor("(Lnet/minecraft/class_1", CLASS_MAPPER));
+		assertThrows(IllegalArgumentException.class, () -> DescriptorUtil.remapDescriptor("L;", CLASS_MAPPER));
+
+		// structurally broken even though every character is allowed somewhere
+		for (String desc : new String[] { "", "()", "[", "[V", "V", "(V)V", "II)", "(I", "I(I)V", "()VV", "()V)", "(I)[", "La.b;", "(I))V" }) {
+			assertThrows(IllegalArgumentException.class, () -> DescriptorUtil.remapDescriptor(desc, CLASS_MAPPER), desc);
+		}
+	}
+
+	@Test
+	public void testDefaultResolverMethods() {
+		Map<String, String> classes = new HashMap<>();
+		classes.put("net.minecraft.class_1", "net.minecraft.World");
+		classes.put("net.minecraft.class_2$class_4", "net.minecraft.Player$Hand");
+		MappingResolver resolver = new TestResolver(classes);
+
+		assertEquals("(Lnet/minecraft/World;[ILnet/minecraft/class_3;)V", resolver.mapDescriptor("intermediary", "(Lnet/minecraft/class_1;[ILnet/minecraft/class_3;)V"));
+		assertEquals("(Lnet/minecraft/class_1;[ILnet/minecraft/class_3;)V", resolver.unmapDescriptor("intermediary", "(Lnet/minecraft/World;[ILnet/minecraft/class_3;)V"));
+		assertEquals("[Lnet/minecraft/Player$Hand;", resolver.mapDescriptor("intermediary", "[Lnet/minecraft/class_2$class_4;"));
+		assertEquals("(IJ)D", resolver.mapDescriptor("intermediary", "(IJ)D"));
+
+		assertThrows(IllegalArgumentException.class, () -> resolver.mapDescriptor("intermediary", "Ljava/util/List<Lnet/minecraft/class_1;>;"));
+
+		for (String desc : new String[] { "", "()", "[", "[V", "V", "(V)V", "II)", "(I", "I(I)V", "()VV", "()V)", "(I)[", "La.b;", "(I))V", "L;" }) {
+			assertThrows(IllegalArgumentException.class, () -> resolver.mapDescriptor("intermediary", desc), desc);
+			assertThrows(IllegalArgumentException.class, () -> resolver.unmapDescriptor("intermediary", desc), desc);
+		}
+	}
+
+	/**
+	 * A resolver implementing only the abstract methods, like third-party implementations written before descriptors
+	 * could be mapped.
+	 */
+	private static final class TestResolver implements MappingResolver {
+		private final Map<String, String> classes;
+		private final Map<String, String> classesInverse = new HashMap<>();
+
+		TestResolver(Map<String, String> classes) {
+			this.classes = classes;
+
+			for (Map.Entry<String, String> entry : classes.entrySet()) {
+				classesInverse.put(entry.getValue(), entry.getKey());
+			}
+		}
+
+		@Override
+		public Collection<String> getNamespaces() {
+			return Arrays.asList("intermediary", "named");
+		}
+
+		@Override
+		public String getCurrentRuntimeNamespace() {
+			return "named";
+		}
+
+		@Override
+		public String mapClassName(String namespace, String className) {
+			return classes.getOrDefault(className, className);
+		}
+
+		@Override
+		public String unmapClassName(String targetNamespace, String className) {
+			return classesInverse.getOrDefault(className, className);
+		}
+
+		@Override
+		public String mapFieldName(String namespace, String owner, String name, String descriptor) {
+			return name;
+		}
+
+		@Override
+		public String mapMethodName(String namespace, String owner, String name, String descriptor) {
+			return name;
+		}
+	}
+}
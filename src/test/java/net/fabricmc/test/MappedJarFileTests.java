@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.fabricmc.loader.util.MappedJarFile;
+
+final class MappedJarFileTests {
+	private static final byte[] STORED = "stored entry content".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] DEFLATED = new byte[100_000];
+
+	@TempDir
+	Path tempDir;
+	private Path jar;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		// larger than the inflater's input chunk and compressible, but not trivially so
+		for (int i = 0; i < DEFLATED.length; i++) {
+			DEFLATED[i] = (byte) (i * 31 % 97);
+		}
+
+		jar = tempDir.resolve("test.jar");
+
+		try (OutputStream os = Files.newOutputStream(jar);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			CRC32 crc = new CRC32();
+			crc.update(STORED);
+
+			ZipEntry entry = new ZipEntry("a/Stored.class");
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(STORED.length);
+			entry.setCompressedSize(STORED.length);
+			entry.setCrc(crc.getValue());
+			zos.putNextEntry(entry);
+			zos.write(STORED);
+			zos.closeEntry();
+
+			zos.putNextEntry(new ZipEntry("a/Deflated.class"));
+			zos.write(DEFLATED);
+			zos.closeEntry();
+		}
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		try (MappedJarFile file = MappedJarFile.open(jar)) {
+			assertTrue(file.contains("a/Stored.class"));
+			assertArrayEquals(STORED, file.read("a/Stored.class"));
+			assertArrayEquals(DEFLATED, file.read("a/Deflated.class"));
+		}
+	}
+
+	@Test
+	public void testOpenStream() throws IOException {
+		try (MappedJarFile file = MappedJarFile.open(jar)) {
+			assertArrayEquals(STORED, readStream(file, "a/Stored.class"));
+			assertArrayEquals(DEFLATED, readStream(file, "a/Deflated.class"));
+			assertNull(file.openStream("a/Missing.class"));
+		}
+	}
+
+	@Test
+	public void testCorruptEntry() throws IOException {
+		byte[] content = Files.readAllBytes(jar);
+		int pos = indexOf(content, STORED);
+		content[pos] ^= 1;
+		Files.write(jar, content);
+
+		try (MappedJarFile file = MappedJarFile.open(jar)) {
+			assertThrows(ZipException.class, () -> file.read("a/Stored.class"));
+			assertThrows(ZipException.class, () -> readStream(file, "a/Stored.class"));
+			assertArrayEquals(DEFLATED, file.read("a/Deflated.class"));
+		}
+	}
+
+	@Test
+	public void testTruncatedFile() throws IOException {
+		byte[] content = Files.readAllBytes(jar);
+		Files.write(jar, Arrays.copyOf(content, content.length - 30));
+
+		assertThrows(ZipException.class, () -> MappedJarFile.open(jar).close());
+	}
+
+	private static byte[] readStream(MappedJarFile file, String name) throws IOException {
+		try (InputStream is = file.openStream(name)) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1000];
+			int len;
+
+			while ((len = is.read(buffer)) >= 0) {
+				os.write(buffer, 0, len);
+			}
+
+			return os.toByteArray();
+		}
+	}
+
+	private static int indexOf(byte[] haystack, byte[] needle) {
+		outer: for (int i = 0; i <= haystack.length - needle.length; i++) {
+			for (int j = 0; j < needle.length; j++) {
+				if (haystack[i + j] != needle[j]) continue outer;
+			}
+
+			return i;
+		}
+
+		throw new AssertionError("content not found");
+	}
+}
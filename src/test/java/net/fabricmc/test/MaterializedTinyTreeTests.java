@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+import net.fabricmc.loader.util.mappings.MaterializedTinyTree;
+import net.fabricmc.mapping.tree.ClassDef;
+import net.fabricmc.mapping.tree.FieldDef;
+import net.fabricmc.mapping.tree.MethodDef;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+final class MaterializedTinyTreeTests {
+	private static final String MAPPINGS = "tiny\t2\t0\tofficial\tintermediary\tnamed\n"
+			+ "c\ta\tnet/minecraft/class_1\tnet/minecraft/World\n"
+			+ "\tc\tThe world.\n"
+			+ "\tm\t(Lb;[[Lc;Ljava/lang/String;I)[La;\ta\tmethod_1\tgetOther\n"
+			+ "\t\tp\t1\t\t\tentity\n"
+			+ "\tf\tLc;\tb\tfield_1\tplayer\n"
+			+ "\tf\tLe;\tc\tfield_3\tunmapped\n" // e isn't in the mappings, it stays as is
+			+ "c\tb\t\t\n"
+			+ "\tm\t(La;)V\ta\t\tmissingName\n"
+			+ "c\tc\tnet/minecraft/class_2\tnet/minecraft/Player\n"
+			+ "\tf\tLa;\ta\tfield_2\tworld\n";
+
+	@Test
+	public void testNamesAndDescriptors() throws IOException {
+		TinyTree source = load();
+		TinyTree tree = new MaterializedTinyTree(source);
+
+		assertSame(source.getMetadata(), tree.getMetadata());
+		assertEquals(source.getClasses().size(), tree.getClasses().size());
+		assertEquals(source.getDefaultNamespaceClassMap().keySet(), tree.getDefaultNamespaceClassMap().keySet());
+
+		ClassDef world = tree.getDefaultNamespaceClassMap().get("a");
+		assertEquals("net/minecraft/class_1", world.getRawName("intermediary"));
+		assertEquals("net/minecraft/World", world.getRawName("named"));
+		assertEquals("The world.", world.getComment());
+
+		MethodDef method = world.getMethods().iterator().next();
+		assertEquals("(Lb;[[Lc;Ljava/lang/String;I)[La;", method.getDescriptor("official"));
+		assertEquals("(Lb;[[Lnet/minecraft/class_2;Ljava/lang/String;I)[Lnet/minecraft/class_1;", method.getDescriptor("intermediary"));
+		assertEquals("(Lb;[[Lnet/minecraft/Player;Ljava/lang/String;I)[Lnet/minecraft/World;", method.getDescriptor("named"));
+		assertEquals("method_1", method.getRawName("intermediary"));
+		assertEquals(1, method.getParameters().size(), "parameters come from the source tree");
+
+		Iterator<FieldDef> fields = world.getFields().iterator();
+		assertEquals("Lnet/minecraft/Player;", fields.next().getDescriptor("named"));
+		assertEquals("Le;", fields.next().getDescriptor("named"));
+
+		// the descriptors match what the source tree computes for every namespace
+		Iterator<ClassDef> classes = tree.getClasses().iterator();
+
+		for (ClassDef expected : source.getClasses()) {
+			ClassDef actual = classes.next();
+			Iterator<MethodDef> methods = actual.getMethods().iterator();
+
+			for (MethodDef expectedMethod : expected.getMethods()) {
+				MethodDef actualMethod = methods.next();
+
+				for (String namespace : source.getMetadata().getNamespaces()) {
+					assertEquals(expectedMethod.getDescriptor(namespace), actualMethod.getDescriptor(namespace), namespace);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCommonClasses() throws IOException {
+		TinyTree tree = new MaterializedTinyTree(load());
+		ClassDef common = tree.getDefaultNamespaceClassMap().get("b");
+
+		// without any other name the official one is used everywhere, also for namespaces the tree doesn't have
+		assertEquals("b", common.getRawName("intermediary"));
+		assertEquals("b", common.getRawName("named"));
+		assertEquals("b", common.getRawName("unknown"));
+
+		MethodDef method = common.getMethods().iterator().next();
+		assertEquals("", method.getRawName("intermediary"), "members of common classes keep their own names");
+		assertEquals("missingName", method.getRawName("named"));
+		assertEquals("(Lnet/minecraft/World;)V", method.getDescriptor("named"));
+		assertEquals("(La;)V", method.getDescriptor("unknown"), "unknown namespaces keep the descriptor as is");
+	}
+
+	private static TinyTree load() throws IOException {
+		return TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS)));
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 FabricMC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.fabricmc.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.asm.mixin.transformer.ClassInfo;
+
+import net.fabricmc.loader.util.mappings.MixinIntermediaryDevRemapper;
+import net.fabricmc.mapping.tree.TinyMappingFactory;
+import net.fabricmc.mapping.tree.TinyTree;
+
+final class MixinIntermediaryDevRemapperTests {
+	private static final String MAPPINGS = "tiny\t2\t0\tintermediary\tnamed\n"
+			+ "c\tnet/minecraft/class_1\tnet/minecraft/Base\n"
+			+ "\tm\t()V\tmethod_1\tfoo\n"
+			+ "\tf\tI\tfield_1\tcount\n"
+			+ "c\tnet/minecraft/class_2\tnet/minecraft/Itf\n"
+			+ "\tm\t()V\tmethod_2\tbar\n";
+
+	private static TinyTree mappings;
+
+	@BeforeAll
+	private static void setup() throws IOException {
+		mappings = TinyMappingFactory.loadWithDetection(new BufferedReader(new StringReader(MAPPINGS)));
+
+		// class infos are looked up by their runtime (named) names
+		registerClass("net/minecraft/Base", "java/lang/Object", 0);
+		registerClass("net/minecraft/Itf", "java/lang/Object", Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT);
+	}
+
+	private static ClassInfo registerClass(String name, String superName, int access) {
+		ClassNode node = new ClassNode();
+		node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | access, name, null, superName, null);
+
+		return ClassInfo.fromClassNode(node);
+	}
+
+	@Test
+	public void testLookupThroughSuperclass() {
+		registerClass("test/SuperclassLookup", "net/minecraft/Base", 0);
+		MixinIntermediaryDevRemapper remapper = new MixinIntermediaryDevRemapper(mappings, "intermediary", "named");
+
+		assertEquals("foo", remapper.mapMethodName("test/SuperclassLookup", "method_1", "()V"));
+		assertEquals("count", remapper.mapFieldName("test/SuperclassLookup", "field_1", "I"));
+		assertEquals("method_3", remapper.mapMethodName("test/SuperclassLookup", "method_3", "()V"));
+	}
+
+	@Test
+	public void testLookupThroughAddedInterface() throws ReflectiveOperationException {
+		ClassInfo info = registerClass("test/InterfaceLookup", "net/minecraft/Base", 0);
+		MixinIntermediaryDevRemapper remapper = new MixinIntermediaryDevRemapper(mappings, "intermediary", "named");
+
+		assertEquals("method_2", remapper.mapMethodName("test/InterfaceLookup", "method_2", "()V"));
+
+		// what mixin does when applying a mixin that implements an interface
+		Method addInterface = ClassInfo.class.getDeclaredMethod("addInterface", String.class);
+		addInterface.setAccessible(true);
+		addInterface.invoke(info, "net/minecraft/Itf");
+
+		assertEquals("bar", remapper.mapMethodName("test/InterfaceLookup", "method_2", "()V"));
+		assertEquals("foo", remapper.mapMethodName("test/InterfaceLookup", "method_1", "()V"));
+	}
+}